@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+
+import edu.cornell.pserc.jpower.Djp_ext2int;
+import edu.cornell.pserc.jpower.Djp_int2ext;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_dSbus_dV;
+import edu.cornell.pserc.jpower.pf.Djp_makeSbus;
+import edu.cornell.pserc.jpower.pf.Djp_makeYbus;
+
+/**
+ * Network matrix construction, derivatives and index conversion.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+	@Benchmark
+	public DComplexMatrix2D[] makeYbus(PowerFlowState s) {
+		return Djp_makeYbus.makeYbus(s.baseMVA, s.bus, s.branch);
+	}
+
+	@Benchmark
+	public DComplexMatrix1D makeSbus(PowerFlowState s) {
+		return Djp_makeSbus.makeSbus(s.baseMVA, s.bus, s.gen);
+	}
+
+	@Benchmark
+	public DComplexMatrix2D[] dSbus_dV(PowerFlowState s) {
+		return Djp_dSbus_dV.dSbus_dV(s.Ybus, s.V);
+	}
+
+	@Benchmark
+	public JPC ext2int(PowerFlowState s) {
+		return Djp_ext2int.ext2int(s.external);
+	}
+
+	/**
+	 * int2ext modifies its argument, so this includes copying the case.
+	 */
+	@Benchmark
+	public JPC int2ext(PowerFlowState s) {
+		return Djp_int2ext.int2ext(s.solved.copy());
+	}
+
+}
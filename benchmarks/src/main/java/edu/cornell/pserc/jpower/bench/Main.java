@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate
+ * is reported with the throughput of each benchmark. Accepts the usual
+ * JMH command line options, e.g.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar Solver -p casename=case57
+ * </pre>
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Main {
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build();
+
+		new Runner(opt).run();
+	}
+
+}
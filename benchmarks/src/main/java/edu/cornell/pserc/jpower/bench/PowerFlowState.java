@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+import cern.jet.math.tdcomplex.DComplexFunctions;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+import static edu.emory.mathcs.utils.Utils.complex;
+import static edu.emory.mathcs.utils.Utils.polar;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
+
+import edu.cornell.pserc.jpower.cases.Djp_case14;
+import edu.cornell.pserc.jpower.cases.Djp_case30;
+import edu.cornell.pserc.jpower.cases.Djp_case39;
+import edu.cornell.pserc.jpower.cases.Djp_case57;
+import edu.cornell.pserc.jpower.cases.Djp_case_synth;
+import edu.cornell.pserc.jpower.cases.Djp_case9;
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_makeB;
+import edu.cornell.pserc.jpower.pf.Djp_makeBdc;
+import edu.cornell.pserc.jpower.pf.Djp_makeSbus;
+import edu.cornell.pserc.jpower.pf.Djp_makeYbus;
+import edu.cornell.pserc.jpower.pf.Djp_newtonpf;
+import edu.cornell.pserc.jpower.pf.Djp_pfsoln;
+
+/**
+ * Benchmark case and the intermediate data of a power flow, prepared as
+ * in runpf so that each stage can be measured on its own.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@State(Scope.Benchmark)
+public class PowerFlowState {
+
+	/** name of the case, see load() */
+	@Param({"case9", "case14", "case30", "case39", "case57", "synth10000"})
+	public String casename;
+
+	/** quiet options, Newton's method */
+	public Map<String, Double> jpopt;
+
+	/** case with flow columns, external indexing */
+	public JPC external;
+
+	/** case with internal indexing */
+	public JPC internal;
+
+	/** solved case with internal indexing, as passed to int2ext */
+	public JPC solved;
+
+	public double baseMVA;
+	public Bus bus;
+	public Gen gen;
+	public Branch branch;
+
+	public int ref;
+	public int[] pv, pq;
+
+	public DComplexMatrix2D Ybus, Yf, Yt;
+	public DComplexMatrix1D Sbus, V0;
+
+	/** solution of the AC power flow */
+	public DComplexMatrix1D V;
+
+	/** FDPF B matrices, XB version */
+	public DoubleMatrix2D Bp, Bpp;
+
+	/** DC power flow data */
+	public DoubleMatrix2D B;
+	public DoubleMatrix1D Pbus, Va0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		int[] gbus;
+		IntMatrix1D[] bt;
+		DComplexMatrix2D[] Y;
+		DoubleMatrix2D[] BB;
+		AbstractMatrix[] Bdc;
+		DComplexMatrix1D normV0g, cVg;
+		Object[] soln;
+
+		jpopt = jpoption("VERBOSE", 0.0, "OUT_ALL", 0.0);
+
+		external = load(casename);
+		branch = external.branch;
+		if (branch.Qt == null) {
+			int nl = branch.size();
+			branch.Pf = DoubleFactory1D.dense.make(nl);
+			branch.Qf = DoubleFactory1D.dense.make(nl);
+			branch.Pt = DoubleFactory1D.dense.make(nl);
+			branch.Qt = DoubleFactory1D.dense.make(nl);
+		}
+
+		internal = ext2int(external);
+		baseMVA = internal.baseMVA;
+		bus = internal.bus;
+		gen = internal.gen;
+		branch = internal.branch;
+
+		bt = bustypes(bus, gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		Y = Djp_makeYbus.makeYbus(baseMVA, bus, branch);
+		Ybus = Y[0]; Yf = Y[1]; Yt = Y[2];
+		Sbus = Djp_makeSbus.makeSbus(baseMVA, bus, gen);
+
+		/* all internal gens are on */
+		gbus = gen.gen_bus.toArray();
+		V0 = polar(bus.Vm, bus.Va, false);
+		normV0g = V0.viewSelection(gbus).copy().assign(DComplexFunctions.abs).assign(V0.viewSelection(gbus), DComplexFunctions.mult);
+		cVg = complex(gen.Vg, null);
+		V0.viewSelection(gbus).assign(cVg.assign(normV0g, DComplexFunctions.div));
+
+		soln = Djp_newtonpf.newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+		V = (DComplexMatrix1D) soln[0];
+
+		solved = internal.copy();
+		soln = pfsoln();
+		solved.bus = (Bus) soln[0];
+		solved.gen = (Gen) soln[1];
+		solved.branch = (Branch) soln[2];
+
+		BB = Djp_makeB.makeB(baseMVA, bus, branch, 2);
+		Bp = BB[0];
+		Bpp = BB[1];
+
+		Bdc = Djp_makeBdc.makeBdc(baseMVA, bus, branch);
+		B = (DoubleMatrix2D) Bdc[0];
+		Pbus = Sbus.getRealPart();
+		Pbus.assign((DoubleMatrix1D) Bdc[2], DoubleFunctions.minus);
+		Pbus.assign(bus.Gs.copy().assign(DoubleFunctions.div(baseMVA)), DoubleFunctions.minus);
+		Va0 = bus.Va.copy().assign(DoubleFunctions.chain(DoubleFunctions.mult(Math.PI), DoubleFunctions.div(180)));
+	}
+
+	/**
+	 *
+	 * @return bus, gen and branch data updated with the solution V.
+	 */
+	public Object[] pfsoln() {
+		return Djp_pfsoln.pfsoln(baseMVA, bus, gen, branch, Ybus, Yf, Yt, V, ref, pv, pq);
+	}
+
+	/**
+	 * Loads a bundled case, or generates a synthetic case for names of
+	 * the form synthN, where N is the number of buses.
+	 *
+	 * @param casename name of the case
+	 * @return case data.
+	 */
+	public static JPC load(String casename) {
+		if (casename.startsWith("synth"))
+			return Djp_case_synth.jp_case_synth(Integer.parseInt(casename.substring(5)));
+		if (casename.equals("case9"))
+			return Djp_case9.jp_case9();
+		if (casename.equals("case14"))
+			return Djp_case14.jp_case14();
+		if (casename.equals("case30"))
+			return Djp_case30.jp_case30();
+		if (casename.equals("case39"))
+			return Djp_case39.jp_case39();
+		if (casename.equals("case57"))
+			return Djp_case57.jp_case57();
+		throw new IllegalArgumentException("unknown case: " + casename);
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
+
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_runpf;
+import edu.cornell.pserc.jpower.pf.FDPFFactors;
+
+/**
+ * End-to-end runpf for each power flow algorithm, from the external case
+ * to the solved case.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunpfBenchmark {
+
+	/** value of PF_ALG, or 0 for the DC power flow */
+	@Param({"1", "2", "3", "4", "0"})
+	public int alg;
+
+	private Map<String, Double> jpopt;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (alg == 0) {
+			jpopt = jpoption("VERBOSE", 0.0, "OUT_ALL", 0.0, "PF_DC", 1.0);
+		} else {
+			jpopt = jpoption("VERBOSE", 0.0, "OUT_ALL", 0.0, "PF_ALG", (double) alg);
+		}
+	}
+
+	/**
+	 * Fast-decoupled factors are otherwise cached between calls.
+	 */
+	@Setup(Level.Invocation)
+	public void invalidate() {
+		FDPFFactors.invalidate();
+	}
+
+	@Benchmark
+	public JPC runpf(PowerFlowState s) {
+		return Djp_runpf.runpf(s.external, jpopt);
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+
+import edu.cornell.pserc.jpower.pf.Djp_dcpf;
+import edu.cornell.pserc.jpower.pf.Djp_fdpf;
+import edu.cornell.pserc.jpower.pf.Djp_gausspf;
+import edu.cornell.pserc.jpower.pf.Djp_newtonpf;
+
+/**
+ * Power flow solvers, from the initial state of the case to convergence,
+ * and the update of the case data with the solution.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	@Benchmark
+	public Object[] newtonpf(PowerFlowState s) {
+		return Djp_newtonpf.newtonpf(s.Ybus, s.Sbus, s.V0, s.ref, s.pv, s.pq, s.jpopt);
+	}
+
+	/**
+	 * Includes reducing and factoring the B matrices.
+	 */
+	@Benchmark
+	public Object[] fdpf(PowerFlowState s) {
+		return Djp_fdpf.fdpf(s.Ybus, s.Sbus, s.V0, s.Bp, s.Bpp, s.ref, s.pv, s.pq, s.jpopt);
+	}
+
+	@Benchmark
+	public Object[] gausspf(PowerFlowState s) {
+		return Djp_gausspf.gausspf(s.Ybus, s.Sbus, s.V0, s.ref, s.pv, s.pq, s.jpopt);
+	}
+
+	@Benchmark
+	public DoubleMatrix1D dcpf(PowerFlowState s) {
+		return Djp_dcpf.dcpf(s.B, s.Pbus, s.Va0, s.ref, s.pv, s.pq);
+	}
+
+	@Benchmark
+	public Object[] pfsoln(PowerFlowState s) {
+		return s.pfsoln();
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+
+import edu.cornell.pserc.jpower.pf.Djp_newtonpf;
+import edu.cornell.pserc.jpower.pf.Jacobian;
+import edu.cornell.pserc.jpower.pf.Kernels;
+import edu.cornell.pserc.jpower.pf.VoltageState;
+
+/**
+ * Scalar and SIMD implementations of the sparse complex kernels, on
+ * their own and within the Jacobian update and Newton's method. The
+ * vector kernels need JDK 17 or later and JPOWER built with the "vector"
+ * profile, e.g.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar SparseKernel -p casename=synth100000
+ * </pre>
+ *
+ * @author Richard Lincoln
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SparseKernelBenchmark {
+
+	/**
+	 * Ybus in compressed-row form with separate real and imaginary parts
+	 * and the solution voltages, for the selected kernels.
+	 */
+	@State(Scope.Benchmark)
+	public static class KernelState {
+
+		/** "scalar" or "vector" */
+		@Param({"scalar", "vector"})
+		public String kernels;
+
+		public Kernels k;
+
+		public int nb, nz;
+		public int[] Yp, Yj, Yrow;
+		public double[] Yx, Yr, Yi, Ir, Ii, Sr, Si, Wr, Wi;
+		public VoltageState x;
+		public Jacobian J;
+
+		@Setup(Level.Trial)
+		public void setup(PowerFlowState s) {
+			SparseRCDComplexMatrix2D Y;
+
+			k = Kernels.forName(kernels);
+			if (k == null)
+				throw new IllegalStateException(kernels + " kernels not available");
+			Kernels.set(k);
+
+			Y = new SparseRCDComplexMatrix2D(s.Ybus.rows(), s.Ybus.columns());
+			Y.assign(s.Ybus);
+			nb = Y.rows();
+			Yp = Y.getRowPointers();
+			Yj = Y.getColumnIndexes();
+			Yx = Y.getValues();
+			nz = Yp[nb];
+			Yrow = new int[nz];
+			for (int i = 0; i < nb; i++)
+				for (int p = Yp[i]; p < Yp[i + 1]; p++)
+					Yrow[p] = i;
+			Yr = new double[nz];
+			Yi = new double[nz];
+			k.split(Yx, Yr, Yi, 0, nz);
+
+			x = new VoltageState(s.V);
+			Ir = new double[nb];
+			Ii = new double[nb];
+			Sr = new double[nb];
+			Si = new double[nb];
+			Wr = new double[nz];
+			Wi = new double[nz];
+
+			J = new Jacobian(s.Ybus, s.pv, s.pq);
+		}
+
+	}
+
+	@Benchmark
+	public double[] multiply(KernelState t) {
+		t.k.multiply(t.Yp, t.Yj, t.Yr, t.Yi, t.x.Vr, t.x.Vi, t.Ir, t.Ii, null, 0, t.nb);
+		return t.Ir;
+	}
+
+	@Benchmark
+	public double[] power(KernelState t) {
+		t.k.power(t.x.Vr, t.x.Vi, t.Ir, t.Ii, t.Sr, t.Si, null, 0, t.nb);
+		return t.Sr;
+	}
+
+	@Benchmark
+	public double[] products(KernelState t) {
+		t.k.products(t.Yrow, t.Yj, t.Yr, t.Yi, t.x.Vr, t.x.Vi, t.Wr, t.Wi, 0, t.nz);
+		return t.Wr;
+	}
+
+	@Benchmark
+	public double[] split(KernelState t) {
+		t.k.split(t.Yx, t.Yr, t.Yi, 0, t.nz);
+		return t.Yr;
+	}
+
+	@Benchmark
+	public Jacobian jacobian(KernelState t) {
+		t.J.update(t.x.Vm, t.x.Va);
+		return t.J;
+	}
+
+	@Benchmark
+	public Object[] newtonpf(PowerFlowState s, KernelState t) {
+		return Djp_newtonpf.newtonpf(s.Ybus, s.Sbus, s.V0, s.ref, s.pv, s.pq, s.jpopt);
+	}
+
+}
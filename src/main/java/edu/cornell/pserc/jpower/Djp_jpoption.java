@@ -33,6 +33,9 @@ import java.util.Map;
  * 			[   2 - Fast-Decoupled (XB version)                             ]
  * 			[   3 - Fast-Decoupled (BX version)                             ]
  * 			[   4 - Gauss-Seidel                                            ]
+ * 			[   5 - Newton's method, dishonest (chord) variant              ]
+ * 			[   6 - Newton's method, current injection, cartesian           ]
+ * 			[   7 - backward/forward sweep, radial networks only           ]
  * 	2  - PF_TOL, 1e-8           termination tolerance on per unit
  * 								P & Q mismatch
  * 	3  - PF_MAX_IT, 10          maximum number of iterations for
@@ -46,6 +49,20 @@ import java.util.Map;
  * 			[    0 - do NOT enforce limits                                  ]
  * 			[    1 - enforce limits, simultaneous bus type conversion       ]
  * 			[    2 - enforce limits, one-at-a-time bus type conversion      ]
+ * 			[    3 - enforce limits, PV-PQ switching between iterations of  ]
+ * 			[        the Newton (PF_ALG 1 and 5) and fast-decoupled         ]
+ * 			[        solvers, ref bus not limited; Gauss-Seidel, current    ]
+ * 			[        injection Newton and radial sweep convert bus types    ]
+ * 			[        between solves, as for 1                               ]
+ * 	7  - PF_DNR_RATIO, 0.25     refactorize the Jacobian in dishonest
+ * 								Newton's method when the ratio of
+ * 								successive mismatch norms exceeds this
+ * 	8  - PF_DNR_MAX_AGE, 0      maximum number of iterations between
+ * 								Jacobian refactorizations in dishonest
+ * 								Newton's method        [   0 => no limit   ]
+ * 	9  - PF_GS_OMEGA, 1         relaxation factor for Gauss-Seidel,
+ * 								between 0 and 2 (exclusive), above 1
+ * 								for successive over-relaxation
  * 	10 - PF_DC, 0               DC modeling for power flow & OPF
  * 			[    0 - use AC formulation & corresponding algorithm options   ]
  * 			[    1 - use DC formulation, ignore AC algorithm options        ]
@@ -153,6 +170,13 @@ import java.util.Map;
  * 	93 - SMOOTHING_RATIO, 0.04  piecewise linear curve smoothing ratio
  * 								used in SC-PDIPM and TRALM
  *
+ * 	power flow solver options
+ * 	94 - PF_GS_ORDER, 0         order of the Gauss-Seidel bus updates
+ * 			[    0 - natural, PQ buses then PV buses                        ]
+ * 			[    1 - red-black (coloured), buses of each colour in parallel ]
+ * 	95 - PF_MAX_IT_BFS, 100     maximum number of iterations for
+ * 								backward/forward sweep method
+ *
  * 	deprecated options
  * 	43 - OUT_RAW, 0             print raw data for Perl database
  * 								interface code              [   0 or 1  ]
@@ -227,6 +251,9 @@ public class Djp_jpoption {
 			options.put("PF_MAX_IT_FD", 30.0);
 			options.put("PF_MAX_IT_GS", 1000.0);
 			options.put("ENFORCE_Q_LIMS", 0.0);
+			options.put("PF_DNR_RATIO", 0.25);
+			options.put("PF_DNR_MAX_AGE", 0.0);
+			options.put("PF_GS_OMEGA", 1.0);
 			options.put("PF_DC", 0.0);
 
 			// OPF options
@@ -279,6 +306,10 @@ public class Djp_jpoption {
 			options.put("TRALM_MAJOR_IT", 40.0);
 			options.put("TRALM_MINOR_IT", 100.0);
 			options.put("SMOOTHING_RATIO", 0.04);
+
+			// power flow solver options
+			options.put("PF_GS_ORDER", 0.0);
+			options.put("PF_MAX_IT_BFS", 100.0);
 		}
 
 		if (name1 != null)
@@ -18,9 +18,14 @@
 
 package edu.cornell.pserc.jpower;
 
+import java.io.File;
+import java.io.IOException;
+
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 
 import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.CaseReader;
+import edu.cornell.pserc.jpower.jpc.CaseSnapshot;
 import edu.cornell.pserc.jpower.jpc.Gen;
 import edu.cornell.pserc.jpower.jpc.JPC;
 
@@ -29,9 +34,31 @@ import edu.cornell.pserc.jpower.jpc.JPC;
  */
 public class Djp_loadcase {
 
+	/**
+	 * Loads a binary case snapshot (.jpc) written by savecase or a MATPOWER
+	 * case file, in version 1 or version 2 format.
+	 *
+	 * @param casefile file name, the .m extension may be omitted
+	 * @return case data, converted to version 2 format.
+	 */
 	public static JPC loadcase(String casefile) {
-		// TODO Implement this method
-		throw new UnsupportedOperationException();
+		JPC jpc;
+		File file = new File(casefile);
+
+		if (!file.exists() && !casefile.endsWith(".m") && !casefile.endsWith(Djp_savecase.SNAPSHOT_EXT))
+			file = new File(casefile + ".m");
+
+		try {
+			if (file.getName().endsWith(Djp_savecase.SNAPSHOT_EXT)) {
+				jpc = CaseSnapshot.read(file.getPath());
+			} else {
+				jpc = CaseReader.read(file.getPath());
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("loadcase: " + file.getPath() + ": " + e.getMessage(), e);
+		}
+
+		return jpc_1to2(jpc);
 	}
 
 	public static JPC loadcase(JPC jpc) {
@@ -39,6 +66,10 @@ public class Djp_loadcase {
 
 		// TODO: -----  check contents of case  -----
 
+		return jpc_1to2(jpc);
+	}
+
+	private static JPC jpc_1to2(JPC jpc) {
 		if (jpc.version.equals("1")) {
 			jpc.gen = jpc_1to2(jpc.gen);
 			jpc.branch = jpc_1to2(jpc.branch);
@@ -18,12 +18,43 @@
 
 package edu.cornell.pserc.jpower;
 
+import java.io.File;
+import java.io.IOException;
+
+import edu.cornell.pserc.jpower.jpc.CaseSnapshot;
 import edu.cornell.pserc.jpower.jpc.JPC;
 
+/**
+ * Saves a JPOWER case.
+ *
+ * @author Richard Lincoln
+ */
 public class Djp_savecase {
 
+	/** extension of binary case snapshots */
+	public static final String SNAPSHOT_EXT = ".jpc";
+
+	/**
+	 * Saves the case, including any results, as a binary snapshot that can
+	 * be read back with loadcase. The .jpc extension is added if fname
+	 * has none. Writing M-files is not supported.
+	 *
+	 * @param fname file name
+	 * @param casestruct case data
+	 * @throws IllegalArgumentException if fname is an M-file or the
+	 * snapshot can not be written
+	 */
 	public static void savecase(String fname, JPC casestruct) {
-		throw new UnsupportedOperationException();
+		if (fname.endsWith(".m"))
+			throw new IllegalArgumentException("savecase: " + fname + ": saving M-files is not supported, use a " + SNAPSHOT_EXT + " file name");
+		if (fname.lastIndexOf('.') <= fname.lastIndexOf(File.separatorChar))
+			fname = fname + SNAPSHOT_EXT;
+
+		try {
+			CaseSnapshot.write(fname, casestruct);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("savecase: " + fname + ": " + e.getMessage(), e);
+		}
 	}
 
 }
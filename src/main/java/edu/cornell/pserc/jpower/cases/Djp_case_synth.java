@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.cases;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+
+import edu.cornell.pserc.jpower.jpc.Areas;
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.GenCost;
+import edu.cornell.pserc.jpower.jpc.JPC;
+
+/**
+ * Synthetic power flow cases of any size, for scale testing.
+ *
+ * The buses are laid out on a rectangular grid and connected to their
+ * horizontal and, with some left out, vertical neighbours by 138 kV
+ * lines and transformers, plus a few short chords. The grid is divided
+ * into blocks of 5 x 5 buses, each with a plant at its centre that
+ * supplies the load of the block and an estimate of its losses, and the
+ * plants are tied to those of the neighbouring blocks by low impedance
+ * lines. The plant nearest the centre of the grid is the reference. A
+ * small number of other buses have generators too. Some transformers
+ * have off-nominal taps and a few are phase shifters.
+ *
+ * Since each block is balanced, flows stay local and, from the initial
+ * voltages given in the case, the power flow converges for any number
+ * of buses. All values are drawn from a random number generator with
+ * the given seed, so a case is reproduced exactly by the same size and
+ * seed.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_case_synth {
+
+	/** seed used if none is given */
+	public static final long DEFAULT_SEED = 1;
+
+	/** side of the blocks of buses supplied by one plant */
+	private static final int BLOCK = 5;
+
+	/** ratio of meshed to radial losses, found by solving large cases */
+	private static final double MESH_LOSS = 0.68;
+
+	/** number and factor of over-relaxation sweeps for the initial angles */
+	private static final int SWEEPS = 50;
+	private static final double OMEGA = 1.5;
+
+	/**
+	 *
+	 * @param nb number of buses
+	 * @return a synthetic case with the default seed.
+	 */
+	public static JPC jp_case_synth(int nb) {
+		return jp_case_synth(nb, DEFAULT_SEED);
+	}
+
+	/**
+	 *
+	 * @param nb number of buses, at least 2
+	 * @param seed random number generator seed
+	 * @return a synthetic case with nb buses.
+	 */
+	public static JPC jp_case_synth(int nb, long seed) {
+		if (nb < 2)
+			throw new IllegalArgumentException("jp_case_synth: at least 2 buses required");
+		return new Generator(nb, seed).generate();
+	}
+
+	private static class Generator {
+
+		private final int nb, rows, cols, nbr, nbc;
+		private final Random rnd;
+
+		/* bus data, indexed from 0 */
+		private int[] type;
+		private double[] Pd, Qd, Bs, Vm, Va;
+
+		/* injections without losses, per unit */
+		private double[] inj;
+
+		/* plant bus of each block, or -1 for blocks outside the grid */
+		private int[] plant;
+		private int ref;
+
+		/* branch data */
+		private int nl;
+		private int[] fbus, tbus;
+		private double[] r, x, b, rate, tap, shift;
+
+		/* gen data */
+		private int ng;
+		private int[] gbus;
+		private double[] Pg, Vg, c2, c1;
+
+		Generator(int nb, long seed) {
+			this.nb = nb;
+			this.rnd = new Random(seed);
+			cols = (int) Math.ceil(Math.sqrt(nb));
+			rows = (nb + cols - 1) / cols;
+			nbr = (rows + BLOCK - 1) / BLOCK;
+			nbc = (cols + BLOCK - 1) / BLOCK;
+
+			int n = 2 * nb + 16;
+			fbus = new int[n]; tbus = new int[n];
+			r = new double[n]; x = new double[n]; b = new double[n];
+			rate = new double[n]; tap = new double[n]; shift = new double[n];
+		}
+
+		JPC generate() {
+			loads();
+			plants();
+			mesh();
+			chords();
+			backbone();
+			generators();
+			dispatch();
+			angles();
+			return toCase();
+		}
+
+		/**
+		 * 80% of buses have load, 3% a shunt capacitor.
+		 */
+		private void loads() {
+			type = new int[nb];
+			Pd = new double[nb];
+			Qd = new double[nb];
+			Bs = new double[nb];
+			Vm = new double[nb];
+			Va = new double[nb];
+			inj = new double[nb];
+
+			Arrays.fill(type, 1);
+			Arrays.fill(Vm, 1);
+			for (int k = 0; k < nb; k++) {
+				if (rnd.nextDouble() < 0.8) {
+					Pd[k] = 5 + 20 * rnd.nextDouble();
+					Qd[k] = Pd[k] * (0.2 + 0.2 * rnd.nextDouble());
+				}
+				if (rnd.nextDouble() < 0.03)
+					Bs[k] = 5 + 15 * rnd.nextDouble();
+			}
+		}
+
+		/**
+		 * Places a plant at the bus nearest the centre of each block.
+		 */
+		private void plants() {
+			int r0, c0, rc, cc, blk;
+
+			plant = new int[nbr * nbc];
+			for (int br = 0; br < nbr; br++) {
+				for (int bc = 0; bc < nbc; bc++) {
+					blk = br * nbc + bc;
+					r0 = br * BLOCK;
+					c0 = bc * BLOCK;
+					if (r0 * cols + c0 >= nb) {
+						plant[blk] = -1;
+						continue;
+					}
+					rc = Math.min(r0 + BLOCK / 2, rows - 1);
+					cc = Math.min(c0 + BLOCK / 2, cols - 1);
+					/* the last row of the grid may be incomplete */
+					while (rc * cols + cc >= nb) {
+						if (rc > r0) rc--; else cc--;
+					}
+					plant[blk] = rc * cols + cc;
+					type[plant[blk]] = 2;
+				}
+			}
+
+			blk = (nbr / 2) * nbc + nbc / 2;
+			if (plant[blk] < 0)
+				blk = 0;
+			ref = plant[blk];
+			type[ref] = 3;
+		}
+
+		/**
+		 * Connects horizontal neighbours and 60% of vertical neighbours.
+		 * Vertical connections in the first column and the plant columns
+		 * are always kept, so the grid and each block are connected.
+		 */
+		private void mesh() {
+			int k, c;
+
+			for (k = 0; k < nb; k++) {
+				c = k % cols;
+				if (c + 1 < cols && k + 1 < nb)
+					meshBranch(k, k + 1);
+				if (k + cols < nb) {
+					if (c == 0 || c == plant[block(k)] % cols || rnd.nextDouble() < 0.6)
+						meshBranch(k, k + cols);
+				}
+			}
+		}
+
+		/**
+		 * Adds lines between 5% of buses and a bus up to 3 rows and columns
+		 * away.
+		 */
+		private void chords() {
+			int k, c, dr, dc, j;
+
+			for (k = 0; k < nb; k++) {
+				if (rnd.nextDouble() >= 0.05)
+					continue;
+				dr = rnd.nextInt(7) - 3;
+				dc = rnd.nextInt(7) - 3;
+				c = k % cols + dc;
+				j = k + dr * cols + dc;
+				if (Math.abs(dr) + Math.abs(dc) < 2 || c < 0 || c >= cols || j < 0 || j >= nb)
+					continue;
+				line(k, j);
+			}
+		}
+
+		/**
+		 * Ties each plant to the plants of the blocks to its right and below.
+		 */
+		private void backbone() {
+			int p, q;
+
+			for (int br = 0; br < nbr; br++) {
+				for (int bc = 0; bc < nbc; bc++) {
+					p = plant[br * nbc + bc];
+					if (p < 0)
+						continue;
+					q = (bc + 1 < nbc) ? plant[br * nbc + bc + 1] : -1;
+					if (q >= 0)
+						tie(p, q);
+					q = (br + 1 < nbr) ? plant[(br + 1) * nbc + bc] : -1;
+					if (q >= 0)
+						tie(p, q);
+				}
+			}
+		}
+
+		/**
+		 * Adds a generator at each plant and at 2% of the other buses, in
+		 * order of bus. Other generators have a fixed output.
+		 */
+		private void generators() {
+			int n = nbr * nbc + nb / 25 + 16;
+
+			gbus = new int[n];
+			Pg = new double[n];
+			Vg = new double[n];
+			c2 = new double[n];
+			c1 = new double[n];
+
+			for (int k = 0; k < nb; k++) {
+				if (type[k] == 1) {
+					if (rnd.nextDouble() >= 0.02)
+						continue;
+					type[k] = 2;
+					Pg[ng] = 10 + 30 * rnd.nextDouble();
+				}
+				if (ng == gbus.length) {
+					gbus = Arrays.copyOf(gbus, 2 * ng);
+					Pg = Arrays.copyOf(Pg, 2 * ng);
+					Vg = Arrays.copyOf(Vg, 2 * ng);
+					c2 = Arrays.copyOf(c2, 2 * ng);
+					c1 = Arrays.copyOf(c1, 2 * ng);
+				}
+				gbus[ng] = k;
+				Vg[ng] = 1.01 + 0.02 * rnd.nextDouble();
+				c2[ng] = 0.01 + 0.04 * rnd.nextDouble();
+				c1[ng] = 10 + 30 * rnd.nextDouble();
+				Vm[k] = Vg[ng];
+				ng++;
+			}
+		}
+
+		/**
+		 * Sets the output of each plant to the net load of its block plus
+		 * an estimate of its losses. The losses of a radial supply from the
+		 * plant are found on a breadth-first spanning tree of the branches
+		 * within the block. With flows shared by the meshed branches the
+		 * losses are about two thirds of this, leaving the reference to
+		 * supply a small fraction of a percent of the load.
+		 */
+		private void dispatch() {
+			int nblk = nbr * nbc, head, tail, i, j, k, blk, e;
+			int[] ptr, adj, parent, queue, gen;
+			double[] net, P, Q, load;
+			double loss;
+
+			/* net load of each bus and each block, MW */
+			net = new double[nb];
+			load = new double[nblk];
+			gen = new int[nb];
+			Arrays.fill(gen, -1);
+			for (k = 0; k < nb; k++)
+				net[k] = Pd[k];
+			for (i = 0; i < ng; i++) {
+				gen[gbus[i]] = i;
+				if (!isPlant(gbus[i]))
+					net[gbus[i]] -= Pg[i];
+			}
+			for (k = 0; k < nb; k++) {
+				load[block(k)] += net[k];
+				inj[k] = -net[k] / 100;
+			}
+
+			/* adjacency of branches within blocks */
+			ptr = new int[nb + 1];
+			for (e = 0; e < nl; e++) {
+				if (block(fbus[e]) == block(tbus[e])) {
+					ptr[fbus[e] + 1]++;
+					ptr[tbus[e] + 1]++;
+				}
+			}
+			for (k = 0; k < nb; k++)
+				ptr[k + 1] += ptr[k];
+			adj = new int[ptr[nb]];
+			int[] fill = Arrays.copyOf(ptr, nb);
+			for (e = 0; e < nl; e++) {
+				if (block(fbus[e]) == block(tbus[e])) {
+					adj[fill[fbus[e]]++] = e;
+					adj[fill[tbus[e]]++] = e;
+				}
+			}
+
+			/* breadth-first search from each plant */
+			parent = new int[nb];
+			Arrays.fill(parent, -2);
+			queue = new int[nb];
+			P = new double[nb];
+			Q = new double[nb];
+			for (blk = 0; blk < nblk; blk++) {
+				if (plant[blk] < 0)
+					continue;
+				head = tail = 0;
+				queue[tail++] = plant[blk];
+				parent[plant[blk]] = -1;
+				while (head < tail) {
+					k = queue[head++];
+					for (i = ptr[k]; i < ptr[k + 1]; i++) {
+						e = adj[i];
+						j = (fbus[e] == k) ? tbus[e] : fbus[e];
+						if (parent[j] == -2) {
+							parent[j] = e;
+							queue[tail++] = j;
+						}
+					}
+				}
+
+				/* accumulate flows towards the plant, per unit */
+				loss = 0;
+				for (i = tail - 1; i > 0; i--) {
+					k = queue[i];
+					e = parent[k];
+					j = (fbus[e] == k) ? tbus[e] : fbus[e];
+					P[k] += net[k] / 100;
+					Q[k] += (Qd[k] - Bs[k]) / 100;
+					loss += r[e] * (P[k] * P[k] + Q[k] * Q[k]);
+					P[j] += P[k];
+					Q[j] += Q[k];
+				}
+
+				Pg[gen[plant[blk]]] = Math.max(load[blk] + 100 * MESH_LOSS * loss, 0);
+				inj[plant[blk]] += load[blk] / 100;
+
+				/* angles of the radial flows, relative to the plant */
+				for (i = 1; i < tail; i++) {
+					k = queue[i];
+					e = parent[k];
+					j = (fbus[e] == k) ? tbus[e] : fbus[e];
+					Va[k] = Va[j] - x[e] * P[k];
+				}
+			}
+		}
+
+		/**
+		 * Sets the initial voltage angles to an approximate solution of the
+		 * DC power flow without losses, found by successive over-relaxation
+		 * from the radial angles. The losses at a flat start are close to
+		 * zero, so the first iteration would otherwise carry the loss
+		 * allowance of every plant to the reference.
+		 */
+		private void angles() {
+			int[] ptr, adj;
+			double[] w, diag;
+			double s;
+			int k, l, e;
+
+			ptr = new int[nb + 1];
+			for (e = 0; e < nl; e++) {
+				ptr[fbus[e] + 1]++;
+				ptr[tbus[e] + 1]++;
+			}
+			for (k = 0; k < nb; k++)
+				ptr[k + 1] += ptr[k];
+			adj = new int[ptr[nb]];
+			w = new double[ptr[nb]];
+			diag = new double[nb];
+			int[] fill = Arrays.copyOf(ptr, nb);
+			for (e = 0; e < nl; e++) {
+				l = fill[fbus[e]]++;
+				adj[l] = tbus[e];
+				w[l] = 1 / x[e];
+				l = fill[tbus[e]]++;
+				adj[l] = fbus[e];
+				w[l] = 1 / x[e];
+				diag[fbus[e]] += 1 / x[e];
+				diag[tbus[e]] += 1 / x[e];
+			}
+
+			for (int sweep = 0; sweep < SWEEPS; sweep++) {
+				for (k = 0; k < nb; k++) {
+					if (k == ref)
+						continue;
+					s = inj[k];
+					for (l = ptr[k]; l < ptr[k + 1]; l++)
+						s += w[l] * Va[adj[l]];
+					Va[k] += OMEGA * (s / diag[k] - Va[k]);
+				}
+			}
+			for (k = 0; k < nb; k++)
+				Va[k] *= 180 / Math.PI;
+		}
+
+		private boolean isPlant(int k) {
+			return plant[block(k)] == k;
+		}
+
+		private int block(int k) {
+			return ((k / cols) / BLOCK) * nbc + (k % cols) / BLOCK;
+		}
+
+		/**
+		 * 10% of mesh branches are transformers, 5% of which shift phase.
+		 */
+		private void meshBranch(int f, int t) {
+			double xx;
+
+			if (rnd.nextDouble() < 0.1) {
+				xx = 0.03 + 0.05 * rnd.nextDouble();
+				branch(f, t, xx * (0.01 + 0.02 * rnd.nextDouble()), xx, 0, 200);
+				tap[nl - 1] = 0.975 + 0.05 * rnd.nextDouble();
+				if (rnd.nextDouble() < 0.05)
+					shift[nl - 1] = (rnd.nextBoolean() ? 1 : -1) * (1 + 2 * rnd.nextDouble());
+			} else {
+				line(f, t);
+			}
+		}
+
+		private void line(int f, int t) {
+			double xx = 0.02 + 0.06 * rnd.nextDouble();
+
+			branch(f, t, xx * (0.08 + 0.07 * rnd.nextDouble()), xx,
+					xx * (0.2 + 0.2 * rnd.nextDouble()), 150);
+		}
+
+		private void tie(int f, int t) {
+			double xx = 0.01 + 0.01 * rnd.nextDouble();
+
+			branch(f, t, xx * (0.05 + 0.05 * rnd.nextDouble()), xx,
+					xx * (1 + rnd.nextDouble()), 1000);
+		}
+
+		private void branch(int f, int t, double rr, double xx, double bb, double rateA) {
+			if (nl == fbus.length) {
+				int n = 2 * nl;
+				fbus = Arrays.copyOf(fbus, n); tbus = Arrays.copyOf(tbus, n);
+				r = Arrays.copyOf(r, n); x = Arrays.copyOf(x, n); b = Arrays.copyOf(b, n);
+				rate = Arrays.copyOf(rate, n); tap = Arrays.copyOf(tap, n);
+				shift = Arrays.copyOf(shift, n);
+			}
+			fbus[nl] = f;
+			tbus[nl] = t;
+			r[nl] = rr;
+			x[nl] = xx;
+			b[nl] = bb;
+			rate[nl] = rateA;
+			nl++;
+		}
+
+		private JPC toCase() {
+			JPC jpc = new JPC();
+			Bus bus = new Bus();
+			Gen gen = new Gen();
+			Branch branch = new Branch();
+			int[] num, ones;
+			double[] Pmax, Qmax, Qmin;
+			double[][] cost;
+
+			jpc.version = "2";
+			jpc.baseMVA = 100;
+
+			/* bus data, numbered from 1 */
+			num = new int[nb];
+			for (int k = 0; k < nb; k++)
+				num[k] = k + 1;
+			ones = new int[nb];
+			Arrays.fill(ones, 1);
+			bus.bus_i = Columns.make(num);
+			bus.bus_type = Columns.make(type);
+			bus.Pd = Columns.make(Pd);
+			bus.Qd = Columns.make(Qd);
+			bus.Gs = Columns.make(new double[nb]);
+			bus.Bs = Columns.make(Bs);
+			bus.bus_area = Columns.make(ones);
+			bus.Vm = Columns.make(Vm);
+			bus.Va = Columns.make(Va);
+			bus.base_kV = fill(nb, 138);
+			bus.zone = Columns.make(ones.clone());
+			bus.Vmax = fill(nb, 1.1);
+			bus.Vmin = fill(nb, 0.9);
+			jpc.bus = bus;
+
+			/* gen data */
+			Pmax = new double[ng];
+			Qmax = new double[ng];
+			Qmin = new double[ng];
+			for (int i = 0; i < ng; i++) {
+				Pmax[i] = 1.5 * Pg[i] + 50;
+				Qmax[i] = 0.75 * Pmax[i];
+				Qmin[i] = -0.5 * Qmax[i];
+			}
+			for (int i = 0; i < ng; i++)
+				gbus[i] += 1;
+			ones = new int[ng];
+			Arrays.fill(ones, 1);
+			gen.gen_bus = Columns.make(Arrays.copyOf(gbus, ng));
+			gen.Pg = Columns.make(Arrays.copyOf(Pg, ng));
+			gen.Qg = Columns.make(new double[ng]);
+			gen.Qmax = Columns.make(Qmax);
+			gen.Qmin = Columns.make(Qmin);
+			gen.Vg = Columns.make(Arrays.copyOf(Vg, ng));
+			gen.mBase = fill(ng, 100);
+			gen.gen_status = Columns.make(ones);
+			gen.Pmax = Columns.make(Pmax);
+			gen.Pmin = Columns.make(new double[ng]);
+			gen.Pc1 = Columns.make(new double[ng]);
+			gen.Pc2 = Columns.make(new double[ng]);
+			gen.Qc1min = Columns.make(new double[ng]);
+			gen.Qc1max = Columns.make(new double[ng]);
+			gen.Qc2min = Columns.make(new double[ng]);
+			gen.Qc2max = Columns.make(new double[ng]);
+			gen.ramp_agc = Columns.make(new double[ng]);
+			gen.ramp_10 = Columns.make(new double[ng]);
+			gen.ramp_30 = Columns.make(new double[ng]);
+			gen.ramp_q = Columns.make(new double[ng]);
+			gen.apf = Columns.make(new double[ng]);
+			jpc.gen = gen;
+
+			/* branch data */
+			for (int e = 0; e < nl; e++) {
+				fbus[e] += 1;
+				tbus[e] += 1;
+			}
+			ones = new int[nl];
+			Arrays.fill(ones, 1);
+			branch.f_bus = Columns.make(Arrays.copyOf(fbus, nl));
+			branch.t_bus = Columns.make(Arrays.copyOf(tbus, nl));
+			branch.br_r = Columns.make(Arrays.copyOf(r, nl));
+			branch.br_x = Columns.make(Arrays.copyOf(x, nl));
+			branch.br_b = Columns.make(Arrays.copyOf(b, nl));
+			branch.rate_a = Columns.make(Arrays.copyOf(rate, nl));
+			branch.rate_b = Columns.make(Arrays.copyOf(rate, nl));
+			branch.rate_c = Columns.make(Arrays.copyOf(rate, nl));
+			branch.tap = Columns.make(Arrays.copyOf(tap, nl));
+			branch.shift = Columns.make(Arrays.copyOf(shift, nl));
+			branch.br_status = Columns.make(ones);
+			branch.ang_min = fill(nl, -360);
+			branch.ang_max = fill(nl, 360);
+			jpc.branch = branch;
+
+			/* one area, quadratic generator costs */
+			jpc.areas = Areas.fromMatrix(new double[][] {{1, ref + 1}});
+			cost = new double[ng][];
+			for (int i = 0; i < ng; i++)
+				cost[i] = new double[] {2, 0, 0, 3, c2[i], c1[i], 0};
+			jpc.gencost = GenCost.fromMatrix(cost);
+
+			return jpc;
+		}
+
+		private static DoubleMatrix1D fill(int n, double value) {
+			double[] values = new double[n];
+			Arrays.fill(values, value);
+			return Columns.make(values);
+		}
+
+	}
+
+}
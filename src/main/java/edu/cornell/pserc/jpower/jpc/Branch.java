@@ -153,40 +153,40 @@ public class Branch {
 	public Branch copy(int[] indexes) {
 		Branch other = new Branch();
 
-		other.f_bus = f_bus.viewSelection(indexes).copy();
-		other.t_bus = t_bus.viewSelection(indexes).copy();
-		other.br_r = br_r.viewSelection(indexes).copy();
-		other.br_x = br_x.viewSelection(indexes).copy();
-		other.br_b = br_b.viewSelection(indexes).copy();
-		other.rate_a = rate_a.viewSelection(indexes).copy();
-		other.rate_b = rate_b.viewSelection(indexes).copy();
-		other.rate_c = rate_c.viewSelection(indexes).copy();
-		other.tap = tap.viewSelection(indexes).copy();
-		other.shift = shift.viewSelection(indexes).copy();
-		other.br_status = br_status.viewSelection(indexes).copy();
+		other.f_bus = Columns.copy(f_bus, indexes);
+		other.t_bus = Columns.copy(t_bus, indexes);
+		other.br_r = Columns.copy(br_r, indexes);
+		other.br_x = Columns.copy(br_x, indexes);
+		other.br_b = Columns.copy(br_b, indexes);
+		other.rate_a = Columns.copy(rate_a, indexes);
+		other.rate_b = Columns.copy(rate_b, indexes);
+		other.rate_c = Columns.copy(rate_c, indexes);
+		other.tap = Columns.copy(tap, indexes);
+		other.shift = Columns.copy(shift, indexes);
+		other.br_status = Columns.copy(br_status, indexes);
 
 		if (ang_min != null)
-			other.ang_min = ang_min.viewSelection(indexes).copy();
+			other.ang_min = Columns.copy(ang_min, indexes);
 		if (ang_max != null)
-			other.ang_max = ang_max.viewSelection(indexes).copy();
+			other.ang_max = Columns.copy(ang_max, indexes);
 
 		if (Pf != null)
-			other.Pf = Pf.viewSelection(indexes).copy();
+			other.Pf = Columns.copy(Pf, indexes);
 		if (Qf != null)
-			other.Qf = Qf.viewSelection(indexes).copy();
+			other.Qf = Columns.copy(Qf, indexes);
 		if (Pt != null)
-			other.Pt = Pt.viewSelection(indexes).copy();
+			other.Pt = Columns.copy(Pt, indexes);
 		if (Qt != null)
-			other.Qt = Qt.viewSelection(indexes).copy();
+			other.Qt = Columns.copy(Qt, indexes);
 
 		if (mu_Sf != null)
-			other.mu_Sf = mu_Sf.viewSelection(indexes).copy();
+			other.mu_Sf = Columns.copy(mu_Sf, indexes);
 		if (mu_St != null)
-			other.mu_St = mu_St.viewSelection(indexes).copy();
+			other.mu_St = Columns.copy(mu_St, indexes);
 		if (mu_angmin != null)
-			other.mu_angmin = mu_angmin.viewSelection(indexes).copy();
+			other.mu_angmin = Columns.copy(mu_angmin, indexes);
 		if (mu_angmax != null)
-			other.mu_angmax = mu_angmax.viewSelection(indexes).copy();
+			other.mu_angmax = Columns.copy(mu_angmax, indexes);
 
 		return other;
 	}
@@ -231,40 +231,40 @@ public class Branch {
 //		if (mu_angmax != null)
 //			mu_angmax.viewSelection(indexes).assign(other.mu_angmax.viewSelection(indexes));
 
-		f_bus.viewSelection(indexes).assign(other.f_bus);
-		t_bus.viewSelection(indexes).assign(other.t_bus);
-		br_r.viewSelection(indexes).assign(other.br_r);
-		br_x.viewSelection(indexes).assign(other.br_x);
-		br_b.viewSelection(indexes).assign(other.br_b);
-		rate_a.viewSelection(indexes).assign(other.rate_a);
-		rate_b.viewSelection(indexes).assign(other.rate_b);
-		rate_c.viewSelection(indexes).assign(other.rate_c);
-		tap.viewSelection(indexes).assign(other.tap);
-		shift.viewSelection(indexes).assign(other.shift);
-		br_status.viewSelection(indexes).assign(other.br_status);
+		Columns.update(f_bus, other.f_bus, indexes);
+		Columns.update(t_bus, other.t_bus, indexes);
+		Columns.update(br_r, other.br_r, indexes);
+		Columns.update(br_x, other.br_x, indexes);
+		Columns.update(br_b, other.br_b, indexes);
+		Columns.update(rate_a, other.rate_a, indexes);
+		Columns.update(rate_b, other.rate_b, indexes);
+		Columns.update(rate_c, other.rate_c, indexes);
+		Columns.update(tap, other.tap, indexes);
+		Columns.update(shift, other.shift, indexes);
+		Columns.update(br_status, other.br_status, indexes);
 
 		if (ang_min != null)
-			ang_min.viewSelection(indexes).assign(other.ang_min);
+			Columns.update(ang_min, other.ang_min, indexes);
 		if (ang_max != null)
-			ang_max.viewSelection(indexes).assign(other.ang_max);
+			Columns.update(ang_max, other.ang_max, indexes);
 
 		if (Pf != null)
-			Pf.viewSelection(indexes).assign(other.Pf);
+			Columns.update(Pf, other.Pf, indexes);
 		if (Qf != null)
-			Qf.viewSelection(indexes).assign(other.Qf);
+			Columns.update(Qf, other.Qf, indexes);
 		if (Pt != null)
-			Pt.viewSelection(indexes).assign(other.Pt);
+			Columns.update(Pt, other.Pt, indexes);
 		if (Qt != null)
-			Qt.viewSelection(indexes).assign(other.Qt);
+			Columns.update(Qt, other.Qt, indexes);
 
 		if (mu_Sf != null)
-			mu_Sf.viewSelection(indexes).assign(other.mu_Sf);
+			Columns.update(mu_Sf, other.mu_Sf, indexes);
 		if (mu_St != null)
-			mu_St.viewSelection(indexes).assign(other.mu_St);
+			Columns.update(mu_St, other.mu_St, indexes);
 		if (mu_angmin != null)
-			mu_angmin.viewSelection(indexes).assign(other.mu_angmin);
+			Columns.update(mu_angmin, other.mu_angmin, indexes);
 		if (mu_angmax != null)
-			mu_angmax.viewSelection(indexes).assign(other.mu_angmax);
+			Columns.update(mu_angmax, other.mu_angmax, indexes);
 	}
 
 	/**
@@ -307,33 +307,33 @@ public class Branch {
 
 		branch.f_bus = intm(data.viewColumn(F_BUS));
 		branch.t_bus = intm(data.viewColumn(T_BUS));
-		branch.br_r = data.viewColumn(BR_R);
-		branch.br_x = data.viewColumn(BR_X);
-		branch.br_b = data.viewColumn(BR_B);
-		branch.rate_a = data.viewColumn(RATE_A);
-		branch.rate_b = data.viewColumn(RATE_B);
-		branch.rate_c = data.viewColumn(RATE_C);
-		branch.tap = data.viewColumn(TAP);
-		branch.shift = data.viewColumn(SHIFT);
+		branch.br_r = Columns.column(data, BR_R);
+		branch.br_x = Columns.column(data, BR_X);
+		branch.br_b = Columns.column(data, BR_B);
+		branch.rate_a = Columns.column(data, RATE_A);
+		branch.rate_b = Columns.column(data, RATE_B);
+		branch.rate_c = Columns.column(data, RATE_C);
+		branch.tap = Columns.column(data, TAP);
+		branch.shift = Columns.column(data, SHIFT);
 		branch.br_status = intm(data.viewColumn(BR_STATUS));
 
 		if (data.columns() > BR_STATUS + 1) {
-			branch.ang_min = data.viewColumn(ANGMIN);
-			branch.ang_max = data.viewColumn(ANGMAX);
+			branch.ang_min = Columns.column(data, ANGMIN);
+			branch.ang_max = Columns.column(data, ANGMAX);
 		}
 
 		if (data.columns() > ANGMAX + 1) {
-			branch.Pf = data.viewColumn(PF);
-			branch.Qf = data.viewColumn(QF);
-			branch.Pt = data.viewColumn(PT);
-			branch.Qt = data.viewColumn(QT);
+			branch.Pf = Columns.column(data, PF);
+			branch.Qf = Columns.column(data, QF);
+			branch.Pt = Columns.column(data, PT);
+			branch.Qt = Columns.column(data, QT);
 		}
 
 		if (data.columns() > QT + 1) {
-			branch.mu_Sf = data.viewColumn(MU_SF);
-			branch.mu_St = data.viewColumn(MU_ST);
-			branch.mu_angmin = data.viewColumn(MU_ANGMIN);
-			branch.mu_angmax = data.viewColumn(MU_ANGMAX);
+			branch.mu_Sf = Columns.column(data, MU_SF);
+			branch.mu_St = Columns.column(data, MU_ST);
+			branch.mu_angmin = Columns.column(data, MU_ANGMIN);
+			branch.mu_angmax = Columns.column(data, MU_ANGMAX);
 		}
 
 		return branch;
@@ -132,28 +132,28 @@ public class Bus {
 	public Bus copy(int[] indexes) {
 		Bus other = new Bus();
 
-		other.bus_i = this.bus_i.viewSelection(indexes).copy();
-		other.bus_type = this.bus_type.viewSelection(indexes).copy();
-		other.Pd = this.Pd.viewSelection(indexes).copy();
-		other.Qd = this.Qd.viewSelection(indexes).copy();
-		other.Gs = this.Gs.viewSelection(indexes).copy();
-		other.Bs = this.Bs.viewSelection(indexes).copy();
-		other.bus_area = this.bus_area.viewSelection(indexes).copy();
-		other.Vm = this.Vm.viewSelection(indexes).copy();
-		other.Va = this.Va.viewSelection(indexes).copy();
-		other.base_kV = this.base_kV.viewSelection(indexes).copy();
-		other.zone = this.zone.viewSelection(indexes).copy();
-		other.Vmax = this.Vmax.viewSelection(indexes).copy();
-		other.Vmin = this.Vmin.viewSelection(indexes).copy();
+		other.bus_i = Columns.copy(this.bus_i, indexes);
+		other.bus_type = Columns.copy(this.bus_type, indexes);
+		other.Pd = Columns.copy(this.Pd, indexes);
+		other.Qd = Columns.copy(this.Qd, indexes);
+		other.Gs = Columns.copy(this.Gs, indexes);
+		other.Bs = Columns.copy(this.Bs, indexes);
+		other.bus_area = Columns.copy(this.bus_area, indexes);
+		other.Vm = Columns.copy(this.Vm, indexes);
+		other.Va = Columns.copy(this.Va, indexes);
+		other.base_kV = Columns.copy(this.base_kV, indexes);
+		other.zone = Columns.copy(this.zone, indexes);
+		other.Vmax = Columns.copy(this.Vmax, indexes);
+		other.Vmin = Columns.copy(this.Vmin, indexes);
 
 		if (this.lam_P != null)
-			other.lam_P = this.lam_P.viewSelection(indexes).copy();
+			other.lam_P = Columns.copy(this.lam_P, indexes);
 		if (this.lam_Q != null)
-			other.lam_Q = this.lam_Q.viewSelection(indexes).copy();
+			other.lam_Q = Columns.copy(this.lam_Q, indexes);
 		if (this.mu_Vmax != null)
-			other.mu_Vmax = this.mu_Vmax.viewSelection(indexes).copy();
+			other.mu_Vmax = Columns.copy(this.mu_Vmax, indexes);
 		if (this.mu_Vmin != null)
-			other.mu_Vmin = this.mu_Vmin.viewSelection(indexes).copy();
+			other.mu_Vmin = Columns.copy(this.mu_Vmin, indexes);
 
 		return other;
 	}
@@ -189,28 +189,28 @@ public class Bus {
 //		if (this.mu_Vmin != null)
 //			this.mu_Vmin.viewSelection(indexes).assign(other.mu_Vmin.viewSelection(indexes));
 
-		this.bus_i.viewSelection(indexes).assign(other.bus_i);
-		this.bus_type.viewSelection(indexes).assign(other.bus_type);
-		this.Pd.viewSelection(indexes).assign(other.Pd);
-		this.Qd.viewSelection(indexes).assign(other.Qd);
-		this.Gs.viewSelection(indexes).assign(other.Gs);
-		this.Bs.viewSelection(indexes).assign(other.Bs);
-		this.bus_area.viewSelection(indexes).assign(other.bus_area);
-		this.Vm.viewSelection(indexes).assign(other.Vm);
-		this.Va.viewSelection(indexes).assign(other.Va);
-		this.base_kV.viewSelection(indexes).assign(other.base_kV);
-		this.zone.viewSelection(indexes).assign(other.zone);
-		this.Vmax.viewSelection(indexes).assign(other.Vmax);
-		this.Vmin.viewSelection(indexes).assign(other.Vmin);
+		Columns.update(this.bus_i, other.bus_i, indexes);
+		Columns.update(this.bus_type, other.bus_type, indexes);
+		Columns.update(this.Pd, other.Pd, indexes);
+		Columns.update(this.Qd, other.Qd, indexes);
+		Columns.update(this.Gs, other.Gs, indexes);
+		Columns.update(this.Bs, other.Bs, indexes);
+		Columns.update(this.bus_area, other.bus_area, indexes);
+		Columns.update(this.Vm, other.Vm, indexes);
+		Columns.update(this.Va, other.Va, indexes);
+		Columns.update(this.base_kV, other.base_kV, indexes);
+		Columns.update(this.zone, other.zone, indexes);
+		Columns.update(this.Vmax, other.Vmax, indexes);
+		Columns.update(this.Vmin, other.Vmin, indexes);
 
 		if (this.lam_P != null)
-			this.lam_P.viewSelection(indexes).assign(other.lam_P);
+			Columns.update(this.lam_P, other.lam_P, indexes);
 		if (this.lam_Q != null)
-			this.lam_Q.viewSelection(indexes).assign(other.lam_Q);
+			Columns.update(this.lam_Q, other.lam_Q, indexes);
 		if (this.mu_Vmax != null)
-			this.mu_Vmax.viewSelection(indexes).assign(other.mu_Vmax);
+			Columns.update(this.mu_Vmax, other.mu_Vmax, indexes);
 		if (this.mu_Vmin != null)
-			this.mu_Vmin.viewSelection(indexes).assign(other.mu_Vmin);
+			Columns.update(this.mu_Vmin, other.mu_Vmin, indexes);
 	}
 
 	/**
@@ -246,23 +246,23 @@ public class Bus {
 
 		bus.bus_i = intm(data.viewColumn(BUS_I));
 		bus.bus_type = intm(data.viewColumn(BUS_TYPE));
-		bus.Pd = data.viewColumn(PD);
-		bus.Qd = data.viewColumn(QD);
-		bus.Gs = data.viewColumn(GS);
-		bus.Bs = data.viewColumn(BS);
+		bus.Pd = Columns.column(data, PD);
+		bus.Qd = Columns.column(data, QD);
+		bus.Gs = Columns.column(data, GS);
+		bus.Bs = Columns.column(data, BS);
 		bus.bus_area = intm(data.viewColumn(BUS_AREA));
-		bus.Vm = data.viewColumn(VM);
-		bus.Va = data.viewColumn(VA);
-		bus.base_kV = data.viewColumn(BASE_KV);
+		bus.Vm = Columns.column(data, VM);
+		bus.Va = Columns.column(data, VA);
+		bus.base_kV = Columns.column(data, BASE_KV);
 		bus.zone = intm(data.viewColumn(ZONE));
-		bus.Vmax = data.viewColumn(VMAX);
-		bus.Vmin = data.viewColumn(VMIN);
+		bus.Vmax = Columns.column(data, VMAX);
+		bus.Vmin = Columns.column(data, VMIN);
 
 		if (data.columns() > VMIN + 1) {
-			bus.lam_P = data.viewColumn(LAM_P);
-			bus.lam_Q = data.viewColumn(LAM_Q);
-			bus.mu_Vmax = data.viewColumn(MU_VMAX);
-			bus.mu_Vmin = data.viewColumn(MU_VMIN);
+			bus.lam_P = Columns.column(data, LAM_P);
+			bus.lam_Q = Columns.column(data, LAM_Q);
+			bus.mu_Vmax = Columns.column(data, MU_VMAX);
+			bus.mu_Vmin = Columns.column(data, MU_VMIN);
 		}
 
 		return bus;
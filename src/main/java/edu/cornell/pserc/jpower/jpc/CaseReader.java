@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.jpc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Reads MATPOWER case files.
+ *
+ * Both the version 1 format (baseMVA, bus, gen, ... assigned as separate
+ * variables) and the version 2 format (fields of a struct, e.g. mpc.bus)
+ * are supported. The file is tokenized in a single pass: numbers are
+ * parsed straight from the character buffer into one growable array,
+ * which is then wrapped as a row-major matrix and split into the
+ * columns of the corresponding table. Statements other than the
+ * assignment of version, baseMVA, bus, gen, branch, areas and gencost
+ * are skipped.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class CaseReader {
+
+	private static final int EOF = -1;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** exactly representable powers of ten */
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private Reader in;
+	private char[] buf = new char[BUFFER_SIZE];
+	private int pos, lim, line = 1;
+
+	private char[] tok = new char[64];
+
+	private double[] values = new double[BUFFER_SIZE];
+	private int nvalues, rows, cols, count;
+
+	private CaseReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 *
+	 * @param fname case file name
+	 * @return case data.
+	 * @throws IOException if the file can not be read or is not a valid case
+	 */
+	public static JPC read(String fname) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(fname), "ISO-8859-1");
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 *
+	 * @param in case file contents
+	 * @return case data.
+	 * @throws IOException if the input can not be read or is not a valid case
+	 */
+	public static JPC read(Reader in) throws IOException {
+		return new CaseReader(in).read();
+	}
+
+	private JPC read() throws IOException {
+		JPC jpc = new JPC();
+		String name, field, version = null;
+		int c;
+
+		while ((c = skip()) != EOF) {
+			if (!isNameStart(c)) {
+				endStatement();
+				continue;
+			}
+			name = name();
+			if (skipBlanks() != '=') {
+				endStatement();
+				continue;
+			}
+			pos++;
+			field = name.substring(name.lastIndexOf('.') + 1);
+
+			c = skipBlanks();
+			if (c == '[') {
+				pos++;
+				matrix();
+				assign(jpc, field);
+			} else if (c == '\'') {
+				pos++;
+				name = string();
+				if (field.equals("version"))
+					version = name;
+			} else if (isNumberStart(c)) {
+				if (field.equals("baseMVA"))
+					jpc.baseMVA = parse(token());
+			}
+			endStatement();
+		}
+
+		if (jpc.bus.bus_i == null || jpc.gen.gen_bus == null || jpc.branch.f_bus == null)
+			throw new IOException("missing bus, gen or branch data");
+
+		if (version == null)
+			version = (jpc.gen.Pc1 == null) ? "1" : "2";
+		jpc.version = version;
+
+		return jpc;
+	}
+
+	/**
+	 * Creates the table named by field from the last matrix read.
+	 */
+	private void assign(JPC jpc, String field) {
+		DoubleMatrix2D data;
+
+		if (rows == 0)
+			return;
+
+		if (field.equals("gencost")) {
+			/* the cost columns are kept as a view, so needs its own array */
+			data = new DenseDoubleMatrix2D(rows, cols, Arrays.copyOf(values, nvalues), 0, 0, cols, 1, false);
+			jpc.gencost = GenCost.fromMatrix(data);
+			return;
+		}
+
+		data = new DenseDoubleMatrix2D(rows, cols, values, 0, 0, cols, 1, false);
+		if (field.equals("bus")) {
+			jpc.bus = Bus.fromMatrix(data);
+		} else if (field.equals("gen")) {
+			jpc.gen = Gen.fromMatrix(data);
+		} else if (field.equals("branch")) {
+			jpc.branch = Branch.fromMatrix(data);
+		} else if (field.equals("areas")) {
+			jpc.areas = Areas.fromMatrix(data);
+		}
+	}
+
+	/**
+	 * Reads the elements of a matrix, following the opening bracket,
+	 * into values.
+	 */
+	private void matrix() throws IOException {
+		int c, n;
+
+		nvalues = 0;
+		rows = 0;
+		cols = -1;
+		count = 0;
+
+		while (true) {
+			c = peek();
+			switch (c) {
+			case EOF:
+				throw error("unterminated matrix");
+			case ' ':
+			case '\t':
+			case '\r':
+			case ',':
+				pos++;
+				break;
+			case '\n':
+				line++;
+				/* fall through */
+			case ';':
+				pos++;
+				endRow();
+				break;
+			case '%':
+				skipLine();
+				endRow();
+				break;
+			case ']':
+				pos++;
+				endRow();
+				if (cols < 0)
+					cols = 0;
+				return;
+			default:
+				n = token();
+				if (n == 0)
+					throw error("unexpected character '" + (char) c + "' in matrix");
+				if (n >= 3 && tok[0] == '.' && tok[1] == '.' && tok[2] == '.') {
+					skipLine();		// continuation
+					break;
+				}
+				if (nvalues == values.length)
+					values = Arrays.copyOf(values, 2 * values.length);
+				values[nvalues++] = parse(n);
+				count++;
+			}
+		}
+	}
+
+	private void endRow() throws IOException {
+		if (count == 0)
+			return;
+		if (cols < 0) {
+			cols = count;
+		} else if (count != cols) {
+			throw error("row " + (rows + 1) + " has " + count + " columns, expected " + cols);
+		}
+		rows++;
+		count = 0;
+	}
+
+	/**
+	 * Reads a number, identifier or continuation into tok.
+	 *
+	 * @return number of characters read.
+	 */
+	private int token() throws IOException {
+		int c, n = 0;
+		char prev = 0;
+
+		while ((c = peek()) != EOF) {
+			if (!(isNameChar(c) || c == '.'
+					|| ((c == '+' || c == '-') && (n == 0 || prev == 'e' || prev == 'E'))))
+				break;
+			if (n == tok.length)
+				tok = Arrays.copyOf(tok, 2 * n);
+			tok[n++] = prev = (char) c;
+			pos++;
+		}
+		return n;
+	}
+
+	/**
+	 * Parses the number in tok. Numbers with at most 15 significant digits
+	 * and a small exponent are converted exactly with a single
+	 * multiplication or division, anything else by Double.parseDouble.
+	 *
+	 * @param n number of characters in tok
+	 * @return value of the number.
+	 */
+	private double parse(int n) throws IOException {
+		int i = 0, exp = 0, sig = 0, e, d;
+		long m = 0;
+		boolean neg = false, digits = false, fast = true;
+		String s;
+
+		if (tok[i] == '-' || tok[i] == '+')
+			neg = tok[i++] == '-';
+
+		for (; i < n && (d = tok[i] - '0') >= 0 && d <= 9; i++) {
+			digits = true;
+			if (m != 0 || d != 0)
+				sig++;
+			m = 10 * m + d;
+		}
+		if (i < n && tok[i] == '.') {
+			for (i++; i < n && (d = tok[i] - '0') >= 0 && d <= 9; i++) {
+				digits = true;
+				if (m != 0 || d != 0)
+					sig++;
+				m = 10 * m + d;
+				exp--;
+			}
+		}
+		if (digits && i < n && (tok[i] == 'e' || tok[i] == 'E')) {
+			boolean eneg = false;
+			i++;
+			if (i < n && (tok[i] == '-' || tok[i] == '+'))
+				eneg = tok[i++] == '-';
+			if (i == n)
+				fast = false;
+			for (e = 0; i < n && (d = tok[i] - '0') >= 0 && d <= 9; i++)
+				if (e < 1000)
+					e = 10 * e + d;
+			exp += eneg ? -e : e;
+		}
+
+		if (digits && fast && i == n && sig <= 15 && exp >= -22 && exp <= 22) {
+			double v = (exp < 0) ? m / POW10[-exp] : m * POW10[exp];
+			return neg ? -v : v;
+		}
+
+		s = new String(tok, 0, n);
+		if (!digits) {
+			String t = s.substring(s.charAt(0) == '-' || s.charAt(0) == '+' ? 1 : 0);
+			if (t.equalsIgnoreCase("Inf"))
+				return neg ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+			if (t.equalsIgnoreCase("NaN"))
+				return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException ex) {
+			throw error("invalid number '" + s + "'");
+		}
+	}
+
+	private String name() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+
+		while ((c = peek()) != EOF && (isNameChar(c) || c == '.')) {
+			sb.append((char) c);
+			pos++;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a quoted string, following the opening quote.
+	 */
+	private String string() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+
+		while ((c = peek()) != EOF && c != '\'' && c != '\n') {
+			sb.append((char) c);
+			pos++;
+		}
+		if (c == '\'')
+			pos++;
+		return sb.toString();
+	}
+
+	/**
+	 * Skips to the end of the current statement, ignoring separators
+	 * inside brackets, braces, parentheses and strings.
+	 */
+	private void endStatement() throws IOException {
+		int c, depth = 0;
+
+		while ((c = peek()) != EOF) {
+			if (c == '%') {
+				skipLine();
+				if (depth <= 0)
+					return;
+				continue;
+			}
+			pos++;
+			if (c == '\'') {
+				string();
+			} else if (c == '[' || c == '{' || c == '(') {
+				depth++;
+			} else if (c == ']' || c == '}' || c == ')') {
+				depth--;
+			} else if (c == '\n') {
+				line++;
+				if (depth <= 0)
+					return;
+			} else if (c == ';' && depth <= 0) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Skips white space, empty statements and comments.
+	 *
+	 * @return the next character, not consumed.
+	 */
+	private int skip() throws IOException {
+		int c;
+
+		while ((c = peek()) != EOF) {
+			if (c == '%') {
+				skipLine();
+			} else if (c == '\n') {
+				line++;
+				pos++;
+			} else if (c == ' ' || c == '\t' || c == '\r' || c == ';' || c == ',') {
+				pos++;
+			} else {
+				break;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Skips spaces and tabs.
+	 *
+	 * @return the next character, not consumed.
+	 */
+	private int skipBlanks() throws IOException {
+		int c;
+
+		while ((c = peek()) == ' ' || c == '\t')
+			pos++;
+		return c;
+	}
+
+	/**
+	 * Skips to the start of the next line.
+	 */
+	private void skipLine() throws IOException {
+		int c;
+
+		while ((c = peek()) != EOF) {
+			pos++;
+			if (c == '\n') {
+				line++;
+				return;
+			}
+		}
+	}
+
+	private int peek() throws IOException {
+		if (pos == lim) {
+			lim = in.read(buf, 0, buf.length);
+			pos = 0;
+			if (lim <= 0) {
+				lim = 0;
+				return EOF;
+			}
+		}
+		return buf[pos];
+	}
+
+	private IOException error(String msg) {
+		return new IOException(msg + " on line " + line);
+	}
+
+	private static boolean isNameStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	private static boolean isNameChar(int c) {
+		return isNameStart(c) || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isNumberStart(int c) {
+		return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'I' || c == 'N';
+	}
+
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.jpc;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+/**
+ * Binary case snapshots.
+ *
+ * A snapshot holds the scalar case data, the bus, gen, branch, areas and
+ * gencost tables, including any power flow or OPF results stored in
+ * them, and the ordering used to convert between external and internal
+ * bus numbering (with the internal and external copies of the case).
+ * Tables are stored by column: each column is written as a name, a type
+ * and a contiguous, 8 byte aligned block of little-endian values, so
+ * columns added to the tables in future are simply skipped by older
+ * readers and missing columns are left null.
+ *
+ * Snapshots are written through a FileChannel and read through a
+ * read-only memory mapping, so each column is a single bulk copy out of
+ * the page cache. Files are limited to 2GB.
+ *
+ * The constraint matrices A and N, user functions and OPF solution
+ * vectors are not stored.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class CaseSnapshot {
+
+	/** "JPCS" */
+	public static final int MAGIC = 0x4A504353;
+
+	/** version of the file format written */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final byte DOUBLE = 'D';
+	private static final byte INT = 'I';
+	private static final byte MATRIX = 'M';
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private FileChannel channel;
+	private ByteBuffer buf;
+	private long offset;
+
+	private CaseSnapshot(FileChannel channel, ByteBuffer buf) {
+		this.channel = channel;
+		this.buf = buf;
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes a snapshot of the given case.
+	 *
+	 * @param fname file name
+	 * @param jpc case data
+	 * @throws IOException
+	 */
+	public static void write(String fname, JPC jpc) throws IOException {
+		FileOutputStream out = new FileOutputStream(fname);
+		try {
+			CaseSnapshot w = new CaseSnapshot(out.getChannel(), ByteBuffer.allocateDirect(BUFFER_SIZE));
+			w.putInt(MAGIC);
+			w.putInt(FORMAT_VERSION);
+			w.putCase(jpc);
+			w.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a snapshot written by write().
+	 *
+	 * @param fname file name
+	 * @return case data.
+	 * @throws IOException if the file can not be read or is not a snapshot
+	 */
+	public static JPC read(String fname) throws IOException {
+		FileInputStream in = new FileInputStream(fname);
+		try {
+			FileChannel ch = in.getChannel();
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			CaseSnapshot r = new CaseSnapshot(null, map);
+
+			if (map.remaining() < 8 || map.getInt() != MAGIC)
+				throw new IOException("not a case snapshot");
+			int version = map.getInt();
+			if (version > FORMAT_VERSION)
+				throw new IOException("unsupported snapshot format version " + version);
+
+			return r.getCase();
+		} finally {
+			in.close();
+		}
+	}
+
+	/* -----  writing  ----- */
+
+	private void putCase(JPC jpc) throws IOException {
+		putDouble(jpc.baseMVA);
+		putDouble(jpc.et);
+		putDouble(jpc.f);
+		putInt(jpc.success ? 1 : 0);
+		putString(jpc.version);
+
+		putTable(jpc.bus);
+		putTable(jpc.gen);
+		putTable(jpc.branch);
+		putTable(jpc.areas);
+		putTable(jpc.gencost);
+
+		if (jpc.order == null) {
+			putInt(0);
+		} else {
+			putInt(1);
+			putOrder(jpc.order);
+		}
+	}
+
+	private void putOrder(Order order) throws IOException {
+		putString(order.state);
+		putInts(order.bus.e2i);
+		putInts(order.bus.i2e);
+		putInts(order.bus.status.on);
+		putInts(order.bus.status.off);
+		putInts(order.gen.e2i);
+		putInts(order.gen.i2e);
+		putInts(order.gen.status.on);
+		putInts(order.gen.status.off);
+		putInts(order.branch.status.on);
+		putInts(order.branch.status.off);
+		putInts(order.areas.status.on);
+		putInts(order.areas.status.off);
+
+		for (JPC jpc : new JPC[] {order.internal, order.external}) {
+			if (jpc == null) {
+				putInt(0);
+			} else {
+				putInt(1);
+				putCase(jpc);
+			}
+		}
+	}
+
+	/**
+	 * Writes all non-null public columns of a table.
+	 */
+	private void putTable(Object table) throws IOException {
+		Field[] fields;
+		Object value;
+		int ncol = 0;
+
+		if (table == null) {
+			putInt(-1);
+			return;
+		}
+
+		fields = table.getClass().getFields();
+		for (Field field : fields)
+			if (isColumn(field) && get(field, table) != null)
+				ncol++;
+		putInt(ncol);
+
+		for (Field field : fields) {
+			if (!isColumn(field) || (value = get(field, table)) == null)
+				continue;
+			putString(field.getName());
+			if (value instanceof DoubleMatrix1D) {
+				putInt(DOUBLE);
+				putDoubles(Columns.elements((DoubleMatrix1D) value));
+			} else if (value instanceof IntMatrix1D) {
+				putInt(INT);
+				putInts(Columns.elements((IntMatrix1D) value));
+			} else {
+				DoubleMatrix2D m = (DoubleMatrix2D) value;
+				putInt(MATRIX);
+				putInt(m.columns());
+				putInt(m.rows() * m.columns());
+				align();
+				for (int i = 0; i < m.rows(); i++) {
+					for (int j = 0; j < m.columns(); j++) {
+						ensure(8);
+						buf.putDouble(m.getQuick(i, j));
+					}
+				}
+			}
+		}
+	}
+
+	private void putDoubles(double[] values) throws IOException {
+		int off = 0, n;
+
+		putInt(values.length);
+		align();
+		while (off < values.length) {
+			ensure(8);
+			n = Math.min(buf.remaining() / 8, values.length - off);
+			buf.asDoubleBuffer().put(values, off, n);
+			buf.position(buf.position() + 8 * n);
+			off += n;
+		}
+	}
+
+	private void putInts(IntMatrix1D values) throws IOException {
+		if (values == null) {
+			putInt(-1);
+		} else {
+			putInts(Columns.elements(values));
+		}
+	}
+
+	private void putInts(int[] values) throws IOException {
+		int off = 0, n;
+
+		if (values == null) {
+			putInt(-1);
+			return;
+		}
+		putInt(values.length);
+		align();
+		while (off < values.length) {
+			ensure(4);
+			n = Math.min(buf.remaining() / 4, values.length - off);
+			buf.asIntBuffer().put(values, off, n);
+			buf.position(buf.position() + 4 * n);
+			off += n;
+		}
+	}
+
+	private void putString(String s) throws IOException {
+		byte[] bytes;
+
+		if (s == null) {
+			putInt(-1);
+			return;
+		}
+		bytes = s.getBytes(UTF8);
+		putInt(bytes.length);
+		ensure(bytes.length);
+		buf.put(bytes);
+	}
+
+	private void putInt(int v) throws IOException {
+		ensure(4);
+		buf.putInt(v);
+	}
+
+	private void putDouble(double v) throws IOException {
+		ensure(8);
+		buf.putDouble(v);
+	}
+
+	/**
+	 * Pads with zeros to the next multiple of 8 bytes in the file.
+	 */
+	private void align() throws IOException {
+		int pad = (int) ((8 - (offset + buf.position()) % 8) % 8);
+		ensure(pad);
+		for (int i = 0; i < pad; i++)
+			buf.put((byte) 0);
+	}
+
+	private void ensure(int n) throws IOException {
+		if (buf.remaining() < n)
+			flush();
+		if (buf.remaining() < n)
+			throw new IOException("field too large for buffer");
+	}
+
+	private void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			offset += channel.write(buf);
+		buf.clear();
+	}
+
+	/* -----  reading  ----- */
+
+	private JPC getCase() throws IOException {
+		JPC jpc = new JPC();
+
+		jpc.baseMVA = buf.getDouble();
+		jpc.et = buf.getDouble();
+		jpc.f = buf.getDouble();
+		jpc.success = buf.getInt() != 0;
+		jpc.version = getString();
+
+		jpc.bus = (Bus) getTable(new Bus());
+		jpc.gen = (Gen) getTable(new Gen());
+		jpc.branch = (Branch) getTable(new Branch());
+		jpc.areas = (Areas) getTable(new Areas());
+		jpc.gencost = (GenCost) getTable(new GenCost());
+
+		if (buf.getInt() != 0)
+			jpc.order = getOrder();
+
+		return jpc;
+	}
+
+	private Order getOrder() throws IOException {
+		Order order = new Order();
+
+		order.state = getString();
+		order.bus.e2i = getIntColumn();
+		order.bus.i2e = getIntColumn();
+		order.bus.status.on = getInts();
+		order.bus.status.off = getInts();
+		order.gen.e2i = getIntColumn();
+		order.gen.i2e = getIntColumn();
+		order.gen.status.on = getInts();
+		order.gen.status.off = getInts();
+		order.branch.status.on = getInts();
+		order.branch.status.off = getInts();
+		order.areas.status.on = getInts();
+		order.areas.status.off = getInts();
+
+		order.internal = (buf.getInt() != 0) ? getCase() : null;
+		order.external = (buf.getInt() != 0) ? getCase() : null;
+
+		return order;
+	}
+
+	/**
+	 * Reads the columns of a table into the public fields of the same
+	 * name, ignoring unknown columns.
+	 *
+	 * @return the table, or null if none was written.
+	 */
+	private Object getTable(Object table) throws IOException {
+		int ncol = buf.getInt(), type, ncols, n;
+		String name;
+		Object value;
+		Field field;
+		double[] values;
+
+		if (ncol < 0)
+			return null;
+
+		for (int k = 0; k < ncol; k++) {
+			name = getString();
+			type = buf.getInt();
+			if (type == DOUBLE) {
+				value = Columns.make(getDoubles());
+			} else if (type == INT) {
+				value = Columns.make(getInts());
+			} else if (type == MATRIX) {
+				ncols = buf.getInt();
+				values = getDoubles();
+				n = (ncols == 0) ? 0 : values.length / ncols;
+				value = new DenseDoubleMatrix2D(n, ncols, values, 0, 0, ncols, 1, false);
+			} else {
+				throw new IOException("invalid column type " + type + " for column " + name);
+			}
+
+			try {
+				field = table.getClass().getField(name);
+			} catch (NoSuchFieldException e) {
+				continue;
+			}
+			if (isColumn(field) && field.getType().isInstance(value))
+				set(field, table, value);
+		}
+		return table;
+	}
+
+	private double[] getDoubles() {
+		int n = buf.getInt();
+		double[] values = new double[n];
+
+		skipPadding();
+		buf.asDoubleBuffer().get(values);
+		buf.position(buf.position() + 8 * n);
+		return values;
+	}
+
+	private IntMatrix1D getIntColumn() {
+		int[] values = getInts();
+		return (values == null) ? null : Columns.make(values);
+	}
+
+	private int[] getInts() {
+		int n = buf.getInt();
+		int[] values;
+
+		if (n < 0)
+			return null;
+		values = new int[n];
+		skipPadding();
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + 4 * n);
+		return values;
+	}
+
+	private String getString() {
+		int n = buf.getInt();
+		byte[] bytes;
+
+		if (n < 0)
+			return null;
+		bytes = new byte[n];
+		buf.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private void skipPadding() {
+		buf.position(buf.position() + (8 - buf.position() % 8) % 8);
+	}
+
+	/* -----  table columns  ----- */
+
+	private static boolean isColumn(Field field) {
+		Class<?> type = field.getType();
+		return !Modifier.isStatic(field.getModifiers())
+				&& (type == DoubleMatrix1D.class || type == IntMatrix1D.class
+						|| type == DoubleMatrix2D.class);
+	}
+
+	private static Object get(Field field, Object table) throws IOException {
+		try {
+			return field.get(table);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private static void set(Field field, Object table, Object value) throws IOException {
+		try {
+			field.set(table, value);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.jpc;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tint.IntMatrix1D;
+import cern.colt.matrix.tint.impl.DenseIntMatrix1D;
+
+/**
+ * Primitive array storage for the columns of the bus, branch and generator
+ * tables.
+ *
+ * Each column is held in its own contiguous double[] or int[] wrapped,
+ * without copying, in a dense Colt vector, so the public fields of Bus,
+ * Branch and Gen keep their types while copies and updates work directly
+ * on the arrays instead of through selection views.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Columns {
+
+	/**
+	 *
+	 * @param values column data, not copied
+	 * @return a dense vector backed by the given array.
+	 */
+	public static DoubleMatrix1D make(double[] values) {
+		return new DenseDoubleMatrix1D(values.length, values, 0, 1, false);
+	}
+
+	/**
+	 *
+	 * @param values column data, not copied
+	 * @return a dense vector backed by the given array.
+	 */
+	public static IntMatrix1D make(int[] values) {
+		return new DenseIntMatrix1D(values.length, values, 0, 1, false);
+	}
+
+	/**
+	 * Returns the array backing a column, copying only if the column is
+	 * not a contiguous dense vector. Modifying the returned array may
+	 * therefore modify the column.
+	 *
+	 * @param x column
+	 * @return column data.
+	 */
+	public static double[] elements(DoubleMatrix1D x) {
+		if (x instanceof DenseDoubleMatrix1D && !x.isView()) {
+			double[] values = ((DenseDoubleMatrix1D) x).elements();
+			if (values.length == x.size())
+				return values;
+		}
+		return x.toArray();
+	}
+
+	/**
+	 * Returns the array backing a column, copying only if the column is
+	 * not a contiguous dense vector.
+	 *
+	 * @param x column
+	 * @return column data.
+	 */
+	public static int[] elements(IntMatrix1D x) {
+		if (x instanceof DenseIntMatrix1D && !x.isView()) {
+			int[] values = ((DenseIntMatrix1D) x).elements();
+			if (values.length == x.size())
+				return values;
+		}
+		return x.toArray();
+	}
+
+	/**
+	 *
+	 * @param x column
+	 * @param indexes row indexes, or null for all rows
+	 * @return a contiguous copy of the given rows of the column.
+	 */
+	public static DoubleMatrix1D copy(DoubleMatrix1D x, int[] indexes) {
+		double[] src = elements(x), dst;
+
+		if (indexes == null) {
+			dst = new double[src.length];
+			System.arraycopy(src, 0, dst, 0, src.length);
+		} else {
+			dst = new double[indexes.length];
+			for (int i = 0; i < indexes.length; i++)
+				dst[i] = src[indexes[i]];
+		}
+		return make(dst);
+	}
+
+	/**
+	 *
+	 * @param x column
+	 * @param indexes row indexes, or null for all rows
+	 * @return a contiguous copy of the given rows of the column.
+	 */
+	public static IntMatrix1D copy(IntMatrix1D x, int[] indexes) {
+		int[] src = elements(x), dst;
+
+		if (indexes == null) {
+			dst = new int[src.length];
+			System.arraycopy(src, 0, dst, 0, src.length);
+		} else {
+			dst = new int[indexes.length];
+			for (int i = 0; i < indexes.length; i++)
+				dst[i] = src[indexes[i]];
+		}
+		return make(dst);
+	}
+
+	/**
+	 * Scatters other into the given rows of x, x(indexes) = other.
+	 *
+	 * @param x column to update
+	 * @param other source values
+	 * @param indexes row indexes, or null for all rows
+	 */
+	public static void update(DoubleMatrix1D x, DoubleMatrix1D other, int[] indexes) {
+		if (!(x instanceof DenseDoubleMatrix1D) || x.isView()) {
+			x.viewSelection(indexes).assign(other);
+			return;
+		}
+		double[] dst = elements(x), src = elements(other);
+
+		if (indexes == null) {
+			System.arraycopy(src, 0, dst, 0, dst.length);
+		} else {
+			for (int i = 0; i < indexes.length; i++)
+				dst[indexes[i]] = src[i];
+		}
+	}
+
+	/**
+	 * Scatters other into the given rows of x, x(indexes) = other.
+	 *
+	 * @param x column to update
+	 * @param other source values
+	 * @param indexes row indexes, or null for all rows
+	 */
+	public static void update(IntMatrix1D x, IntMatrix1D other, int[] indexes) {
+		if (!(x instanceof DenseIntMatrix1D) || x.isView()) {
+			x.viewSelection(indexes).assign(other);
+			return;
+		}
+		int[] dst = elements(x), src = elements(other);
+
+		if (indexes == null) {
+			System.arraycopy(src, 0, dst, 0, dst.length);
+		} else {
+			for (int i = 0; i < indexes.length; i++)
+				dst[indexes[i]] = src[i];
+		}
+	}
+
+	/**
+	 *
+	 * @param data table
+	 * @param column column index
+	 * @return a contiguous copy of the given column of the table.
+	 */
+	public static DoubleMatrix1D column(DoubleMatrix2D data, int column) {
+		int n = data.rows();
+		double[] values = new double[n];
+
+		for (int i = 0; i < n; i++)
+			values[i] = data.getQuick(i, column);
+		return make(values);
+	}
+
+}
@@ -163,48 +163,48 @@ public class Gen {
 	public Gen copy(int[] indexes) {
 		Gen other = new Gen();
 
-		other.gen_bus = gen_bus.viewSelection(indexes).copy();
-		other.Pg = Pg.viewSelection(indexes).copy();
-		other.Qg = Qg.viewSelection(indexes).copy();
-		other.Qmax = Qmax.viewSelection(indexes).copy();
-		other.Qmin = Qmin.viewSelection(indexes).copy();
-		other.Vg = Vg.viewSelection(indexes).copy();
-		other.mBase = mBase.viewSelection(indexes).copy();
-		other.gen_status = gen_status.viewSelection(indexes).copy();
-		other.Pmax = Pmax.viewSelection(indexes).copy();
-		other.Pmin = Pmin.viewSelection(indexes).copy();
+		other.gen_bus = Columns.copy(gen_bus, indexes);
+		other.Pg = Columns.copy(Pg, indexes);
+		other.Qg = Columns.copy(Qg, indexes);
+		other.Qmax = Columns.copy(Qmax, indexes);
+		other.Qmin = Columns.copy(Qmin, indexes);
+		other.Vg = Columns.copy(Vg, indexes);
+		other.mBase = Columns.copy(mBase, indexes);
+		other.gen_status = Columns.copy(gen_status, indexes);
+		other.Pmax = Columns.copy(Pmax, indexes);
+		other.Pmin = Columns.copy(Pmin, indexes);
 
 		if (Pc1 != null)
-			other.Pc1 = Pc1.viewSelection(indexes).copy();
+			other.Pc1 = Columns.copy(Pc1, indexes);
 		if (Pc2 != null)
-			other.Pc2 = Pc2.viewSelection(indexes).copy();
+			other.Pc2 = Columns.copy(Pc2, indexes);
 		if (Qc1min != null)
-			other.Qc1min = Qc1min.viewSelection(indexes).copy();
+			other.Qc1min = Columns.copy(Qc1min, indexes);
 		if (Qc1max != null)
-			other.Qc1max = Qc1max.viewSelection(indexes).copy();
+			other.Qc1max = Columns.copy(Qc1max, indexes);
 		if (Qc2min != null)
-			other.Qc2min = Qc2min.viewSelection(indexes).copy();
+			other.Qc2min = Columns.copy(Qc2min, indexes);
 		if (Qc2max != null)
-			other.Qc2max = Qc2max.viewSelection(indexes).copy();
+			other.Qc2max = Columns.copy(Qc2max, indexes);
 		if (ramp_agc != null)
-			other.ramp_agc = ramp_agc.viewSelection(indexes).copy();
+			other.ramp_agc = Columns.copy(ramp_agc, indexes);
 		if (ramp_10 != null)
-			other.ramp_10 = ramp_10.viewSelection(indexes).copy();
+			other.ramp_10 = Columns.copy(ramp_10, indexes);
 		if (ramp_30 != null)
-			other.ramp_30 = ramp_30.viewSelection(indexes).copy();
+			other.ramp_30 = Columns.copy(ramp_30, indexes);
 		if (ramp_q != null)
-			other.ramp_q = ramp_q.viewSelection(indexes).copy();
+			other.ramp_q = Columns.copy(ramp_q, indexes);
 		if (apf != null)
-			other.apf = apf.viewSelection(indexes).copy();
+			other.apf = Columns.copy(apf, indexes);
 
 		if (mu_Pmax != null)
-			other.mu_Pmax = mu_Pmax.viewSelection(indexes).copy();
+			other.mu_Pmax = Columns.copy(mu_Pmax, indexes);
 		if (mu_Pmin != null)
-			other.mu_Pmin = mu_Pmin.viewSelection(indexes).copy();
+			other.mu_Pmin = Columns.copy(mu_Pmin, indexes);
 		if (mu_Qmax != null)
-			other.mu_Qmax = mu_Qmax.viewSelection(indexes).copy();
+			other.mu_Qmax = Columns.copy(mu_Qmax, indexes);
 		if (mu_Qmin != null)
-			other.mu_Qmin = mu_Qmin.viewSelection(indexes).copy();
+			other.mu_Qmin = Columns.copy(mu_Qmin, indexes);
 
 		return other;
 	}
@@ -248,48 +248,48 @@ public class Gen {
 //		if (mu_Qmin != null)
 //			mu_Qmin.viewSelection(indexes).assign(other.mu_Qmin.viewSelection(indexes));
 
-		gen_bus.viewSelection(indexes).assign(other.gen_bus);
-		Pg.viewSelection(indexes).assign(other.Pg);
-		Qg.viewSelection(indexes).assign(other.Qg);
-		Qmax.viewSelection(indexes).assign(other.Qmax);
-		Qmin.viewSelection(indexes).assign(other.Qmin);
-		Vg.viewSelection(indexes).assign(other.Vg);
-		mBase.viewSelection(indexes).assign(other.mBase);
-		gen_status.viewSelection(indexes).assign(other.gen_status);
-		Pmax.viewSelection(indexes).assign(other.Pmax);
-		Pmin.viewSelection(indexes).assign(other.Pmin);
+		Columns.update(gen_bus, other.gen_bus, indexes);
+		Columns.update(Pg, other.Pg, indexes);
+		Columns.update(Qg, other.Qg, indexes);
+		Columns.update(Qmax, other.Qmax, indexes);
+		Columns.update(Qmin, other.Qmin, indexes);
+		Columns.update(Vg, other.Vg, indexes);
+		Columns.update(mBase, other.mBase, indexes);
+		Columns.update(gen_status, other.gen_status, indexes);
+		Columns.update(Pmax, other.Pmax, indexes);
+		Columns.update(Pmin, other.Pmin, indexes);
 
 		if (Pc1 != null)
-			Pc1.viewSelection(indexes).assign(other.Pc1);
+			Columns.update(Pc1, other.Pc1, indexes);
 		if (Pc2 != null)
-			Pc2.viewSelection(indexes).assign(other.Pc2);
+			Columns.update(Pc2, other.Pc2, indexes);
 		if (Qc1min != null)
-			Qc1min.viewSelection(indexes).assign(other.Qc1min);
+			Columns.update(Qc1min, other.Qc1min, indexes);
 		if (Qc1max != null)
-			Qc1max.viewSelection(indexes).assign(other.Qc1max);
+			Columns.update(Qc1max, other.Qc1max, indexes);
 		if (Qc2min != null)
-			Qc2min.viewSelection(indexes).assign(other.Qc2min);
+			Columns.update(Qc2min, other.Qc2min, indexes);
 		if (Qc2max != null)
-			Qc2max.viewSelection(indexes).assign(other.Qc2max);
+			Columns.update(Qc2max, other.Qc2max, indexes);
 		if (ramp_agc != null)
-			ramp_agc.viewSelection(indexes).assign(other.ramp_agc);
+			Columns.update(ramp_agc, other.ramp_agc, indexes);
 		if (ramp_10 != null)
-			ramp_10.viewSelection(indexes).assign(other.ramp_10);
+			Columns.update(ramp_10, other.ramp_10, indexes);
 		if (ramp_30 != null)
-			ramp_30.viewSelection(indexes).assign(other.ramp_30);
+			Columns.update(ramp_30, other.ramp_30, indexes);
 		if (ramp_q != null)
-			ramp_q.viewSelection(indexes).assign(other.ramp_q);
+			Columns.update(ramp_q, other.ramp_q, indexes);
 		if (apf != null)
-			apf.viewSelection(indexes).assign(other.apf);
+			Columns.update(apf, other.apf, indexes);
 
 		if (mu_Pmax != null)
-			mu_Pmax.viewSelection(indexes).assign(other.mu_Pmax);
+			Columns.update(mu_Pmax, other.mu_Pmax, indexes);
 		if (mu_Pmin != null)
-			mu_Pmin.viewSelection(indexes).assign(other.mu_Pmin);
+			Columns.update(mu_Pmin, other.mu_Pmin, indexes);
 		if (mu_Qmax != null)
-			mu_Qmax.viewSelection(indexes).assign(other.mu_Qmax);
+			Columns.update(mu_Qmax, other.mu_Qmax, indexes);
 		if (mu_Qmin != null)
-			mu_Qmin.viewSelection(indexes).assign(other.mu_Qmin);
+			Columns.update(mu_Qmin, other.mu_Qmin, indexes);
 	}
 
 	/**
@@ -336,35 +336,35 @@ public class Gen {
 		Gen gen = new Gen();
 
 		gen.gen_bus = intm(other.viewColumn(GEN_BUS));
-		gen.Pg = other.viewColumn(PG);
-		gen.Qg = other.viewColumn(QG);
-		gen.Qmax = other.viewColumn(QMAX);
-		gen.Qmin = other.viewColumn(QMIN);
-		gen.Vg = other.viewColumn(VG);
-		gen.mBase = other.viewColumn(MBASE);
+		gen.Pg = Columns.column(other, PG);
+		gen.Qg = Columns.column(other, QG);
+		gen.Qmax = Columns.column(other, QMAX);
+		gen.Qmin = Columns.column(other, QMIN);
+		gen.Vg = Columns.column(other, VG);
+		gen.mBase = Columns.column(other, MBASE);
 		gen.gen_status = intm(other.viewColumn(GEN_STATUS));
-		gen.Pmax = other.viewColumn(PMAX);
-		gen.Pmin = other.viewColumn(PMIN);
+		gen.Pmax = Columns.column(other, PMAX);
+		gen.Pmin = Columns.column(other, PMIN);
 
 		if (other.columns() > PMIN + 1) {
-			gen.Pc1 = other.viewColumn(PC1);
-			gen.Pc2 = other.viewColumn(PC2);
-			gen.Qc1min = other.viewColumn(QC1MIN);
-			gen.Qc1max = other.viewColumn(QC1MAX);
-			gen.Qc2min = other.viewColumn(QC2MIN);
-			gen.Qc2max = other.viewColumn(QC2MAX);
-			gen.ramp_agc = other.viewColumn(RAMP_AGC);
-			gen.ramp_10 = other.viewColumn(RAMP_10);
-			gen.ramp_30 = other.viewColumn(RAMP_30);
-			gen.ramp_q = other.viewColumn(RAMP_Q);
-			gen.apf = other.viewColumn(APF);
+			gen.Pc1 = Columns.column(other, PC1);
+			gen.Pc2 = Columns.column(other, PC2);
+			gen.Qc1min = Columns.column(other, QC1MIN);
+			gen.Qc1max = Columns.column(other, QC1MAX);
+			gen.Qc2min = Columns.column(other, QC2MIN);
+			gen.Qc2max = Columns.column(other, QC2MAX);
+			gen.ramp_agc = Columns.column(other, RAMP_AGC);
+			gen.ramp_10 = Columns.column(other, RAMP_10);
+			gen.ramp_30 = Columns.column(other, RAMP_30);
+			gen.ramp_q = Columns.column(other, RAMP_Q);
+			gen.apf = Columns.column(other, APF);
 		}
 
 		if (other.columns() > APF + 1) {
-			gen.mu_Pmax = other.viewColumn(MU_PMAX);
-			gen.mu_Pmin = other.viewColumn(MU_PMIN);
-			gen.mu_Qmax = other.viewColumn(MU_QMAX);
-			gen.mu_Qmin = other.viewColumn(MU_QMIN);
+			gen.mu_Pmax = Columns.column(other, MU_PMAX);
+			gen.mu_Pmin = Columns.column(other, MU_PMIN);
+			gen.mu_Qmax = Columns.column(other, MU_QMAX);
+			gen.mu_Qmin = Columns.column(other, MU_QMIN);
 		}
 
 		return gen;
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.jpc;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Load and generation profiles for a sequence of time steps.
+ *
+ * A profile is a set of columns, each giving the value of one field (Pd
+ * or Qd of a bus, or Pg of a generator) at every step. Elements are
+ * identified by their row in the bus or gen table of the base case, and
+ * values replace the base case values (MW or MVAr). Fields without a
+ * column keep their base case values.
+ *
+ * Profiles are read from CSV files, with one row per step and a header
+ * naming the column of each field as field:row, e.g. Pd:4 or Pg:0.
+ * Columns with other names, such as time stamps, are ignored. They are
+ * also read and written as binary columnar files, in which each column
+ * is a contiguous, 8 byte aligned block of little-endian doubles, read
+ * through a memory mapping.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Profile {
+
+	/** real power demand of a bus */
+	public static final int PD = 0;
+
+	/** reactive power demand of a bus */
+	public static final int QD = 1;
+
+	/** real power output of a generator */
+	public static final int PG = 2;
+
+	private static final String[] FIELDS = {"Pd", "Qd", "Pg"};
+
+	/** "JPTP" */
+	public static final int MAGIC = 0x4A505450;
+
+	/** version of the file format written */
+	public static final int FORMAT_VERSION = 1;
+
+	private final int steps;
+	private final List<int[]> keys = new ArrayList<int[]>();
+	private final List<double[]> values = new ArrayList<double[]>();
+
+	/**
+	 *
+	 * @param steps number of time steps
+	 */
+	public Profile(int steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * Adds a column.
+	 *
+	 * @param field PD, QD or PG
+	 * @param row row of the bus or gen table
+	 * @param values value at each step, not copied
+	 */
+	public void add(int field, int row, double[] values) {
+		if (field < PD || field > PG)
+			throw new IllegalArgumentException("Profile: invalid field " + field);
+		if (values.length != steps)
+			throw new IllegalArgumentException("Profile: column has " + values.length + " values, expected " + steps);
+		keys.add(new int[] {field, row});
+		this.values.add(values);
+	}
+
+	/**
+	 *
+	 * @return number of time steps.
+	 */
+	public int steps() {
+		return steps;
+	}
+
+	/**
+	 *
+	 * @return number of columns.
+	 */
+	public int columns() {
+		return keys.size();
+	}
+
+	/**
+	 *
+	 * @param c column index
+	 * @return PD, QD or PG.
+	 */
+	public int field(int c) {
+		return keys.get(c)[0];
+	}
+
+	/**
+	 *
+	 * @param c column index
+	 * @return row of the bus or gen table.
+	 */
+	public int row(int c) {
+		return keys.get(c)[1];
+	}
+
+	/**
+	 *
+	 * @param c column index
+	 * @return value at each step.
+	 */
+	public double[] values(int c) {
+		return values.get(c);
+	}
+
+	/**
+	 * Reads a profile from a CSV file.
+	 *
+	 * @param fname file name
+	 * @return the profile.
+	 * @throws IOException if the file can not be read or is not a valid profile
+	 */
+	public static Profile readCSV(String fname) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(fname), "ISO-8859-1");
+		try {
+			return readCSV(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a profile in CSV format.
+	 *
+	 * @param in CSV data
+	 * @return the profile.
+	 * @throws IOException if the input can not be read or is not a valid profile
+	 */
+	public static Profile readCSV(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		String[] cells;
+		int[] field, row;
+		double[][] data;
+		int ncols, nrows = 0, lineno = 1, k;
+		Profile profile;
+
+		line = reader.readLine();
+		if (line == null)
+			throw new IOException("empty profile");
+		cells = line.split(",");
+		ncols = cells.length;
+		field = new int[ncols];
+		row = new int[ncols];
+		for (int c = 0; c < ncols; c++) {
+			field[c] = -1;
+			String name = cells[c].trim();
+			k = name.indexOf(':');
+			if (k < 0)
+				continue;
+			field[c] = Arrays.asList(FIELDS).indexOf(name.substring(0, k).trim());
+			if (field[c] < 0)
+				continue;
+			try {
+				row[c] = Integer.parseInt(name.substring(k + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IOException("invalid column name '" + name + "'");
+			}
+		}
+
+		data = new double[ncols][64];
+		while ((line = reader.readLine()) != null) {
+			lineno++;
+			if (line.trim().length() == 0)
+				continue;
+			cells = line.split(",");
+			if (cells.length != ncols)
+				throw new IOException("line " + lineno + " has " + cells.length + " columns, expected " + ncols);
+			for (int c = 0; c < ncols; c++) {
+				if (field[c] < 0)
+					continue;
+				if (nrows == data[c].length)
+					data[c] = Arrays.copyOf(data[c], 2 * nrows);
+				try {
+					data[c][nrows] = Double.parseDouble(cells[c].trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("invalid number '" + cells[c].trim() + "' on line " + lineno);
+				}
+			}
+			nrows++;
+		}
+
+		profile = new Profile(nrows);
+		for (int c = 0; c < ncols; c++)
+			if (field[c] >= 0)
+				profile.add(field[c], row[c], Arrays.copyOf(data[c], nrows));
+		return profile;
+	}
+
+	/**
+	 * Writes the profile as a binary columnar file.
+	 *
+	 * @param fname file name
+	 * @throws IOException
+	 */
+	public void write(String fname) throws IOException {
+		FileOutputStream out = new FileOutputStream(fname);
+		try {
+			FileChannel ch = out.getChannel();
+			ByteBuffer buf = ByteBuffer.allocateDirect(16 + 8 * steps).order(ByteOrder.LITTLE_ENDIAN);
+
+			buf.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(steps).putInt(columns());
+			write(ch, buf);
+			for (int c = 0; c < columns(); c++) {
+				/* the header is 16 bytes and each column 8 + 8 * steps, so columns stay aligned */
+				buf.putInt(field(c)).putInt(row(c));
+				buf.asDoubleBuffer().put(values(c));
+				buf.position(buf.position() + 8 * steps);
+				write(ch, buf);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void write(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+
+	/**
+	 * Reads a profile written by write().
+	 *
+	 * @param fname file name
+	 * @return the profile.
+	 * @throws IOException if the file can not be read or is not a profile
+	 */
+	public static Profile read(String fname) throws IOException {
+		FileInputStream in = new FileInputStream(fname);
+		try {
+			FileChannel ch = in.getChannel();
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			int version, steps, ncols, field, row;
+			double[] values;
+			Profile profile;
+
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.remaining() < 16 || map.getInt() != MAGIC)
+				throw new IOException("not a profile");
+			version = map.getInt();
+			if (version > FORMAT_VERSION)
+				throw new IOException("unsupported profile format version " + version);
+			steps = map.getInt();
+			ncols = map.getInt();
+			if (map.remaining() != (long) ncols * (8 + 8 * steps))
+				throw new IOException("truncated profile");
+
+			profile = new Profile(steps);
+			for (int c = 0; c < ncols; c++) {
+				field = map.getInt();
+				row = map.getInt();
+				values = new double[steps];
+				map.asDoubleBuffer().get(values);
+				map.position(map.position() + 8 * steps);
+				profile.add(field, row, values);
+			}
+			return profile;
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Solves the DC power flow for many vectors of bus injections, such as
+ * the hours of a time series.
+ *
+ * The network is fixed: reduced Bbus is factorized once, on
+ * construction. Injections are given as a matrix with one row per
+ * period and one column per bus of the base case and are solved in
+ * blocks of periods. Within a block the periods are divided among the
+ * threads of the Colt pool, each solving with the shared factors and its
+ * own workspace. The angles and branch flows of each block are written
+ * into arrays allocated once per call and passed to a sink before the
+ * next block is solved, so nothing is allocated per period.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class BatchDCPF {
+
+	/** default number of periods per block */
+	public static final int BLOCK = 256;
+
+	/**
+	 * Receives the results of each block of periods.
+	 */
+	public interface Sink {
+
+		/**
+		 * Called from the thread that called solve, in order of period.
+		 * The arrays are reused for the next block.
+		 *
+		 * @param first index of the first period of the block
+		 * @param count number of periods in the block
+		 * @param Va bus voltage angles (degrees), count x nbus, row-major
+		 * @param Pf real power flows at the "from" end (MW), count x nbranch,
+		 * row-major
+		 */
+		void block(int first, int count, double[] Va, double[] Pf);
+
+	}
+
+	/* base case, internal indexing */
+	private final double baseMVA, Varef;
+	private final int nb, nl, ref;
+	private final int[] pos, busRow, branchRow;
+	private final double[] Pbusinj, Pfinj, Gs;
+	private final int[] Fp, Fj;
+	private final double[] Fx;
+	private final SparseLU lu;
+	private final double[] Bref;
+
+	/* size of the tables of the base case */
+	private final int nbRows, nlRows;
+
+	/* net injection of the base case at each row of the bus table (MW) */
+	private final double[] P0;
+
+	/**
+	 *
+	 * @param casedata base case
+	 */
+	public BatchDCPF(JPC casedata) {
+		int[] pv, pq, pvpq, gbus, on;
+		double[] Pd, Pg;
+		JPC jpc;
+		Bus bus;
+		Gen gen;
+		Branch branch;
+		IntMatrix1D[] bt;
+		AbstractMatrix[] Bdc;
+		DoubleMatrix2D B;
+		SparseRCDoubleMatrix2D Bf;
+		SparseCCDoubleMatrix2D Br;
+		Dcs A;
+
+		casedata = loadcase(casedata);
+		nbRows = casedata.bus.size();
+		nlRows = casedata.branch.size();
+
+		/* convert to internal indexing */
+		jpc = ext2int(casedata);
+		baseMVA = jpc.baseMVA;
+		bus = jpc.bus;
+		gen = jpc.gen;
+		branch = jpc.branch;
+		nb = bus.size();
+		nl = branch.size();
+		busRow = jpc.order.bus.status.on.clone();
+		branchRow = jpc.order.branch.status.on.clone();
+
+		bt = bustypes(bus, gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+		Varef = Math.toRadians(bus.Va.get(ref));
+
+		/* net injections of the base case */
+		P0 = new double[nbRows];
+		Pd = Columns.elements(bus.Pd);
+		for (int i = 0; i < nb; i++)
+			P0[busRow[i]] = -Pd[i];
+		gbus = Columns.elements(gen.gen_bus);
+		Pg = Columns.elements(gen.Pg);
+		for (int k = 0; k < gbus.length; k++)
+			P0[busRow[gbus[k]]] += Pg[k];
+
+		/* DC matrices */
+		Bdc = Djp_makeBdc.makeBdc(baseMVA, bus, branch);
+		B = (DoubleMatrix2D) Bdc[0];
+		if (Bdc[1] instanceof SparseRCDoubleMatrix2D) {
+			Bf = (SparseRCDoubleMatrix2D) Bdc[1];
+		} else {
+			Bf = new SparseRCDoubleMatrix2D(nl, nb);
+			Bf.assign((DoubleMatrix2D) Bdc[1]);
+		}
+		Fp = Bf.getRowPointers();
+		Fj = Bf.getColumnIndexes();
+		Fx = Bf.getValues();
+		Pbusinj = ((DoubleMatrix1D) Bdc[2]).toArray();
+		Pfinj = ((DoubleMatrix1D) Bdc[3]).toArray();
+		Gs = bus.Gs.toArray();
+
+		/* position of each bus in reduced Bbus, -1 for the reference */
+		pvpq = new int[pv.length + pq.length];
+		System.arraycopy(pv, 0, pvpq, 0, pv.length);
+		System.arraycopy(pq, 0, pvpq, pv.length, pq.length);
+		pos = new int[nb];
+		for (int i = 0; i < nb; i++)
+			pos[i] = -1;
+		for (int j = 0; j < pvpq.length; j++)
+			pos[pvpq[j]] = j;
+		Bref = B.viewSelection(pvpq, new int[] {ref}).copy().viewColumn(0).toArray();
+
+		/* factor reduced Bbus */
+		Br = new SparseCCDoubleMatrix2D(pvpq.length, pvpq.length);
+		Br.assign(B.viewSelection(pvpq, pvpq));
+		A = Br.elements();
+		lu = new SparseLU(A);
+		if (!lu.factor(A))
+			throw new IllegalArgumentException("BatchDCPF: B matrix is singular");
+	}
+
+	/**
+	 *
+	 * @return net real power injection (generation - load) of the base
+	 * case at each row of the bus table (MW).
+	 */
+	public double[] getInjections() {
+		return P0.clone();
+	}
+
+	/**
+	 * Solves all periods.
+	 *
+	 * @param P net real power injections (MW), periods x buses of the base
+	 * case. Injections at the reference bus are ignored.
+	 * @return bus voltage angles (degrees, periods x buses) and real power
+	 * flows at the "from" end of each branch (MW, periods x branches).
+	 */
+	public DoubleMatrix2D[] solve(DoubleMatrix2D P) {
+		final int nt = P.rows();
+		final double[] Va = new double[nt * nbRows], Pf = new double[nt * nlRows];
+
+		solve(P, BLOCK, new Sink() {
+			public void block(int first, int count, double[] bVa, double[] bPf) {
+				System.arraycopy(bVa, 0, Va, first * nbRows, count * nbRows);
+				System.arraycopy(bPf, 0, Pf, first * nlRows, count * nlRows);
+			}
+		});
+
+		return new DoubleMatrix2D[] {
+				new DenseDoubleMatrix2D(nt, nbRows, Va, 0, 0, nbRows, 1, false),
+				new DenseDoubleMatrix2D(nt, nlRows, Pf, 0, 0, nlRows, 1, false) };
+	}
+
+	/**
+	 * Solves all periods, passing the results to the sink block by block.
+	 *
+	 * @param P net real power injections (MW), periods x buses of the base
+	 * case. Injections at the reference bus are ignored.
+	 * @param block number of periods per block
+	 * @param sink receives the results
+	 */
+	public void solve(final DoubleMatrix2D P, int block, Sink sink) {
+		int nt, nthreads, count, chunk;
+		final double[] Va, Pf;
+		final double[][][] work;
+
+		if (P.columns() != nbRows)
+			throw new IllegalArgumentException("BatchDCPF: injections must have a column for each bus");
+
+		nt = P.rows();
+		block = Math.max(1, Math.min(block, nt));
+		Va = new double[block * nbRows];
+		Pf = new double[block * nlRows];
+
+		nthreads = Math.min(ConcurrencyUtils.getNumberOfThreads(), block);
+		work = new double[nthreads][3][nb];
+
+		for (int first = 0; first < nt; first += block) {
+			count = Math.min(block, nt - first);
+			if (nthreads > 1 && count >= nthreads) {
+				Future<?>[] futures = new Future<?>[nthreads];
+				chunk = count / nthreads;
+				for (int j = 0; j < nthreads; j++) {
+					final int lo = j * chunk;
+					final int hi = (j == nthreads - 1) ? count : lo + chunk;
+					final int offset = first;
+					final double[][] w = work[j];
+					futures[j] = ConcurrencyUtils.submit(new Runnable() {
+						public void run() {
+							for (int h = lo; h < hi; h++)
+								solve(P, offset + h, h, w, Va, Pf);
+						}
+					});
+				}
+				ConcurrencyUtils.waitForCompletion(futures);
+			} else {
+				for (int h = 0; h < count; h++)
+					solve(P, first + h, h, work[0], Va, Pf);
+			}
+			sink.block(first, count, Va, Pf);
+		}
+	}
+
+	/**
+	 * Solves period t into row h of the block.
+	 *
+	 * @param w workspace: right-hand side, solver workspace and full angle
+	 * vector, each of length nb
+	 */
+	private void solve(DoubleMatrix2D P, int t, int h, double[][] w, double[] Va, double[] Pf) {
+		int j, va = h * nbRows, pf = h * nlRows;
+		double s;
+		double[] x = w[0], theta = w[2];
+
+		/* reduced injections, adjusted for phase shifters and real shunts */
+		for (int i = 0; i < nb; i++) {
+			j = pos[i];
+			if (j >= 0)
+				x[j] = (P.getQuick(t, busRow[i]) - Gs[i]) / baseMVA - Pbusinj[i] - Bref[j] * Varef;
+		}
+		lu.solve(x, w[1]);
+
+		/* angles */
+		for (int i = 0; i < nb; i++) {
+			j = pos[i];
+			theta[i] = (j >= 0) ? x[j] : Varef;
+			Va[va + busRow[i]] = Math.toDegrees(theta[i]);
+		}
+
+		/* flows */
+		for (int l = 0; l < nl; l++) {
+			s = Pfinj[l];
+			for (int p = Fp[l]; p < Fp[l + 1]; p++)
+				s += Fx[p] * theta[Fj[p]];
+			Pf[pf + branchRow[l]] = s * baseMVA;
+		}
+	}
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cern.colt.matrix.tdcomplex.DComplexFactory1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_int2ext.int2ext;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.jpc.Order;
+
+/**
+ * Solves many load and generation scenarios on one network.
+ *
+ * The case is converted to internal indexing and Ybus, the bus types,
+ * the initial voltages and the FDPF B matrices are built once, on
+ * construction. Each scenario is given as changes to Pd and Qd of the
+ * buses and Pg of the generators of the base case and only the bus power
+ * injections are rebuilt for it. Scenarios are solved in parallel on a
+ * fork-join pool. Each worker thread keeps its own Jacobian, LU factors
+ * or FDPF factors, so their sparsity analysis is done once per thread.
+ *
+ * The power flow algorithm is selected by PF_ALG, as for runpf. Generator
+ * reactive power limits (ENFORCE_Q_LIMS) and the DC power flow are not
+ * supported. Results hold the solved bus voltages; the full solved case
+ * is only built when requested.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class BatchPF {
+
+	/**
+	 * Receives the results of a batch as they finish.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called from a worker thread for each solved scenario, in order of
+		 * completion. Must be thread-safe.
+		 *
+		 * @param result
+		 */
+		void solved(Result result);
+
+	}
+
+	/**
+	 * Changes to the injections of the base case. Arrays are indexed by the
+	 * rows of the bus and gen tables of the base case, as given to the
+	 * constructor. Null arrays leave the base values unchanged.
+	 */
+	public static class Delta {
+
+		/** scenario identifier, returned with the result */
+		public final long id;
+
+		/** change in real power demand (MW) */
+		public final double[] dPd;
+
+		/** change in reactive power demand (MVAr) */
+		public final double[] dQd;
+
+		/** change in real power output (MW) */
+		public final double[] dPg;
+
+		public Delta(long id, double[] dPd, double[] dQd, double[] dPg) {
+			this.id = id;
+			this.dPd = dPd;
+			this.dQd = dQd;
+			this.dPg = dPg;
+		}
+
+	}
+
+	/**
+	 * Solution of a scenario.
+	 */
+	public class Result {
+
+		/** the scenario */
+		public final Delta delta;
+
+		/** true if the power flow converged */
+		public final boolean success;
+
+		/** number of iterations performed */
+		public final int iterations;
+
+		/** bus voltages, internal bus indexing */
+		public final DComplexMatrix1D V;
+
+		Result(Delta delta, DComplexMatrix1D V, boolean success, int iterations) {
+			this.delta = delta;
+			this.V = V;
+			this.success = success;
+			this.iterations = iterations;
+		}
+
+		/**
+		 *
+		 * @return the solved case, with external indexing, as returned by
+		 * runpf.
+		 */
+		public JPC toCase() {
+			JPC results;
+			Object[] data;
+
+			results = jpc.copy();
+			apply(delta, results.bus, results.gen);
+			data = Djp_pfsoln.pfsoln(baseMVA, results.bus, results.gen, results.branch,
+					Ybus, Yf, Yt, V, ref, pv, pq);
+			results.bus = (Bus) data[0];
+			results.gen = (Gen) data[1];
+			results.branch = (Branch) data[2];
+			results.success = success;
+
+			results = int2ext(results);
+
+			/* zero out result fields of out-of-service gens & branches */
+			if (results.order.gen.status.off.length > 0) {
+				results.gen.Pg.viewSelection(results.order.gen.status.off).assign(0);
+				results.gen.Qg.viewSelection(results.order.gen.status.off).assign(0);
+			}
+			if (results.order.branch.status.off.length > 0) {
+				results.branch.Pf.viewSelection(results.order.branch.status.off).assign(0);
+				results.branch.Qf.viewSelection(results.order.branch.status.off).assign(0);
+				results.branch.Pt.viewSelection(results.order.branch.status.off).assign(0);
+				results.branch.Qt.viewSelection(results.order.branch.status.off).assign(0);
+			}
+
+			return results;
+		}
+
+	}
+
+	private static ForkJoinPool defaultPool;
+
+	private final ForkJoinPool pool;
+
+	/* base case, internal indexing */
+	private final JPC jpc;
+	private final double baseMVA;
+	private final int nb, ref;
+	private final int[] pv, pq;
+	private final DComplexMatrix2D Ybus, Yf, Yt;
+	private final DComplexMatrix1D V0;
+	private final PFSolver solver;
+
+	/* base injections and the external rows of the internal buses and gens */
+	private final double[] Pd, Qd, Pg, Qg;
+	private final int[] gbus, busRow, genRow;
+
+	/* per-thread solver state */
+	private final ThreadLocal<PFSolver> workspace = new ThreadLocal<PFSolver>() {
+		@Override
+		protected PFSolver initialValue() {
+			return solver.copy(Ybus);
+		}
+	};
+
+	/**
+	 * Solves scenarios using a shared default pool, with one thread per
+	 * processor.
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 */
+	public BatchPF(JPC casedata, Map<String, Double> jpopt) {
+		this(casedata, jpopt, defaultPool());
+	}
+
+	/**
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 * @param pool pool in which scenarios are solved
+	 */
+	public BatchPF(JPC casedata, Map<String, Double> jpopt, ForkJoinPool pool) {
+		int ng;
+		Order o;
+		Bus bus;
+		Gen gen;
+		Branch branch;
+		IntMatrix1D[] bt;
+		DComplexMatrix2D[] Y;
+		PFSolver pf;
+
+		this.pool = pool;
+		pf = new PFSolver("BatchPF", jpopt);
+
+		/* read data and add zero columns to branch for flows if needed */
+		casedata = loadcase(casedata);
+		branch = casedata.branch;
+		if (branch.Qt == null) {
+			int nl = branch.size();
+			branch.Pf = DoubleFactory1D.dense.make(nl);
+			branch.Qf = DoubleFactory1D.dense.make(nl);
+			branch.Pt = DoubleFactory1D.dense.make(nl);
+			branch.Qt = DoubleFactory1D.dense.make(nl);
+		}
+
+		/* convert to internal indexing */
+		jpc = ext2int(casedata);
+		baseMVA = jpc.baseMVA;
+		bus = jpc.bus;
+		gen = jpc.gen;
+		branch = jpc.branch;
+		nb = bus.size();
+		ng = gen.size();
+
+		/* bus types are fixed for all scenarios */
+		bt = bustypes(bus, gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		/* rows of the base case for each internal bus and gen */
+		o = jpc.order;
+		busRow = o.bus.status.on.clone();
+		genRow = PFSolver.genRows(o, ng);
+
+		Pd = bus.Pd.toArray();
+		Qd = bus.Qd.toArray();
+		Pg = gen.Pg.toArray();
+		Qg = gen.Qg.toArray();
+		gbus = gen.gen_bus.toArray();
+
+		/* network matrices and solver state, copied by each thread */
+		Y = Djp_makeYbus.makeYbus(baseMVA, bus, branch);
+		Ybus = Y[0]; Yf = Y[1]; Yt = Y[2];
+		solver = pf.update(baseMVA, bus, branch, Ybus, ref, pv, pq, true, true);
+
+		V0 = PFSolver.initialVoltages(bus, gen);
+	}
+
+	/**
+	 * Solves a single scenario in the calling thread.
+	 *
+	 * @param delta changes to the base case
+	 * @return the solution.
+	 */
+	public Result solve(Delta delta) {
+		DComplexMatrix1D Sbus = makeSbus(delta);
+		Object[] soln;
+
+		soln = workspace.get().solve(Sbus, V0);
+
+		return new Result(delta, (DComplexMatrix1D) soln[0], (Boolean) soln[1], (Integer) soln[2]);
+	}
+
+	/**
+	 * Solves scenarios in parallel, passing each result to the listener as
+	 * it finishes. Scenarios are taken from the iterator as workers become
+	 * free, so it may generate them lazily. Returns when all scenarios are
+	 * solved. Must not be called from a task running in the same pool.
+	 *
+	 * @param deltas scenarios
+	 * @param listener receives the results
+	 */
+	public void solve(Iterator<Delta> deltas, Listener listener) {
+		run(deltas, listener, null);
+	}
+
+	/**
+	 * Solves scenarios in parallel.
+	 *
+	 * @param deltas scenarios
+	 * @return the results, in the same order as the scenarios.
+	 */
+	public List<Result> solve(List<Delta> deltas) {
+		Result[] results = new Result[deltas.size()];
+		run(deltas.iterator(), null, results);
+		return Arrays.asList(results);
+	}
+
+	private void run(Iterator<Delta> deltas, final Listener listener, final Result[] results) {
+		final int slots = 2 * pool.getParallelism();
+		final Semaphore free = new Semaphore(slots);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		int i = 0;
+
+		while (deltas.hasNext() && error.get() == null) {
+			final Delta delta = deltas.next();
+			final int k = i++;
+
+			free.acquireUninterruptibly();
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						Result result = solve(delta);
+						if (results != null)
+							results[k] = result;
+						if (listener != null)
+							listener.solved(result);
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					} finally {
+						free.release();
+					}
+				}
+			});
+		}
+
+		/* wait for the remaining scenarios */
+		free.acquireUninterruptibly(slots);
+		free.release(slots);
+
+		if (error.get() != null)
+			throw new RuntimeException("BatchPF: scenario failed", error.get());
+	}
+
+	/**
+	 * Complex bus power injections for a scenario, as makeSbus.
+	 */
+	private DComplexMatrix1D makeSbus(Delta delta) {
+		double[] S = new double[2 * nb];
+		DComplexMatrix1D Sbus;
+		int k, b;
+
+		for (k = 0; k < nb; k++) {
+			S[2 * k] = -Pd[k];
+			S[2 * k + 1] = -Qd[k];
+			if (delta.dPd != null)
+				S[2 * k] -= delta.dPd[busRow[k]];
+			if (delta.dQd != null)
+				S[2 * k + 1] -= delta.dQd[busRow[k]];
+		}
+		for (k = 0; k < gbus.length; k++) {
+			b = gbus[k];
+			S[2 * b] += Pg[k];
+			S[2 * b + 1] += Qg[k];
+			if (delta.dPg != null)
+				S[2 * b] += delta.dPg[genRow[k]];
+		}
+		for (k = 0; k < 2 * nb; k++)
+			S[k] /= baseMVA;
+
+		Sbus = DComplexFactory1D.dense.make(nb);
+		Sbus.assign(S);
+		return Sbus;
+	}
+
+	/**
+	 * Applies a scenario to internal copies of the base bus and gen data.
+	 */
+	private void apply(Delta delta, Bus bus, Gen gen) {
+		for (int k = 0; k < nb; k++) {
+			if (delta.dPd != null)
+				bus.Pd.setQuick(k, Pd[k] + delta.dPd[busRow[k]]);
+			if (delta.dQd != null)
+				bus.Qd.setQuick(k, Qd[k] + delta.dQd[busRow[k]]);
+		}
+		if (delta.dPg != null)
+			for (int k = 0; k < gbus.length; k++)
+				gen.Pg.setQuick(k, Pg[k] + delta.dPg[genRow[k]]);
+	}
+
+	private static synchronized ForkJoinPool defaultPool() {
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool();
+		return defaultPool;
+	}
+
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cern.colt.matrix.tdcomplex.DComplexFactory1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.jpc.Order;
+
+/**
+ * Branch and generator outage analysis.
+ *
+ * The base case is converted to internal indexing and solved once, on
+ * construction, and its solution is the initial voltage of every
+ * contingency. Each worker thread keeps its own copy of the admittance
+ * matrices in a YbusUpdater: an outage is applied as an in-place update
+ * of the matrices and undone when the contingency is solved. Because the
+ * sparsity pattern of Ybus does not change, the thread's Jacobian and the
+ * symbolic analysis of its LU factors are reused for every branch
+ * outage. Generator outages remove the generator's injection, which is
+ * picked up by the reference bus, and may change the bus types, in which
+ * case a new Jacobian is built for that contingency.
+ *
+ * Outages that leave any bus disconnected from the reference bus are
+ * reported as islanded and not solved. For the others, the results hold
+ * the branch flows and the branches loaded above the selected rating
+ * (rateA, rateB or rateC) and the buses outside their voltage limits.
+ * The power flow algorithm is selected by PF_ALG, as for runpf; generator
+ * reactive power limits and the DC power flow are not supported.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class ContingencyAnalysis {
+
+	/** branch flows are checked against rateA */
+	public static final int RATE_A = 0;
+
+	/** branch flows are checked against rateB */
+	public static final int RATE_B = 1;
+
+	/** branch flows are checked against rateC */
+	public static final int RATE_C = 2;
+
+	/**
+	 * Receives the results of a set of contingencies as they finish.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called from a worker thread for each solved contingency, in order
+		 * of completion. Must be thread-safe.
+		 *
+		 * @param result
+		 */
+		void solved(Result result);
+
+	}
+
+	/**
+	 * Simultaneous outage of branches and generators. Indexes are rows of
+	 * the branch and gen tables of the base case, as given to the
+	 * constructor. Elements already out of service are ignored.
+	 */
+	public static class Contingency {
+
+		/** contingency identifier, returned with the result */
+		public final long id;
+
+		/** branches taken out of service */
+		public final int[] branches;
+
+		/** generators taken out of service */
+		public final int[] gens;
+
+		public Contingency(long id, int[] branches, int[] gens) {
+			this.id = id;
+			this.branches = (branches != null) ? branches : new int[0];
+			this.gens = (gens != null) ? gens : new int[0];
+		}
+
+	}
+
+	/**
+	 * A branch loaded above its rating or a bus voltage outside its
+	 * limits.
+	 */
+	public static class Violation {
+
+		/** branch flow above rating */
+		public static final int BRANCH = 0;
+
+		/** bus voltage magnitude below Vmin */
+		public static final int VMIN = 1;
+
+		/** bus voltage magnitude above Vmax */
+		public static final int VMAX = 2;
+
+		/** BRANCH, VMIN or VMAX */
+		public final int type;
+
+		/** row of the branch or bus in the base case */
+		public final int index;
+
+		/** apparent power flow (MVA), the larger of both ends, or voltage magnitude (p.u.) */
+		public final double value;
+
+		/** rating (MVA) or voltage limit (p.u.) */
+		public final double limit;
+
+		Violation(int type, int index, double value, double limit) {
+			this.type = type;
+			this.index = index;
+			this.value = value;
+			this.limit = limit;
+		}
+
+	}
+
+	/**
+	 * Post-contingency state. Flows are indexed by the rows of the branch
+	 * table of the base case and are zero for out-of-service branches.
+	 */
+	public static class Result {
+
+		/** the contingency */
+		public final Contingency contingency;
+
+		/** true if the outages leave part of the network disconnected */
+		public final boolean islanded;
+
+		/** true if the power flow converged */
+		public final boolean success;
+
+		/** number of iterations performed */
+		public final int iterations;
+
+		/** bus voltages, internal bus indexing, null if islanded */
+		public final DComplexMatrix1D V;
+
+		/** real and reactive power flows at the "from" and "to" ends (MW, MVAr) */
+		public final double[] Pf, Qf, Pt, Qt;
+
+		/** branch flow and voltage limit violations, empty unless converged */
+		public final List<Violation> violations;
+
+		Result(Contingency contingency, boolean islanded, boolean success, int iterations,
+				DComplexMatrix1D V, double[] Pf, double[] Qf, double[] Pt, double[] Qt,
+				List<Violation> violations) {
+			this.contingency = contingency;
+			this.islanded = islanded;
+			this.success = success;
+			this.iterations = iterations;
+			this.V = V;
+			this.Pf = Pf;
+			this.Qf = Qf;
+			this.Pt = Pt;
+			this.Qt = Qt;
+			this.violations = violations;
+		}
+
+	}
+
+	/**
+	 * Per-thread solver state.
+	 */
+	private class Workspace {
+
+		final YbusUpdater Y;
+		final PFSolver pf;
+
+		/* connectivity search */
+		final boolean[] reached;
+		final int[] queue;
+
+		Workspace() {
+			Y = base.copy();
+			pf = solver.copy(Y.getYbus());
+			reached = new boolean[nb];
+			queue = new int[nb];
+		}
+
+	}
+
+	private static ForkJoinPool defaultPool;
+
+	private final int rating;
+	private final ForkJoinPool pool;
+
+	/* base case, internal indexing */
+	private final double baseMVA;
+	private final int nb, nl, ref;
+	private final int[] pv, pq, f, t, gbus;
+	private final double[] Sbus, Pg, Qg, rate, Vmin, Vmax;
+	private final YbusUpdater base;
+	private final PFSolver solver;
+	private final DComplexMatrix1D V0;
+
+	/* number of generators at each bus and branches incident to each bus */
+	private final int[] ngen, adjp, adj;
+
+	/* rows of the base case for each internal element and vice versa */
+	private final int[] busRow, branchRow, branchInt, genInt;
+	private final int nlRows;
+
+	private final Result baseResult;
+
+	private final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
+	/**
+	 * Checks flows against rateA and solves contingencies using a shared
+	 * default pool, with one thread per processor.
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 */
+	public ContingencyAnalysis(JPC casedata, Map<String, Double> jpopt) {
+		this(casedata, jpopt, RATE_A, defaultPool());
+	}
+
+	/**
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 * @param rating RATE_A, RATE_B or RATE_C
+	 */
+	public ContingencyAnalysis(JPC casedata, Map<String, Double> jpopt, int rating) {
+		this(casedata, jpopt, rating, defaultPool());
+	}
+
+	/**
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 * @param rating RATE_A, RATE_B or RATE_C
+	 * @param pool pool in which contingencies are solved
+	 */
+	public ContingencyAnalysis(JPC casedata, Map<String, Double> jpopt, int rating, ForkJoinPool pool) {
+		int ng;
+		int[] on;
+		Order o;
+		JPC jpc;
+		Bus bus;
+		Gen gen;
+		Branch branch;
+		IntMatrix1D[] bt;
+		PFSolver pf;
+		DComplexMatrix1D V;
+
+		if (rating < RATE_A || rating > RATE_C)
+			throw new IllegalArgumentException("ContingencyAnalysis: invalid rating " + rating);
+
+		this.pool = pool;
+		this.rating = rating;
+		pf = new PFSolver("ContingencyAnalysis", jpopt);
+
+		/* convert to internal indexing */
+		casedata = loadcase(casedata);
+		nlRows = casedata.branch.size();
+		jpc = ext2int(casedata);
+		baseMVA = jpc.baseMVA;
+		bus = jpc.bus;
+		gen = jpc.gen;
+		branch = jpc.branch;
+		nb = bus.size();
+		nl = branch.size();
+		ng = gen.size();
+
+		/* bus types of the base case */
+		bt = bustypes(bus, gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		/* rows of the base case for each internal bus, branch and gen */
+		o = jpc.order;
+		busRow = o.bus.status.on.clone();
+		branchRow = o.branch.status.on.clone();
+		branchInt = PFSolver.index(branchRow, nlRows);
+		genInt = PFSolver.index(PFSolver.genRows(o, ng), casedata.gen.size());
+
+		f = branch.f_bus.toArray();
+		t = branch.t_bus.toArray();
+		gbus = gen.gen_bus.toArray();
+		Pg = gen.Pg.toArray();
+		Qg = gen.Qg.toArray();
+		Vmin = bus.Vmin.toArray();
+		Vmax = bus.Vmax.toArray();
+		rate = ((rating == RATE_A) ? branch.rate_a : (rating == RATE_B) ? branch.rate_b : branch.rate_c).toArray();
+		Sbus = Djp_makeSbus.makeSbus(baseMVA, bus, gen).toArray();
+
+		ngen = new int[nb];
+		for (int k = 0; k < ng; k++)
+			ngen[gbus[k]]++;
+
+		/* branches incident to each bus */
+		adjp = new int[nb + 1];
+		for (int l = 0; l < nl; l++) {
+			adjp[f[l] + 1]++;
+			adjp[t[l] + 1]++;
+		}
+		for (int i = 0; i < nb; i++)
+			adjp[i + 1] += adjp[i];
+		adj = new int[adjp[nb]];
+		on = adjp.clone();
+		for (int l = 0; l < nl; l++) {
+			adj[on[f[l]]++] = l;
+			adj[on[t[l]]++] = l;
+		}
+
+		/* network matrices and solver state, copied by each thread */
+		base = new YbusUpdater(baseMVA, bus, branch);
+		solver = pf.update(baseMVA, bus, branch, base.getYbus(), ref, pv, pq, true, true);
+
+		V = PFSolver.initialVoltages(bus, gen);
+
+		/* solve the base case, its solution is the initial state of each contingency */
+		baseResult = solve(new Contingency(-1, null, null), V);
+		V0 = baseResult.success ? baseResult.V : V;
+	}
+
+	/**
+	 *
+	 * @return the solved base case.
+	 */
+	public Result getBase() {
+		return baseResult;
+	}
+
+	/**
+	 * Single branch and generator outages.
+	 *
+	 * @param casedata base case
+	 * @return one contingency for each in-service branch, followed by one
+	 * for each in-service generator.
+	 */
+	public static List<Contingency> n1(JPC casedata) {
+		List<Contingency> contingencies = new ArrayList<Contingency>();
+		int[] status;
+		long id = 0;
+
+		status = Columns.elements(casedata.branch.br_status);
+		for (int l = 0; l < status.length; l++)
+			if (status[l] != 0)
+				contingencies.add(new Contingency(id++, new int[] {l}, null));
+		status = Columns.elements(casedata.gen.gen_status);
+		for (int k = 0; k < status.length; k++)
+			if (status[k] > 0)
+				contingencies.add(new Contingency(id++, null, new int[] {k}));
+
+		return contingencies;
+	}
+
+	/**
+	 * Solves a single contingency in the calling thread.
+	 *
+	 * @param contingency outages
+	 * @return the post-contingency state.
+	 */
+	public Result solve(Contingency contingency) {
+		return solve(contingency, V0);
+	}
+
+	/**
+	 * Solves contingencies in parallel, passing each result to the listener
+	 * as it finishes. Contingencies are taken from the iterator as workers
+	 * become free. Returns when all are solved. Must not be called from a
+	 * task running in the same pool.
+	 *
+	 * @param contingencies outages
+	 * @param listener receives the results
+	 */
+	public void solve(Iterator<Contingency> contingencies, Listener listener) {
+		run(contingencies, listener, null);
+	}
+
+	/**
+	 * Solves contingencies in parallel.
+	 *
+	 * @param contingencies outages
+	 * @return the results, in the same order as the contingencies.
+	 */
+	public List<Result> solve(List<Contingency> contingencies) {
+		Result[] results = new Result[contingencies.size()];
+		run(contingencies.iterator(), null, results);
+		return Arrays.asList(results);
+	}
+
+	private void run(Iterator<Contingency> contingencies, final Listener listener, final Result[] results) {
+		final int slots = 2 * pool.getParallelism();
+		final Semaphore free = new Semaphore(slots);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		int i = 0;
+
+		while (contingencies.hasNext() && error.get() == null) {
+			final Contingency contingency = contingencies.next();
+			final int k = i++;
+
+			free.acquireUninterruptibly();
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						Result result = solve(contingency);
+						if (results != null)
+							results[k] = result;
+						if (listener != null)
+							listener.solved(result);
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					} finally {
+						free.release();
+					}
+				}
+			});
+		}
+
+		/* wait for the remaining contingencies */
+		free.acquireUninterruptibly(slots);
+		free.release(slots);
+
+		if (error.get() != null)
+			throw new RuntimeException("ContingencyAnalysis: contingency failed", error.get());
+	}
+
+	/**
+	 * Applies the branch outages to the thread's admittance matrices,
+	 * solves and restores the matrices.
+	 */
+	private Result solve(Contingency contingency, DComplexMatrix1D V0) {
+		Workspace w = workspace.get();
+		int[] lines = new int[contingency.branches.length];
+		int n = 0;
+
+		for (int row : contingency.branches) {
+			int l = branchInt[row];
+			if (l >= 0 && Columns.elements(w.Y.getBranch().br_status)[l] != 0) {
+				w.Y.setBranchStatus(l, 0);
+				lines[n++] = l;
+			}
+		}
+		try {
+			return solve(contingency, V0, w, n > 0);
+		} finally {
+			for (int k = 0; k < n; k++)
+				w.Y.setBranchStatus(lines[k], 1);
+		}
+	}
+
+	private Result solve(Contingency contingency, DComplexMatrix1D V0, Workspace w,
+			boolean outages) {
+		int cref, k, g;
+		int[] cpv, cpq, busGens;
+		boolean types;
+		double[] S;
+		DComplexMatrix1D Sc;
+		PFSolver pf;
+		Object[] soln;
+
+		/* remove the injections of outaged generators */
+		S = Sbus.clone();
+		busGens = ngen;
+		for (int row : contingency.gens) {
+			g = genInt[row];
+			if (g < 0)
+				continue;
+			if (busGens == ngen)
+				busGens = ngen.clone();
+			busGens[gbus[g]]--;
+			S[2 * gbus[g]] -= Pg[g] / baseMVA;
+			S[2 * gbus[g] + 1] -= Qg[g] / baseMVA;
+		}
+
+		/* buses left without generators become PQ buses */
+		cref = ref;
+		cpv = pv;
+		cpq = pq;
+		types = false;
+		if (busGens != ngen) {
+			int[] tpv = new int[pv.length], tpq = Arrays.copyOf(pq, pq.length + pv.length + 1);
+			int npv = 0, npq = pq.length;
+			for (int i : pv) {
+				if (busGens[i] > 0) {
+					tpv[npv++] = i;
+				} else {
+					tpq[npq++] = i;
+				}
+			}
+			if (busGens[ref] == 0) {
+				if (npv == 0)
+					return new Result(contingency, false, false, 0, null, null, null, null, null,
+							new ArrayList<Violation>());
+				tpq[npq++] = ref;
+				cref = tpv[0];
+				tpv = Arrays.copyOfRange(tpv, 1, npv);
+				npv--;
+			}
+			types = cref != ref || npv != pv.length;
+			if (types) {
+				cpv = Arrays.copyOf(tpv, npv);
+				cpq = Arrays.copyOf(tpq, npq);
+				Arrays.sort(cpq);
+			}
+		}
+
+		if (outages && islanded(w, cref))
+			return new Result(contingency, true, false, 0, null, null, null, null, null,
+					new ArrayList<Violation>());
+
+		Sc = DComplexFactory1D.dense.make(nb);
+		Sc.assign(S);
+
+		pf = w.pf;
+		if (outages || types)
+			pf = pf.update(baseMVA, w.Y.getBus(), w.Y.getBranch(), w.Y.getYbus(),
+					cref, cpv, cpq, types, outages);
+		soln = pf.solve(Sc, V0);
+
+		return result(contingency, w.Y, (DComplexMatrix1D) soln[0], (Boolean) soln[1], (Integer) soln[2]);
+	}
+
+	/**
+	 * Checks whether any bus is disconnected from the reference bus.
+	 */
+	private boolean islanded(Workspace w, int ref) {
+		int[] status = Columns.elements(w.Y.getBranch().br_status);
+		boolean[] reached = w.reached;
+		int[] queue = w.queue;
+		int head = 0, tail = 0, i, j, l, n = 1;
+
+		Arrays.fill(reached, false);
+		reached[ref] = true;
+		queue[tail++] = ref;
+		while (head < tail) {
+			i = queue[head++];
+			for (int p = adjp[i]; p < adjp[i + 1]; p++) {
+				l = adj[p];
+				if (status[l] == 0)
+					continue;
+				j = (f[l] == i) ? t[l] : f[l];
+				if (!reached[j]) {
+					reached[j] = true;
+					queue[tail++] = j;
+					n++;
+				}
+			}
+		}
+		return n < nb;
+	}
+
+	/**
+	 * Computes the branch flows and checks the limits.
+	 */
+	private Result result(Contingency contingency, YbusUpdater Y, DComplexMatrix1D V,
+			boolean success, int iterations) {
+		double[] v, Pf, Qf, Pt, Qt;
+		List<Violation> violations = new ArrayList<Violation>();
+
+		v = V.toArray();
+		Pf = new double[nlRows];
+		Qf = new double[nlRows];
+		Pt = new double[nlRows];
+		Qt = new double[nlRows];
+		PFSolver.flows((SparseRCDComplexMatrix2D) Y.getYf(), f, branchRow, baseMVA, v, Pf, Qf);
+		PFSolver.flows((SparseRCDComplexMatrix2D) Y.getYt(), t, branchRow, baseMVA, v, Pt, Qt);
+
+		if (success) {
+			for (int l = 0; l < nl; l++) {
+				int row = branchRow[l];
+				double s = Math.max(Math.hypot(Pf[row], Qf[row]), Math.hypot(Pt[row], Qt[row]));
+				if (rate[l] > 0 && s > rate[l])
+					violations.add(new Violation(Violation.BRANCH, row, s, rate[l]));
+			}
+			for (int i = 0; i < nb; i++) {
+				double vm = Math.hypot(v[2 * i], v[2 * i + 1]);
+				if (vm < Vmin[i]) {
+					violations.add(new Violation(Violation.VMIN, busRow[i], vm, Vmin[i]));
+				} else if (vm > Vmax[i]) {
+					violations.add(new Violation(Violation.VMAX, busRow[i], vm, Vmax[i]));
+				}
+			}
+		}
+
+		return new Result(contingency, false, success, iterations, V, Pf, Qf, Pt, Qt, violations);
+	}
+
+	private static synchronized ForkJoinPool defaultPool() {
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool();
+		return defaultPool;
+	}
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.JPC;
+
+/**
+ * Screens single branch outages with line outage distribution factors
+ * and solves the most severe with the AC power flow.
+ *
+ * The DC power flow of the base case is solved once. The post-outage
+ * flows of each branch outage are then the base flows plus the LODF
+ * column of the outage times the base flow of the outaged branch, so
+ * screening all outages takes one PTDF matrix and products with its
+ * columns instead of a power flow per outage. The LODF is built in
+ * blocks of outages to bound memory. Outages are ranked by the highest
+ * loading of any branch, as a fraction of its rating (real power flow
+ * against the MVA rating), and the top ranked are passed to
+ * ContingencyAnalysis.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class ContingencyScreening {
+
+	/** number of outages per block of the LODF matrix */
+	public static final int BLOCK = 256;
+
+	/**
+	 * DC estimate of the effect of a branch outage.
+	 */
+	public static class Screened {
+
+		/** row of the outaged branch in the base case */
+		public final int branch;
+
+		/** true if the outage splits the network */
+		public final boolean islanded;
+
+		/** highest post-outage loading, as a fraction of the branch rating */
+		public final double severity;
+
+		/** row of the branch with the highest loading, -1 if none */
+		public final int worst;
+
+		/** number of branches loaded above their rating */
+		public final int overloads;
+
+		Screened(int branch, boolean islanded, double severity, int worst, int overloads) {
+			this.branch = branch;
+			this.islanded = islanded;
+			this.severity = severity;
+			this.worst = worst;
+			this.overloads = overloads;
+		}
+
+	}
+
+	private final JPC casedata;
+	private final Map<String, Double> jpopt;
+	private final int rating;
+
+	/* base case, internal indexing */
+	private final Branch branch;
+	private final int nl;
+	private final int[] branchRow;
+	private final double[] rate, flow;
+	private final DoubleMatrix2D PTDF;
+
+	private ContingencyAnalysis ac;
+
+	/**
+	 * Checks flows against rateA.
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector, for the AC power flows
+	 */
+	public ContingencyScreening(JPC casedata, Map<String, Double> jpopt) {
+		this(casedata, jpopt, ContingencyAnalysis.RATE_A);
+	}
+
+	/**
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector, for the AC power flows
+	 * @param rating ContingencyAnalysis.RATE_A, RATE_B or RATE_C
+	 */
+	public ContingencyScreening(JPC casedata, Map<String, Double> jpopt, int rating) {
+		int ref;
+		int[] pv, pq;
+		double baseMVA;
+		JPC jpc;
+		Bus bus;
+		IntMatrix1D[] bt;
+		AbstractMatrix[] Bdc;
+		DoubleMatrix1D Va0, Pbus, Pbusinj, Pfinj, Va;
+
+		if (rating < ContingencyAnalysis.RATE_A || rating > ContingencyAnalysis.RATE_C)
+			throw new IllegalArgumentException("ContingencyScreening: invalid rating " + rating);
+
+		this.casedata = loadcase(casedata);
+		this.jpopt = jpopt;
+		this.rating = rating;
+
+		/* convert to internal indexing */
+		jpc = ext2int(this.casedata);
+		baseMVA = jpc.baseMVA;
+		bus = jpc.bus;
+		branch = jpc.branch;
+		nl = branch.size();
+		branchRow = jpc.order.branch.status.on.clone();
+		rate = ((rating == ContingencyAnalysis.RATE_A) ? branch.rate_a
+				: (rating == ContingencyAnalysis.RATE_B) ? branch.rate_b : branch.rate_c).toArray();
+
+		bt = bustypes(bus, jpc.gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		/* base case DC power flow, as in runpf */
+		Va0 = bus.Va.copy().assign(DoubleFunctions.chain(DoubleFunctions.mult(Math.PI), DoubleFunctions.div(180)));
+		Bdc = Djp_makeBdc.makeBdc(baseMVA, bus, branch);
+		Pbusinj = (DoubleMatrix1D) Bdc[2];
+		Pfinj = (DoubleMatrix1D) Bdc[3];
+		Pbus = Djp_makeSbus.makeSbus(baseMVA, bus, jpc.gen).getRealPart();
+		Pbus.assign(Pbusinj, DoubleFunctions.minus);
+		Pbus.assign(bus.Gs.copy().assign(DoubleFunctions.div(baseMVA)), DoubleFunctions.minus);
+		Va = Djp_dcpf.dcpf((DoubleMatrix2D) Bdc[0], Pbus, Va0, ref, pv, pq);
+		flow = ((DoubleMatrix2D) Bdc[1]).zMult(Va, null).assign(Pfinj, DoubleFunctions.plus)
+				.assign(DoubleFunctions.mult(baseMVA)).toArray();
+
+		PTDF = Djp_makePTDF.makePTDF(baseMVA, bus, branch, ref);
+	}
+
+	/**
+	 *
+	 * @return base case DC real power flows (MW), indexed by the rows of
+	 * the branch table of the base case and zero for out-of-service
+	 * branches.
+	 */
+	public double[] getFlows() {
+		double[] Pf = new double[casedata.branch.size()];
+
+		for (int l = 0; l < nl; l++)
+			Pf[branchRow[l]] = flow[l];
+		return Pf;
+	}
+
+	/**
+	 * Estimates the effect of the outage of each in-service branch.
+	 *
+	 * @return the outages, most severe first. Outages that split the
+	 * network come last.
+	 */
+	public List<Screened> screen() {
+		List<Screened> screened = new ArrayList<Screened>(nl);
+		int[] block;
+		int nc, worst, overloads;
+		double severity, s, df;
+		boolean islanded;
+		DoubleMatrix2D LODF;
+
+		for (int first = 0; first < nl; first += BLOCK) {
+			nc = Math.min(BLOCK, nl - first);
+			block = new int[nc];
+			for (int c = 0; c < nc; c++)
+				block[c] = first + c;
+			LODF = Djp_makeLODF.makeLODF(branch, PTDF, block);
+
+			for (int c = 0; c < nc; c++) {
+				int k = block[c];
+				islanded = false;
+				severity = 0;
+				worst = -1;
+				overloads = 0;
+				for (int m = 0; m < nl; m++) {
+					if (m == k)
+						continue;
+					df = LODF.getQuick(m, c);
+					if (Double.isNaN(df)) {
+						islanded = true;
+						break;
+					}
+					if (rate[m] <= 0)
+						continue;
+					s = Math.abs(flow[m] + df * flow[k]) / rate[m];
+					if (s > 1)
+						overloads++;
+					if (s > severity) {
+						severity = s;
+						worst = branchRow[m];
+					}
+				}
+				if (islanded)
+					screened.add(new Screened(branchRow[k], true, 0, -1, 0));
+				else
+					screened.add(new Screened(branchRow[k], false, severity, worst, overloads));
+			}
+		}
+
+		Collections.sort(screened, new Comparator<Screened>() {
+			public int compare(Screened a, Screened b) {
+				if (a.islanded != b.islanded)
+					return a.islanded ? 1 : -1;
+				return Double.compare(b.severity, a.severity);
+			}
+		});
+		return screened;
+	}
+
+	/**
+	 * Screens all branch outages and solves the most severe with the AC
+	 * power flow.
+	 *
+	 * @param k number of outages to solve
+	 * @return AC results for the k most severe outages that do not split
+	 * the network, most severe first. The contingency id is the rank.
+	 */
+	public List<ContingencyAnalysis.Result> run(int k) {
+		List<ContingencyAnalysis.Contingency> top = new ArrayList<ContingencyAnalysis.Contingency>(k);
+
+		for (Screened s : screen()) {
+			if (top.size() == k || s.islanded)
+				break;
+			top.add(new ContingencyAnalysis.Contingency(top.size(), new int[] {s.branch}, null));
+		}
+
+		if (ac == null)
+			ac = new ContingencyAnalysis(casedata, jpopt, rating);
+		return ac.solve(top);
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+
+/**
+ * Jacobian of the current injection power flow equations in rectangular
+ * coordinates.
+ *
+ * The unknowns are the real and imaginary parts, e and f, of the voltage
+ * of each PV and PQ bus, in the order of pvpq, followed by the reactive
+ * power injection of each PV bus. The equations are the real and
+ * imaginary parts of the current mismatch
+ *
+ * 	dI(k) = Y(k,:) * V - conj(S(k) / V(k))
+ *
+ * of each PV and PQ bus, followed by the voltage magnitude constraint
+ * (e(k)^2 + f(k)^2 - Vset(k)^2) / 2 of each PV bus. The derivatives of
+ * dI(k) with respect to the voltage of another bus are just the
+ * elements of Ybus, so they are set once, on construction, and each call
+ * to update() refills only the 2 x 2 diagonal block of each bus and the
+ * entries of the PV buses. The matrix is stored in compressed-column
+ * form so that it may be passed straight to CSparse.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class CurrentJacobian {
+
+	private int npv, npvpq, n;
+
+	/* bus of each position in pvpq */
+	private int[] busOf;
+
+	/* real and imaginary part of the diagonal element of Ybus of each bus */
+	private double[] Gkk, Bkk;
+
+	/* destinations in Jx of the diagonal block of each bus */
+	private int[] dre, drf, die, dif;
+
+	/* destinations in Jx of the Q column and voltage row of each PV bus */
+	private int[] dqr, dqi, dve, dvf;
+
+	/* Jacobian in compressed-column form */
+	private Dcs J;
+
+	/**
+	 * Builds the sparsity pattern and constant values of the Jacobian for
+	 * the given admittance matrix and lists of PV and PQ bus indices.
+	 *
+	 * @param Ybus full system admittance matrix
+	 * @param pv PV bus indices
+	 * @param pq PQ bus indices
+	 */
+	public CurrentJacobian(DComplexMatrix2D Ybus, int[] pv, int[] pq) {
+		int nb, nt, t, a, b, i, j, k, p, q, c, nz;
+		int[] Yp, Yj, idx, ti, tj, pos, diag, count, Jp, Ji;
+		double g, h;
+		double[] Yx, tx, Jx;
+		SparseRCDComplexMatrix2D Y;
+
+		Y = Jacobian.compressedRows(Ybus);
+		Yp = Y.getRowPointers();
+		Yj = Y.getColumnIndexes();
+		Yx = Y.getValues();
+
+		nb = Ybus.rows();
+		npv = pv.length;
+		npvpq = npv + pq.length;
+		n = 2 * npvpq + npv;
+
+		/* position of each bus in pvpq, -1 for the reference bus */
+		idx = new int[nb];
+		for (k = 0; k < nb; k++)
+			idx[k] = -1;
+		busOf = new int[npvpq];
+		for (j = 0; j < npv; j++) {
+			idx[pv[j]] = j;
+			busOf[j] = pv[j];
+		}
+		for (j = 0; j < pq.length; j++) {
+			idx[pq[j]] = npv + j;
+			busOf[npv + j] = pq[j];
+		}
+
+		/* triplets, a 2 x 2 block for each element of Ybus[pvpq,pvpq] */
+		nt = 4 * (Yp[nb] + npvpq + npv);
+		ti = new int[nt];
+		tj = new int[nt];
+		tx = new double[nt];
+		diag = new int[npvpq];
+		Gkk = new double[npvpq];
+		Bkk = new double[npvpq];
+		t = 0;
+		for (a = 0; a < npvpq; a++) {
+			k = busOf[a];
+			diag[a] = -1;
+			for (p = Yp[k]; p <= Yp[k + 1]; p++) {
+				if (p == Yp[k + 1] && diag[a] >= 0)
+					break;
+				/* diagonal block last, with zero values, if missing */
+				j = (p < Yp[k + 1]) ? Yj[p] : k;
+				g = (p < Yp[k + 1]) ? Yx[2 * p] : 0;
+				h = (p < Yp[k + 1]) ? Yx[2 * p + 1] : 0;
+				b = idx[j];
+				if (b < 0)
+					continue;
+				if (j == k) {
+					diag[a] = t;
+					Gkk[a] = g;
+					Bkk[a] = h;
+				}
+				t = triplet(ti, tj, tx, t, 2 * a, 2 * b, g);
+				t = triplet(ti, tj, tx, t, 2 * a, 2 * b + 1, -h);
+				t = triplet(ti, tj, tx, t, 2 * a + 1, 2 * b, h);
+				t = triplet(ti, tj, tx, t, 2 * a + 1, 2 * b + 1, g);
+			}
+		}
+		/* Q column and voltage row of each PV bus */
+		for (a = 0; a < npv; a++) {
+			q = 2 * npvpq + a;
+			t = triplet(ti, tj, tx, t, 2 * a, q, 0);
+			t = triplet(ti, tj, tx, t, 2 * a + 1, q, 0);
+			t = triplet(ti, tj, tx, t, q, 2 * a, 0);
+			t = triplet(ti, tj, tx, t, q, 2 * a + 1, 0);
+		}
+		nt = t;
+
+		/* compress, rows appear in ascending order in each column */
+		count = new int[n];
+		for (t = 0; t < nt; t++)
+			count[tj[t]]++;
+		Jp = new int[n + 1];
+		for (c = 0; c < n; c++)
+			Jp[c + 1] = Jp[c] + count[c];
+		nz = Jp[n];
+		Ji = new int[nz];
+		Jx = new double[nz];
+		pos = new int[nt];
+		for (c = 0; c < n; c++)
+			count[c] = Jp[c];
+		for (t = 0; t < nt; t++) {
+			i = count[tj[t]]++;
+			Ji[i] = ti[t];
+			Jx[i] = tx[t];
+			pos[t] = i;
+		}
+
+		dre = new int[npvpq];
+		drf = new int[npvpq];
+		die = new int[npvpq];
+		dif = new int[npvpq];
+		for (a = 0; a < npvpq; a++) {
+			dre[a] = pos[diag[a]];
+			drf[a] = pos[diag[a] + 1];
+			die[a] = pos[diag[a] + 2];
+			dif[a] = pos[diag[a] + 3];
+		}
+		dqr = new int[npv];
+		dqi = new int[npv];
+		dve = new int[npv];
+		dvf = new int[npv];
+		t = nt - 4 * npv;
+		for (a = 0; a < npv; a++, t += 4) {
+			dqr[a] = pos[t];
+			dqi[a] = pos[t + 1];
+			dve[a] = pos[t + 2];
+			dvf[a] = pos[t + 3];
+		}
+
+		J = new Dcs();
+		J.m = n;
+		J.n = n;
+		J.nzmax = nz;
+		J.nz = -1;			// compressed-column
+		J.p = Jp;
+		J.i = Ji;
+		J.x = Jx;
+	}
+
+	/**
+	 * Refills the diagonal blocks and the entries of the PV buses for the
+	 * given bus voltages and power injections. Does not allocate.
+	 *
+	 * @param Vr real part of the bus voltages
+	 * @param Vi imaginary part of the bus voltages
+	 * @param P real power injection of each bus (p.u.)
+	 * @param Q reactive power injection of each bus (p.u.), the current
+	 * estimate for the PV buses
+	 */
+	public void update(double[] Vr, double[] Vi, double[] P, double[] Q) {
+		int k;
+		double e, f, m2, m4, dre_, drf_;
+		double[] Jx = J.x;
+
+		for (int a = 0; a < npvpq; a++) {
+			k = busOf[a];
+			e = Vr[k];
+			f = Vi[k];
+			m2 = e * e + f * f;
+			m4 = m2 * m2;
+
+			/* derivatives of the specified current, conj(S / V) */
+			dre_ = (P[k] * (f * f - e * e) - 2 * Q[k] * e * f) / m4;
+			drf_ = (Q[k] * (e * e - f * f) - 2 * P[k] * e * f) / m4;
+
+			Jx[dre[a]] = Gkk[a] - dre_;
+			Jx[drf[a]] = -Bkk[a] - drf_;
+			Jx[die[a]] = Bkk[a] - drf_;
+			Jx[dif[a]] = Gkk[a] + dre_;
+
+			if (a < npv) {
+				Jx[dqr[a]] = -f / m2;
+				Jx[dqi[a]] = e / m2;
+				Jx[dve[a]] = e;
+				Jx[dvf[a]] = f;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the Jacobian in CSparse compressed-column form. The
+	 * returned object is shared and is overwritten by each update.
+	 */
+	public Dcs getDcs() {
+		return J;
+	}
+
+	/**
+	 *
+	 * @return the dimension of the Jacobian.
+	 */
+	public int size() {
+		return n;
+	}
+
+	private static int triplet(int[] ti, int[] tj, double[] tx, int t, int i, int j, double x) {
+		ti[t] = i;
+		tj[t] = j;
+		tx[t] = x;
+		return t + 1;
+	}
+
+}
@@ -20,23 +20,17 @@ package edu.cornell.pserc.jpower.pf;
 
 import java.util.Map;
 
-import cern.colt.matrix.Norm;
 import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition;
-import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+import edu.cornell.pserc.jpower.jpc.Columns;
 
 import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
 
-import static edu.emory.mathcs.utils.Utils.dfunc;
-import static edu.emory.mathcs.utils.Utils.cfunc;
 import static edu.emory.mathcs.utils.Utils.icat;
-import static edu.emory.mathcs.utils.Utils.polar;
-import static edu.emory.mathcs.utils.Utils.complex;
 
 /**
  * Solves the power flow using a fast decoupled method.
@@ -76,15 +70,44 @@ public class Djp_fdpf {
 	 */
 	public static Object[] fdpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus, DComplexMatrix1D V0,
 			DoubleMatrix2D Bp, DoubleMatrix2D Bpp, int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
+		SparseDoubleLUDecomposition[] lu;
+
+		/* reduce and factor B matrices */
+		lu = FDPFFactors.factor(Bp, Bpp, pv, pq);
+
+		return fdpf(Ybus, Sbus, V0, lu[0], lu[1], ref, pv, pq, jpopt);
+	}
+
+	/**
+	 * Same as above, except that the LU factors of the reduced FDPF
+	 * matrices, B'[pvpq,pvpq] and B''[pq,pq], are given instead of the
+	 * full matrices. The factors are not modified, so they may be reused
+	 * for repeated solves of the same network.
+	 *
+	 * @see FDPFFactors
+	 * @param Ybus
+	 * @param Sbus
+	 * @param V0
+	 * @param luP LU factors of the reduced B prime
+	 * @param luQ LU factors of the reduced B double prime
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param jpopt
+	 * @return
+	 */
+	public static Object[] fdpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus, DComplexMatrix1D V0,
+			SparseDoubleLUDecomposition luP, SparseDoubleLUDecomposition luQ,
+			int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
 		double tol, normP, normQ;
-		int i, max_it, alg, verbose;
+		int i, j, nb, max_it, alg, verbose;
 		int[] pvpq;
+		double[] Va, Vm, Pbus, Qbus, dP, dQ;
 		boolean converged;
-		DComplexMatrix1D V, Va, Vm, mis;
+		DComplexMatrix1D V;
 		DoubleMatrix1D P, Q;
-		SparseCCDoubleMatrix2D CCBp, CCBpp;
-		SparseDoubleLUDecomposition luP, luQ;
-		DComplexMatrix1D dVa, dVm;
+		VoltageState x;
+		Mismatch mis;
 
 		/* options */
 		tol	= jpopt.get("PF_TOL");
@@ -95,19 +118,28 @@ public class Djp_fdpf {
 		pvpq = icat(pv, pq);
 		converged = false;
 		i = 0;
-		V = V0.copy();
-		Va = V.copy().assign(cfunc.arg);
-		Vm = V.copy().assign(cfunc.abs);
+		x = new VoltageState(V0);
+		Va = x.Va;
+		Vm = x.Vm;
+		nb = x.size();
+		Pbus = new double[nb];
+		Qbus = new double[nb];
+		VoltageState.split(Sbus, Pbus, Qbus);
+
+		/* mismatch buffers, shared with the right hand sides of the solves */
+		dP = new double[pvpq.length];
+		dQ = new double[pq.length];
+		P = Columns.make(dP);
+		Q = Columns.make(dQ);
+		mis = new Mismatch(Ybus);
+		mis.setRows(pvpq, pq, 0);
 
 		/* evaluate initial mismatch */
-		mis = Ybus.zMult(V, null).assign(cfunc.conj);
-		mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus).assign(Vm, cfunc.div);
-		P = mis.viewSelection(pvpq).getRealPart();
-		Q = mis.viewSelection(pq).getImaginaryPart();
+		mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, null);
 
 		/* check tolerance */
-		normP = DenseDoubleAlgebra.DEFAULT.norm(P, Norm.Infinity);
-		normQ = DenseDoubleAlgebra.DEFAULT.norm(Q, Norm.Infinity);
+		normP = mis.normP();
+		normQ = mis.normQ();
 
 		if (verbose > 0) {
 			alg = jpopt.get("PF_ALG").intValue();
@@ -125,17 +157,6 @@ public class Djp_fdpf {
 				System.out.printf("\nConverged!\n");
 		}
 
-		/* reduce B matrices */
-		// column-compressed format for factorisation
-		CCBp = new SparseCCDoubleMatrix2D(pvpq.length, pvpq.length);
-		CCBp.assign(Bp.viewSelection(pvpq, pvpq));
-		CCBpp = new SparseCCDoubleMatrix2D(pq.length, pq.length);
-		CCBpp.assign(Bpp.viewSelection(pq, pq));
-
-		/* factor B matrices */
-		luP = SparseDoubleAlgebra.DEFAULT.lu(CCBp, 0);
-		luQ = SparseDoubleAlgebra.DEFAULT.lu(CCBpp, 0);
-
 		/* do P and Q iterations */
 		while ((!converged) & (i < max_it)) {
 			/* update iteration counter */
@@ -143,21 +164,18 @@ public class Djp_fdpf {
 
 			/* -----  do P iteration, update Va  ----- */
 			luP.solve(P);
-			dVa = complex(P.assign(dfunc.neg), null);
 
 			/* update voltage */
-			Va.viewSelection(pvpq).assign(dVa, cfunc.plus);
-			V = polar(Vm.getRealPart(), Va.getRealPart());
+			for (j = 0; j < pvpq.length; j++)
+				Va[pvpq[j]] -= P.getQuick(j);
+			x.toRectangular();
 
 			/* evalute mismatch */
-			mis = Ybus.zMult(V, null).assign(cfunc.conj);
-			mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus).assign(Vm, cfunc.div);
-			P = mis.viewSelection(pvpq).getRealPart();
-			Q = mis.viewSelection(pq).getImaginaryPart();
+			mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, null);
 
 			/* check tolerance */
-			normP = DenseDoubleAlgebra.DEFAULT.norm(P, Norm.Infinity);
-			normQ = DenseDoubleAlgebra.DEFAULT.norm(Q, Norm.Infinity);
+			normP = mis.normP();
+			normQ = mis.normQ();
 			if (verbose > 1)
 				System.out.printf("\n  P  %3d   %10.3e   %10.3e", i, normP, normQ);
 			if ((normP < tol) & (normQ < tol)) {
@@ -169,21 +187,18 @@ public class Djp_fdpf {
 
 			/* -----  do Q iteration, update Vm  ----- */
 			luQ.solve(Q);
-			dVm = complex(Q.assign(dfunc.neg), null);
 
 			/* update voltage */
-			Vm.viewSelection(pq).assign(dVm, cfunc.plus);
-			V = polar(Vm.getRealPart(), Va.getRealPart());
+			for (j = 0; j < pq.length; j++)
+				Vm[pq[j]] -= Q.getQuick(j);
+			x.toRectangular();
 
 			/* evalute mismatch */
-			mis = Ybus.zMult(V, null).assign(cfunc.conj);
-			mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus).assign(Vm, cfunc.div);
-			P = mis.viewSelection(pvpq).getRealPart();
-			Q = mis.viewSelection(pq).getImaginaryPart();
+			mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, null);
 
 			/* check tolerance */
-			normP = DenseDoubleAlgebra.DEFAULT.norm(P, Norm.Infinity);
-			normQ = DenseDoubleAlgebra.DEFAULT.norm(Q, Norm.Infinity);
+			normP = mis.normP();
+			normQ = mis.normQ();
 			if (verbose > 1)
 				System.out.printf("\n  Q  %3d   %10.3e   %10.3e", i, normP, normQ);
 			if (normP < tol && normQ < tol) {
@@ -198,6 +213,160 @@ public class Djp_fdpf {
 			if (!converged)
 				System.out.printf("\nFast-decoupled power flow did not converge in %d iterations.\n", i);
 
+		V = x.toComplex();
+
+		return new Object[] {V, converged, i};
+	}
+
+	/**
+	 * Solves the power flow with the fast decoupled method, enforcing the
+	 * generator reactive power limits in QLIM by switching PV buses to PQ,
+	 * and back, between iterations (ENFORCE_Q_LIMS = 3). The factors of
+	 * the reduced B prime are given and do not change, since the angles
+	 * of all PV and PQ buses are always unknowns. B double prime is
+	 * reduced to the PQ buses and the PV buses at a limit and is only
+	 * refactored when a bus is switched, after which the solve continues
+	 * from the current voltages. Sbus is not modified. The final state of
+	 * each PV bus is left in QLIM.
+	 *
+	 * @param Ybus
+	 * @param Sbus
+	 * @param V0
+	 * @param luP LU factors of the reduced B prime
+	 * @param Bpp B double prime
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param jpopt
+	 * @param qlim limits of the PV buses
+	 * @return
+	 */
+	public static Object[] fdpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus, DComplexMatrix1D V0,
+			SparseDoubleLUDecomposition luP, DoubleMatrix2D Bpp,
+			int ref, int[] pv, int[] pq, Map<String, Double> jpopt, QLimits qlim) {
+		double tol, normP, normQ;
+		int i, j, n, nb, max_it, alg, verbose, nswitch;
+		int[] pvpq, cpq;
+		double[] Va, Vm, Pbus, Qbus, dP, dQ, Qinj;
+		boolean converged;
+		DComplexMatrix1D V;
+		DoubleMatrix1D P, Q;
+		SparseDoubleLUDecomposition luQ;
+		VoltageState x;
+		Mismatch mis;
+
+		/* options */
+		tol	= jpopt.get("PF_TOL");
+		max_it	= jpopt.get("PF_MAX_IT").intValue();
+		verbose	= jpopt.get("VERBOSE").intValue();
+
+		/* initialize */
+		pvpq = icat(pv, pq);
+		cpq = pq;
+		luQ = FDPFFactors.factor(Bpp, cpq);
+		converged = false;
+		i = 0;
+		x = new VoltageState(V0);
+		Va = x.Va;
+		Vm = x.Vm;
+		nb = x.size();
+		Pbus = new double[nb];
+		Qbus = new double[nb];
+		VoltageState.split(Sbus, Pbus, Qbus);
+		dP = new double[pvpq.length];
+		dQ = new double[cpq.length];
+		P = Columns.make(dP);
+		Q = Columns.make(dQ);
+		Qinj = new double[nb];
+		qlim.start(Vm);
+
+		/* evaluate initial mismatch, with Q injections of the PV buses */
+		mis = new Mismatch(Ybus);
+		mis.setRows(pvpq, cpq, 0);
+		mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, Qinj);
+		normP = mis.normP();
+		normQ = mis.normQ();
+
+		if (verbose > 0) {
+			alg = jpopt.get("PF_ALG").intValue();
+			System.out.printf("(fast-decoupled, %s, PV-PQ switching)\n", (alg == 2) ? "XB" : "BX");
+		}
+		if (verbose > 1) {
+			System.out.printf("\niteration     max mismatch (p.u.)  ");
+			System.out.printf("\ntype   #        P            Q     ");
+			System.out.printf("\n---- ----  -----------  -----------");
+			System.out.printf("\n  -  %3d   %10.3e   %10.3e", i, normP, normQ);
+		}
+
+		while (true) {
+			/* switch bus types once close to the solution */
+			nswitch = 0;
+			if (normP < QLimits.SWITCH_TOL && normQ < QLimits.SWITCH_TOL)
+				nswitch = qlim.update(Qinj, Vm, Qbus);
+			if (nswitch > 0) {
+				n = pq.length;
+				for (j = 0; j < pv.length; j++)
+					if (qlim.state(j) != 0)
+						n++;
+				cpq = new int[n];
+				System.arraycopy(pq, 0, cpq, 0, pq.length);
+				n = pq.length;
+				for (j = 0; j < pv.length; j++)
+					if (qlim.state(j) != 0)
+						cpq[n++] = pv[j];
+				luQ = FDPFFactors.factor(Bpp, cpq);
+				dQ = new double[cpq.length];
+				Q = Columns.make(dQ);
+				mis.setRows(pvpq, cpq, 0);
+				x.toRectangular();
+				mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, Qinj);
+				normP = mis.normP();
+				normQ = mis.normQ();
+				if (verbose > 1)
+					System.out.printf("\n  %d bus types switched  %10.3e   %10.3e", nswitch, normP, normQ);
+			} else if (normP < tol && normQ < tol) {
+				converged = true;
+				if (verbose > 0)
+					System.out.printf("\nFast-decoupled power flow converged in %d iterations.\n", i);
+				break;
+			}
+			if (i >= max_it)
+				break;
+
+			/* update iteration counter */
+			i += 1;
+
+			/* -----  do P iteration, update Va  ----- */
+			luP.solve(P);
+			for (j = 0; j < pvpq.length; j++)
+				Va[pvpq[j]] -= P.getQuick(j);
+			x.toRectangular();
+			mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, Qinj);
+			normP = mis.normP();
+			normQ = mis.normQ();
+			if (verbose > 1)
+				System.out.printf("\n  P  %3d   %10.3e   %10.3e", i, normP, normQ);
+			if (normP < tol && normQ < tol)
+				continue;
+
+			/* -----  do Q iteration, update Vm  ----- */
+			luQ.solve(Q);
+			for (j = 0; j < cpq.length; j++)
+				Vm[cpq[j]] -= Q.getQuick(j);
+			x.toRectangular();
+			mis.evaluate(x.Vr, x.Vi, Vm, Pbus, Qbus, dP, dQ, Qinj);
+			normP = mis.normP();
+			normQ = mis.normQ();
+			if (verbose > 1)
+				System.out.printf("\n  Q  %3d   %10.3e   %10.3e", i, normP, normQ);
+		}
+
+		if (verbose > 0)
+			if (!converged)
+				System.out.printf("\nFast-decoupled power flow did not converge in %d iterations.\n", i);
+
+		V = x.toComplex();
+
 		return new Object[] {V, converged, i};
 	}
 
@@ -20,18 +20,11 @@ package edu.cornell.pserc.jpower.pf;
 
 import java.util.Map;
 
-import cern.colt.matrix.Norm;
 import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 
 import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
 
-import static edu.emory.mathcs.utils.Utils.cfunc;
-import static edu.emory.mathcs.utils.Utils.icat;
-
 /**
  * Solves the power flow using a Gauss-Seidel method.
  *
@@ -56,7 +49,11 @@ public class Djp_gausspf {
 	 * output options (see MPOPTION for details). Uses default options
 	 * if this parameter is not given. Returns the final complex voltages,
 	 * a flag which indicates whether it converged or not, and the number
-	 * of iterations performed.
+	 * of iterations performed. V0 and Sbus are not modified.
+	 *
+	 * The sweeps are done by GaussSeidel, directly on the compressed rows
+	 * of Ybus. PF_GS_OMEGA sets the relaxation factor and PF_GS_ORDER
+	 * selects the natural or the parallel red-black ordering of the buses.
 	 *
 	 * @param Ybus
 	 * @param Sbus
@@ -69,94 +66,47 @@ public class Djp_gausspf {
 	 */
 	public static Object[] gausspf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
 			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
-		double tol, normF;
-		int i, max_it, verbose, npv;
-		int[] pvpq;
+		double tol;
+		int i, nb, max_it, verbose;
+		double[] P, Q;
 		boolean converged;
-		DComplexMatrix1D V, /*Va, */Vm, mis, dVpq, dVpv, absV;
-		DoubleMatrix1D F;
-
+		DComplexMatrix1D V;
+		VoltageState x;
+		GaussSeidel gs;
 
 		/* options */
 		tol	= jpopt.get("PF_TOL");
-		max_it	= jpopt.get("PF_MAX_IT").intValue();
+		max_it	= jpopt.get("PF_MAX_IT_GS").intValue();
 		verbose	= jpopt.get("VERBOSE").intValue();
 
-		/* initialize */
-		pvpq = icat(pv, pq);
-		converged = false;
-		i = 0;
-		V = V0;
-		//Va = V.copy().assign(cfunc.arg);
-		Vm = V.copy().assign(cfunc.abs);
+		/* split voltages and injections into real and imaginary parts */
+		x = new VoltageState(V0);
+		nb = x.size();
+		P = new double[nb];
+		Q = new double[nb];
+		VoltageState.split(Sbus, P, Q);
 
-		/* set up indexing for updating V */
-		npv = pv.length;
+		gs = new GaussSeidel(Ybus, ref, pv, pq);
+		gs.setRelaxation(jpopt.get("PF_GS_OMEGA"));
+		gs.setOrdering(jpopt.get("PF_GS_ORDER").intValue());
 
-		/* evaluate F(x0) */
-		mis = Ybus.zMult(V, null).assign(cfunc.conj);
-		mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus);
-		F = DoubleFactory1D.sparse.make(new DoubleMatrix1D[] {
-				mis.viewSelection(pvpq).getRealPart(),
-				mis.viewSelection(pq).getImaginaryPart() });
-
-		/* check tolerance */
-		normF = DenseDoubleAlgebra.DEFAULT.norm(F, Norm.Infinity);
+		/* do Gauss-Seidel iterations */
 		if (verbose > 0)
 			System.out.printf("(Gauss-Seidel)\n");
-		if (verbose > 1) {
-			System.out.printf("\n it    max P & Q mismatch (p.u.)");
-			System.out.printf("\n----  ---------------------------");
-			System.out.printf("\n%3d        %10.3e", i, normF);
-		}
-		if (normF < tol) {
-			converged = true;
-			if (verbose > 1)
-				System.out.printf("\nConverged!\n");
-		}
-
-		/* do Gauss-Seidel iterations */
-		while (!converged && i < max_it) {
-			/* update iteration counter */
-			i += 1;
-
-			/* update voltage at PQ buses */
-			dVpq = Sbus.viewSelection(pq).copy().assign(V.viewSelection(pq), cfunc.div).assign(cfunc.conj);
-			dVpq.assign(Ybus.viewSelection(pq, null).zMult(V, null), cfunc.minus);
-			for (int k : pq)
-				V.set(k, cfunc.plus.apply(V.get(k), cfunc.div.apply(dVpq.get(k), Ybus.get(k, k))));
-
-			/* update voltage at PV buses */
-			if (npv > 0) {
-				Sbus.viewSelection(pv).assignImaginary( Ybus.viewSelection(pv, null).zMult(V, null).assign(cfunc.conj).assign(V.viewSelection(pv), cfunc.mult).getImaginaryPart() );
-				dVpv = Sbus.viewSelection(pv).copy().assign(V.viewSelection(pv), cfunc.div).assign(cfunc.conj);
-				dVpv.assign(Ybus.viewSelection(pv, null).zMult(V, null), cfunc.minus);
-				for (int k : pv)
-					V.set(k, cfunc.plus.apply(V.get(k), cfunc.div.apply(dVpv.get(k), Ybus.get(k, k))));
-				absV = V.viewSelection(pv).copy().assign(cfunc.abs);
-				absV.assign(V.viewSelection(pv), cfunc.swapArgs(cfunc.div));
-				V.viewSelection(pv).assign(Vm).assign(absV, cfunc.mult);
-			}
-
-			/* evalute F(x) */
-			mis = Ybus.zMult(V, null).assign(cfunc.conj).assign(V, cfunc.mult).assign(Sbus, cfunc.minus);
-			F = DoubleFactory1D.sparse.make(new DoubleMatrix1D[] {
-					mis.viewSelection(pvpq).getRealPart(),
-					mis.viewSelection(pq).getImaginaryPart() });
-
-			/* check for convergence */
-			normF = DenseDoubleAlgebra.DEFAULT.norm(F, Norm.Infinity);
-			if (verbose > 1)
-				System.out.printf("\n%3d        %10.3e", i, normF);
-			if (normF < tol) {
-				converged = true;
-				if (verbose > 0)
-					System.out.printf("\nGauss-Seidel power flow converged in %d iterations.\n", i);
+		i = gs.solve(x.Vr, x.Vi, P, Q, tol, max_it, verbose);
+		converged = i >= 0;
+		if (!converged)
+			i = -1 - i;
+
+		if (verbose > 0) {
+			if (converged) {
+				System.out.printf("\nGauss-Seidel power flow converged in %d iterations.\n", i);
+			} else {
+				System.out.printf("\nGauss-Seidel power did not converge in %d iterations.\n", i);
 			}
 		}
-		if (verbose > 0)
-			if (!converged)
-				System.out.printf("\nGauss-Seidel power did not converge in %d iterations.\n", i);
+
+		V = x.toComplex();
 
 		return new Object[] {V, converged, i};
 	}
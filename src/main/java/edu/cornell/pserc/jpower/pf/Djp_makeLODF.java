@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+import static edu.emory.mathcs.utils.Utils.irange;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Builds the line outage distribution factor matrix.
+ *
+ * @author Ray Zimmerman
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_makeLODF {
+
+	/**
+	 * Returns the DC line outage distribution factor matrix for all
+	 * branches.
+	 *
+	 * @param branch
+	 * @param PTDF full PTDF matrix, as returned by makePTDF
+	 * @return
+	 */
+	public static DoubleMatrix2D makeLODF(Branch branch, DoubleMatrix2D PTDF) {
+		return makeLODF(branch, PTDF, null);
+	}
+
+	/**
+	 * Returns the DC line outage distribution factor matrix for a given
+	 * PTDF. The matrix is nbr x nout, where nout is the number of outaged
+	 * branches, and element (i, k) is the change in flow on branch i (as
+	 * a fraction of the initial flow in branch k) for an outage of branch
+	 * k. The diagonal elements are -1. Columns of branches whose outage
+	 * splits the network are NaN, apart from the diagonal. Rows are
+	 * computed in blocks on the Colt thread pool.
+	 *
+	 * @param branch
+	 * @param PTDF PTDF matrix for all branches and buses
+	 * @param outages indexes of the outaged branches, null for all
+	 * @return
+	 */
+	public static DoubleMatrix2D makeLODF(Branch branch, DoubleMatrix2D PTDF, int[] outages) {
+		final int nl, nc;
+		int nthreads, k;
+		final int[] cols, f, t;
+		final double[] den, L;
+		final DoubleMatrix2D H;
+
+		nl = branch.size();
+		if (PTDF.rows() != nl)
+			throw new IllegalArgumentException("makeLODF: PTDF must have a row for every branch");
+
+		H = PTDF;
+		cols = (outages != null) ? outages : irange(nl);
+		nc = cols.length;
+		f = Columns.elements(branch.f_bus);
+		t = Columns.elements(branch.t_bus);
+
+		/* 1 - (PTDF of each outaged branch for a transfer between its own ends) */
+		den = new double[nc];
+		for (int c = 0; c < nc; c++) {
+			int l = cols[c];
+			den[c] = 1 - (H.getQuick(l, f[l]) - H.getQuick(l, t[l]));
+		}
+
+		L = new double[nl * nc];
+		nthreads = ConcurrencyUtils.getNumberOfThreads();
+		if (nthreads > 1 && nl * nc >= ConcurrencyUtils.getThreadsBeginN_2D()) {
+			Future<?>[] futures = new Future<?>[nthreads];
+			k = nl / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int first = j * k;
+				final int last = (j == nthreads - 1) ? nl : first + k;
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						fill(first, last, H, cols, f, t, den, L);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+		} else {
+			fill(0, nl, H, cols, f, t, den, L);
+		}
+
+		return new DenseDoubleMatrix2D(nl, nc, L, 0, 0, nc, 1, false);
+	}
+
+	/**
+	 * Computes rows [first, last) of the LODF matrix.
+	 */
+	private static void fill(int first, int last, DoubleMatrix2D H, int[] cols,
+			int[] f, int[] t, double[] den, double[] L) {
+		int nc = cols.length, l;
+
+		for (int i = first; i < last; i++) {
+			for (int c = 0; c < nc; c++) {
+				l = cols[c];
+				if (i == l) {
+					L[i * nc + c] = -1;
+				} else if (Math.abs(den[c]) < 1e-10) {
+					L[i * nc + c] = Double.NaN;
+				} else {
+					L[i * nc + c] = (H.getQuick(i, f[l]) - H.getQuick(i, t[l])) / den[c];
+				}
+			}
+		}
+	}
+
+}
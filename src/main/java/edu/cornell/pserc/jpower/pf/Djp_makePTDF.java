@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
+
+import static edu.emory.mathcs.utils.Utils.irange;
+
+import static edu.cornell.pserc.jpower.jpc.JPC.REF;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Builds the DC PTDF matrix for a given choice of slack.
+ *
+ * @author Ray Zimmerman
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_makePTDF {
+
+	/**
+	 * Returns the DC PTDF matrix for all branches and buses, with the
+	 * reference bus as slack.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @return
+	 */
+	public static DoubleMatrix2D makePTDF(double baseMVA, Bus bus, Branch branch) {
+		return makePTDF(baseMVA, bus, branch, refbus(bus));
+	}
+
+	/**
+	 * Returns the DC PTDF matrix for all branches and buses.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @param slack index of the slack bus
+	 * @return
+	 */
+	public static DoubleMatrix2D makePTDF(double baseMVA, Bus bus, Branch branch, int slack) {
+		return makePTDF(baseMVA, bus, branch, slack, null, null, 0);
+	}
+
+	/**
+	 * Returns the DC PTDF matrix for a given choice of slack. The matrix
+	 * is nbr x nbus, where nbr is the number of monitored branches and nbus
+	 * the number of injection buses, and element (i, j) is the change in
+	 * flow at the "from" end of monitored branch i for a unit injection at
+	 * injection bus j, withdrawn at the slack bus. Assumes that the DC
+	 * matrices are computed from internally indexed data.
+	 *
+	 * Reduced Bbus is factorized once. Depending on which is smaller, the
+	 * rows of the matrix are computed by solving for the monitored branches
+	 * or its columns by solving for the injection buses, in blocks on the
+	 * Colt thread pool. If tol is positive the matrix is computed by rows
+	 * and each row is stored in compressed-row form as soon as it is
+	 * solved, without the elements smaller than tol in absolute value, so
+	 * the dense matrix is never formed.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @param slack index of the slack bus
+	 * @param branches indexes of the monitored branches, null for all
+	 * @param buses indexes of the injection buses, null for all
+	 * @param tol drop tolerance, 0 for a dense matrix
+	 * @return
+	 */
+	public static DoubleMatrix2D makePTDF(double baseMVA, Bus bus, Branch branch, int slack,
+			int[] branches, int[] buses, double tol) {
+		final int nb, nl, nr, nc, n;
+		int nthreads, k;
+		final int[] rows, cols, pos, Fp, Fj;
+		final double[] H, Fx;
+		final int[][] Hj;
+		final double[][] Hx;
+		final double drop;
+		final boolean byRow;
+		int[] noslack;
+		AbstractMatrix[] Bdc;
+		SparseRCDoubleMatrix2D Bf;
+		SparseCCDoubleMatrix2D Br;
+		final Dcs A;
+		final SparseLU lu;
+
+		nb = bus.size();
+		nl = branch.size();
+		rows = (branches != null) ? branches : irange(nl);
+		cols = (buses != null) ? buses : irange(nb);
+		nr = rows.length;
+		nc = cols.length;
+
+		Bdc = Djp_makeBdc.makeBdc(baseMVA, bus, branch);
+		if (Bdc[1] instanceof SparseRCDoubleMatrix2D) {
+			Bf = (SparseRCDoubleMatrix2D) Bdc[1];
+		} else {
+			Bf = new SparseRCDoubleMatrix2D(nl, nb);
+			Bf.assign((DoubleMatrix2D) Bdc[1]);
+		}
+		Fp = Bf.getRowPointers();
+		Fj = Bf.getColumnIndexes();
+		Fx = Bf.getValues();
+
+		/* position of each bus in reduced Bbus, -1 for the slack */
+		noslack = new int[nb - 1];
+		pos = new int[nb];
+		for (int i = 0, j = 0; i < nb; i++) {
+			if (i == slack) {
+				pos[i] = -1;
+			} else {
+				noslack[j] = i;
+				pos[i] = j++;
+			}
+		}
+
+		/* factor reduced Bbus */
+		Br = new SparseCCDoubleMatrix2D(nb - 1, nb - 1);
+		Br.assign(((DoubleMatrix2D) Bdc[0]).viewSelection(noslack, noslack));
+		A = Br.elements();
+		lu = new SparseLU(A);
+		if (!lu.factor(A))
+			throw new IllegalArgumentException("makePTDF: B matrix is singular, network is not connected");
+
+		/* Bbus is symmetric, so a row of PTDF = Bf * inv(Bbus) solves with the row of Bf */
+		drop = tol;
+		byRow = tol > 0 || nr <= nc;
+		n = byRow ? nr : nc;
+		if (tol > 0) {
+			H = null;
+			Hj = new int[nr][];
+			Hx = new double[nr][];
+		} else {
+			H = new double[nr * nc];
+			Hj = null;
+			Hx = null;
+		}
+
+		nthreads = ConcurrencyUtils.getNumberOfThreads();
+		if (nthreads > 1 && n >= nthreads) {
+			Future<?>[] futures = new Future<?>[nthreads];
+			k = n / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int first = j * k;
+				final int last = (j == nthreads - 1) ? n : first + k;
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						solve(first, last, byRow, lu, pos, rows, cols, Fp, Fj, Fx, H, Hj, Hx, drop);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+		} else {
+			solve(0, n, byRow, lu, pos, rows, cols, Fp, Fj, Fx, H, Hj, Hx, drop);
+		}
+
+		if (tol > 0)
+			return compact(nr, nc, Hj, Hx);
+		return new DenseDoubleMatrix2D(nr, nc, H, 0, 0, nc, 1, false);
+	}
+
+	/**
+	 * Computes the rows (byRow) or columns [first, last) of the PTDF matrix,
+	 * into H or, row by row, into Hj and Hx.
+	 */
+	private static void solve(int first, int last, boolean byRow, SparseLU lu, int[] pos,
+			int[] rows, int[] cols, int[] Fp, int[] Fj, double[] Fx, double[] H,
+			int[][] Hj, double[][] Hx, double tol) {
+		int n, nc, j, nz;
+		double s;
+		double[] x, work, h;
+
+		n = pos.length - 1;
+		nc = cols.length;
+		x = new double[n];
+		work = new double[n];
+		h = new double[nc];
+
+		for (int k = first; k < last; k++) {
+			for (int i = 0; i < n; i++)
+				x[i] = 0;
+			if (byRow) {
+				/* x = inv(Bbus) * Bf(l, :)' */
+				for (int p = Fp[rows[k]]; p < Fp[rows[k] + 1]; p++) {
+					j = pos[Fj[p]];
+					if (j >= 0)
+						x[j] += Fx[p];
+				}
+				lu.solve(x, work);
+				if (H != null) {
+					for (int c = 0; c < nc; c++) {
+						j = pos[cols[c]];
+						H[k * nc + c] = (j >= 0) ? x[j] : 0;
+					}
+					continue;
+				}
+				nz = 0;
+				for (int c = 0; c < nc; c++) {
+					j = pos[cols[c]];
+					h[c] = (j >= 0) ? x[j] : 0;
+					if (Math.abs(h[c]) >= tol)
+						nz++;
+				}
+				Hj[k] = new int[nz];
+				Hx[k] = new double[nz];
+				nz = 0;
+				for (int c = 0; c < nc; c++) {
+					if (Math.abs(h[c]) >= tol) {
+						Hj[k][nz] = c;
+						Hx[k][nz++] = h[c];
+					}
+				}
+			} else {
+				/* x = inv(Bbus) * e_j, H(:, k) = Bf * x */
+				j = pos[cols[k]];
+				if (j < 0)
+					continue;
+				x[j] = 1;
+				lu.solve(x, work);
+				for (int r = 0; r < rows.length; r++) {
+					s = 0;
+					for (int p = Fp[rows[r]]; p < Fp[rows[r] + 1]; p++) {
+						j = pos[Fj[p]];
+						if (j >= 0)
+							s += Fx[p] * x[j];
+					}
+					H[r * nc + k] = s;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Joins the compressed rows.
+	 */
+	private static DoubleMatrix2D compact(int nr, int nc, int[][] Hj, double[][] Hx) {
+		int[] Hp, Cj;
+		double[] Cx;
+
+		Hp = new int[nr + 1];
+		for (int r = 0; r < nr; r++)
+			Hp[r + 1] = Hp[r] + Hj[r].length;
+		Cj = new int[Hp[nr]];
+		Cx = new double[Hp[nr]];
+		for (int r = 0; r < nr; r++) {
+			System.arraycopy(Hj[r], 0, Cj, Hp[r], Hj[r].length);
+			System.arraycopy(Hx[r], 0, Cx, Hp[r], Hx[r].length);
+			Hj[r] = null;
+			Hx[r] = null;
+		}
+
+		return new SparseRCDoubleMatrix2D(nr, nc, Hp, Cj, Cx);
+	}
+
+	/**
+	 *
+	 * @param bus
+	 * @return index of the first reference bus.
+	 */
+	private static int refbus(Bus bus) {
+		int[] type = Columns.elements(bus.bus_type);
+
+		for (int i = 0; i < type.length; i++)
+			if (type[i] == REF)
+				return i;
+		throw new IllegalArgumentException("makePTDF: no reference bus");
+	}
+
+}
@@ -18,35 +18,31 @@
 
 package edu.cornell.pserc.jpower.pf;
 
-import cern.colt.matrix.tdcomplex.DComplexFactory2D;
-import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
 import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tint.IntFactory1D;
 
 import edu.cornell.pserc.jpower.jpc.Branch;
 import edu.cornell.pserc.jpower.jpc.Bus;
-
-import static edu.emory.mathcs.utils.Utils.ifunc;
-import static edu.emory.mathcs.utils.Utils.dfunc;
-import static edu.emory.mathcs.utils.Utils.cfunc;
-import static edu.emory.mathcs.utils.Utils.any;
-import static edu.emory.mathcs.utils.Utils.irange;
-import static edu.emory.mathcs.utils.Utils.dblm;
-import static edu.emory.mathcs.utils.Utils.complex;
-import static edu.emory.mathcs.utils.Utils.nonzero;
-import static edu.emory.mathcs.utils.Utils.polar;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
 
 /**
  * Builds the bus admittance matrix and branch admittance matrices.
  *
+ * The matrices are assembled directly in compressed-row form from the
+ * branch and shunt admittances, without forming the connection matrices.
+ * Each row of Yf and Yt has entries for the "from" and "to" buses of the
+ * branch and entries of parallel branches are summed into Ybus, so the
+ * sparsity pattern depends only on the connectivity of the network.
+ * Out-of-service branches keep explicit zeros in all three matrices.
+ *
  * @author Ray Zimmerman
  * @author Richard Lincoln
  *
  */
-@SuppressWarnings("static-access")
 public class Djp_makeYbus {
 
 	/**
@@ -63,23 +59,40 @@ public class Djp_makeYbus {
 	 * @return
 	 */
 	public static DComplexMatrix2D[] makeYbus(double baseMVA, Bus bus,
-			Branch branch) {
-		int nb, nl;
-		int[] i, f, t, il;
-		DoubleMatrix1D dstat, Bc, dtap;
-		DComplexMatrix1D cstat, Ys, tap, conj_tap, Ytt, Yff, Yft, Ytf, Ysh;
-		SparseRCDComplexMatrix2D Cf, Ct, YYff, YYft, YYtf, YYtt, Yf, Yt;
-		DComplexMatrix2D diagYsh, Ybr, Ybus;
+			final Branch branch) {
+		final int nb, nl;
+		int nthreads, k;
+		int[] bus_i;
+		final int[] f, t, Fp, Fj, Tj;
+		double[] Gs, Bs;
+		final double[] Ybr, Fx, Tx;
+		SparseRCDComplexMatrix2D Yf, Yt, Ybus;
 
 		/* constants */
 		nb = bus.size();		// number of buses
 		nl = branch.size();		// number of lines
 
 		/* check that bus numbers are equal to indices to bus (one set of bus numbers) */
-		if ( any( bus.bus_i.copy().assign(IntFactory1D.dense.make(irange(nb)),
-				ifunc.equals).assign(ifunc.equals(0))) )
-			System.err.println("makeYbus: buses must appear in order by bus number");
-			// TODO: throw non consecutive bus numbers exception.
+		bus_i = Columns.elements(bus.bus_i);
+		for (k = 0; k < nb; k++) {
+			if (bus_i[k] != k) {
+				System.err.println("makeYbus: buses must appear in order by bus number");
+				// TODO: throw non consecutive bus numbers exception.
+				break;
+			}
+		}
+
+		f = Columns.elements(branch.f_bus);		// list of "from" buses
+		t = Columns.elements(branch.t_bus);		// list of "to" buses
+
+		/* each row of Yf and Yt has the "from" and "to" bus of the branch */
+		Fp = new int[nl + 1];
+		for (k = 0; k < nl; k++)
+			Fp[k + 1] = Fp[k] + ((f[k] == t[k]) ? 1 : 2);
+		Fj = new int[Fp[nl]];
+		Tj = new int[Fp[nl]];
+		Fx = new double[2 * Fp[nl]];
+		Tx = new double[2 * Fp[nl]];
 
 		/* for each branch, compute the elements of the branch admittance matrix where
 		 *
@@ -87,75 +100,227 @@ public class Djp_makeYbus {
 		 *		|    | = |          | * |    |
 		 *		| It |   | Ytf  Ytt |   | Vt |
 		 */
-		// ones at in-service branches
-		dstat = dblm(branch.br_status);
-		cstat = complex(dstat, null);
-		// series admittance
-		Ys = cstat.assign( complex(branch.br_r, branch.br_x), cfunc.div);
-		// line charging susceptance
-		Bc = dstat.assign(branch.br_b, dfunc.mult);
-		// default tap ratio = 1
-		dtap = DoubleFactory1D.dense.make(nl, 1);
-		// indices of non-zero tap ratios
-		i = nonzero(branch.tap);
-		// assign non-zero tap ratios
-		dtap.viewSelection(i).assign(branch.tap.viewSelection(i));
-		// add phase shifters
-		tap = polar(dtap, branch.shift, false);
-		conj_tap = tap.copy().assign(cfunc.conj);
-
-		Ytt = Ys.copy().assign(complex(null, Bc.assign(dfunc.div(2))), cfunc.plus);
-		Yff = Ytt.copy().assign(tap.copy().assign(conj_tap, cfunc.mult), cfunc.div);
-		Ys.assign(cfunc.neg);
-		Yft = Ys.copy().assign(conj_tap, cfunc.div);
-		Ytf = Ys.assign(tap, cfunc.div);
+		Ybr = new double[8 * nl];
+		nthreads = ConcurrencyUtils.getNumberOfThreads();
+		if (nthreads > 1 && nl >= ConcurrencyUtils.getThreadsBeginN_1D()) {
+			Future<?>[] futures = new Future<?>[nthreads];
+			int chunk = nl / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int first = j * chunk;
+				final int last = (j == nthreads - 1) ? nl : first + chunk;
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						branchAdmittances(first, last, branch, Ybr);
+						branchRows(first, last, f, t, Fp, Ybr, Fj, Fx, Tj, Tx);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+		} else {
+			branchAdmittances(0, nl, branch, Ybr);
+			branchRows(0, nl, f, t, Fp, Ybr, Fj, Fx, Tj, Tx);
+		}
+
+		/* build Yf and Yt such that Yf * V is the vector of complex branch currents injected
+		 * at each branch's "from" bus, and Yt is the same for the "to" bus end
+		 */
+		Yf = new SparseRCDComplexMatrix2D(nl, nb, Fp, Fj, Fx);
+		Yt = new SparseRCDComplexMatrix2D(nl, nb, Fp.clone(), Tj, Tx);
 
 		/* compute shunt admittance vector
 		if Psh is the real power consumed by the shunt at V = 1.0 p.u.
 		and Qsh is the reactive power injected by the shunt at V = 1.0 p.u.
 		then Psh - j Qsh = V * conj(Ysh * V) = conj(Ysh) = Gs - j Bs,
 		i.e. Ysh = Psh + j Qsh */
-		Ysh = complex(bus.Gs, bus.Bs).assign(cfunc.div(baseMVA));
+		Gs = Columns.elements(bus.Gs);
+		Bs = Columns.elements(bus.Bs);
 
-		// build connection matrices
-		f = branch.f_bus.toArray();		// list of "from" buses
-		t = branch.t_bus.toArray();		// list of "to" buses
-		il = irange(nl);
+		/* build Ybus = Cf' * Yf + Ct' * Yt + diag(Ysh) */
+		Ybus = assemble(nb, nl, f, t, Ybr, Gs, Bs, baseMVA);
 
-		// connection matrix for line & from buses
-		Cf = new SparseRCDComplexMatrix2D(nl, nb, il, f, 1, 0, false);
-		// connection matrix for line & to buses
-		Ct = new SparseRCDComplexMatrix2D(nl, nb, il, t, 1, 0, false);
+		return new DComplexMatrix2D[] {Ybus, Yf, Yt};
+	}
 
-		/* build Yf and Yt such that Yf * V is the vector of complex branch currents injected
-		 * at each branch's "from" bus, and Yt is the same for the "to" bus end
-		 */
-		// Duplicate entries must be added.
-		// FIXME: removeDuplicates sums duplicate entries
-		YYff = new SparseRCDComplexMatrix2D(nl, nb, il, f, Yff.toArray(), false, false);
-		YYft = new SparseRCDComplexMatrix2D(nl, nb, il, t, Yft.toArray(), false, false);
-		Yf = new SparseRCDComplexMatrix2D(nl, nb);
-		Yf.assign(YYff, cfunc.plus);
-		Yf.assign(YYft, cfunc.plus);
-
-		YYtf = new SparseRCDComplexMatrix2D(nl, nb, il, f, Ytf.toArray(), false, false);
-		YYtt = new SparseRCDComplexMatrix2D(nl, nb, il, t, Ytt.toArray(), false, false);
-		Yt = new SparseRCDComplexMatrix2D(nl, nb);
-		Yt.assign(YYtf, cfunc.plus);
-		Yt.assign(YYtt, cfunc.plus);
-		//Yf = spdiags(Yff, 0, nl, nl) * Cf + spdiags(Yft, 0, nl, nl) * Ct;
-		//Yt = spdiags(Ytf, 0, nl, nl) * Cf + spdiags(Ytt, 0, nl, nl) * Ct;
-
-		/* build Ybus */
-		// shunt admittance
-		diagYsh = DComplexFactory2D.sparse.diagonal(Ysh);
-		// branch admittances
-		Ybr = Cf.getConjugateTranspose().zMult(Yf, null);
-		Ybr.assign(Ct.getConjugateTranspose().zMult(Yt, null), cfunc.plus);
-		// bus admittance
-		Ybus = Ybr.assign(diagYsh, cfunc.plus);
+	/**
+	 * Computes the admittances of a range of branches, stored as
+	 * Yff, Yft, Ytf, Ytt (real and imaginary parts) for each branch.
+	 *
+	 * @param first first branch
+	 * @param last one past the last branch
+	 * @param branch
+	 * @param Ybr branch admittances
+	 */
+	static void branchAdmittances(int first, int last, Branch branch, double[] Ybr) {
+		int[] status;
+		double[] br_r, br_x, br_b, br_tap, br_shift;
+		double r, x, d, ysr, ysi, bc, tap, shift, c, s, ytti;
 
-		return new DComplexMatrix2D[] {Ybus, Yf, Yt};
+		status = Columns.elements(branch.br_status);
+		br_r = Columns.elements(branch.br_r);
+		br_x = Columns.elements(branch.br_x);
+		br_b = Columns.elements(branch.br_b);
+		br_tap = Columns.elements(branch.tap);
+		br_shift = Columns.elements(branch.shift);
+
+		for (int l = first; l < last; l++) {
+			int p = 8 * l;
+			if (status[l] == 0) {
+				for (int j = 0; j < 8; j++)
+					Ybr[p + j] = 0;
+				continue;
+			}
+			// series admittance
+			r = br_r[l];
+			x = br_x[l];
+			d = r * r + x * x;
+			ysr = r / d;
+			ysi = -x / d;
+			// line charging susceptance
+			bc = br_b[l];
+			// default tap ratio = 1
+			tap = (br_tap[l] != 0) ? br_tap[l] : 1;
+			// add phase shifters
+			shift = br_shift[l];
+			if (shift != 0) {
+				c = Math.cos(Math.toRadians(shift));
+				s = Math.sin(Math.toRadians(shift));
+			} else {
+				c = 1;
+				s = 0;
+			}
+
+			// Ytt = Ys + j Bc / 2
+			ytti = ysi + bc / 2;
+			Ybr[p + 6] = ysr;
+			Ybr[p + 7] = ytti;
+			// Yff = Ytt / (tap * conj(tap))
+			Ybr[p] = ysr / (tap * tap);
+			Ybr[p + 1] = ytti / (tap * tap);
+			// Yft = -Ys / conj(tap)
+			Ybr[p + 2] = -(ysr * c - ysi * s) / tap;
+			Ybr[p + 3] = -(ysr * s + ysi * c) / tap;
+			// Ytf = -Ys / tap
+			Ybr[p + 4] = -(ysr * c + ysi * s) / tap;
+			Ybr[p + 5] = -(ysi * c - ysr * s) / tap;
+		}
+	}
+
+	/**
+	 * Fills a range of rows of Yf and Yt, with columns in increasing order.
+	 */
+	private static void branchRows(int first, int last, int[] f, int[] t, int[] Fp,
+			double[] Ybr, int[] Fj, double[] Fx, int[] Tj, double[] Tx) {
+		int p, q, lo, hi;
+
+		for (int l = first; l < last; l++) {
+			p = 8 * l;
+			q = Fp[l];
+			if (f[l] == t[l]) {
+				Fj[q] = Tj[q] = f[l];
+				Fx[2 * q] = Ybr[p] + Ybr[p + 2];
+				Fx[2 * q + 1] = Ybr[p + 1] + Ybr[p + 3];
+				Tx[2 * q] = Ybr[p + 4] + Ybr[p + 6];
+				Tx[2 * q + 1] = Ybr[p + 5] + Ybr[p + 7];
+				continue;
+			}
+			/* position of the "from" and "to" bus entries in the row */
+			lo = (f[l] < t[l]) ? q : q + 1;
+			hi = (f[l] < t[l]) ? q + 1 : q;
+			Fj[lo] = Tj[lo] = f[l];
+			Fj[hi] = Tj[hi] = t[l];
+			Fx[2 * lo] = Ybr[p];
+			Fx[2 * lo + 1] = Ybr[p + 1];
+			Fx[2 * hi] = Ybr[p + 2];
+			Fx[2 * hi + 1] = Ybr[p + 3];
+			Tx[2 * lo] = Ybr[p + 4];
+			Tx[2 * lo + 1] = Ybr[p + 5];
+			Tx[2 * hi] = Ybr[p + 6];
+			Tx[2 * hi + 1] = Ybr[p + 7];
+		}
+	}
+
+	/**
+	 * Assembles Ybus from the branch admittances and bus shunts in
+	 * O(nb + nl). The entries are first bucketed by column and then
+	 * distributed to the rows in order of column, so that the columns
+	 * of each row come out sorted and duplicates are adjacent.
+	 */
+	private static SparseRCDComplexMatrix2D assemble(int nb, int nl, int[] f, int[] t,
+			double[] Ybr, double[] Gs, double[] Bs, double baseMVA) {
+		int i, j, k, l, p, q, nz;
+		int[] cp, next, ri, last, Yp, Yj;
+		double[] cx, Yx;
+
+		/* entries of each column, Ybus is structurally symmetric */
+		cp = new int[nb + 1];
+		for (l = 0; l < nl; l++) {
+			cp[f[l] + 1] += 2;
+			cp[t[l] + 1] += 2;
+		}
+		for (k = 0; k < nb; k++)
+			cp[k + 1] += cp[k] + 1;
+		ri = new int[cp[nb]];
+		cx = new double[2 * cp[nb]];
+		next = cp.clone();
+		for (l = 0; l < nl; l++) {
+			p = 8 * l;
+			put(next, ri, cx, f[l], f[l], Ybr, p);		// Yff
+			put(next, ri, cx, t[l], f[l], Ybr, p + 4);	// Ytf
+			put(next, ri, cx, f[l], t[l], Ybr, p + 2);	// Yft
+			put(next, ri, cx, t[l], t[l], Ybr, p + 6);	// Ytt
+		}
+		for (k = 0; k < nb; k++) {
+			q = next[k]++;
+			ri[q] = k;
+			cx[2 * q] = Gs[k] / baseMVA;
+			cx[2 * q + 1] = Bs[k] / baseMVA;
+		}
+
+		/* distribute to rows, summing duplicates */
+		Yj = new int[cp[nb]];
+		Yx = new double[2 * cp[nb]];
+		next = cp.clone();
+		last = new int[nb];
+		for (i = 0; i < nb; i++)
+			last[i] = -1;
+		for (j = 0; j < nb; j++) {
+			for (p = cp[j]; p < cp[j + 1]; p++) {
+				i = ri[p];
+				if (last[i] == j) {
+					q = next[i] - 1;
+				} else {
+					q = next[i]++;
+					Yj[q] = j;
+					last[i] = j;
+				}
+				Yx[2 * q] += cx[2 * p];
+				Yx[2 * q + 1] += cx[2 * p + 1];
+			}
+		}
+
+		/* compact the rows */
+		Yp = new int[nb + 1];
+		nz = 0;
+		for (i = 0; i < nb; i++) {
+			for (p = cp[i]; p < next[i]; p++, nz++) {
+				Yj[nz] = Yj[p];
+				Yx[2 * nz] = Yx[2 * p];
+				Yx[2 * nz + 1] = Yx[2 * p + 1];
+			}
+			Yp[i + 1] = nz;
+		}
+		Yj = Arrays.copyOf(Yj, nz);
+		Yx = Arrays.copyOf(Yx, 2 * nz);
+
+		return new SparseRCDComplexMatrix2D(nb, nb, Yp, Yj, Yx);
+	}
+
+	private static void put(int[] next, int[] ri, double[] cx, int row, int col,
+			double[] Ybr, int p) {
+		int q = next[col]++;
+		ri[q] = row;
+		cx[2 * q] = Ybr[p];
+		cx[2 * q + 1] = Ybr[p + 1];
 	}
 
 }
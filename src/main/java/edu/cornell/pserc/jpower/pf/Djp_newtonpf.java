@@ -20,25 +20,12 @@ package edu.cornell.pserc.jpower.pf;
 
 import java.util.Map;
 
-import cern.colt.matrix.Norm;
 import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
 import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleFactory2D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebra;
-import cern.colt.matrix.tdouble.impl.SparseRCDoubleMatrix2D;
 
 import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
 
-import static edu.emory.mathcs.utils.Utils.dfunc;
-import static edu.emory.mathcs.utils.Utils.cfunc;
 import static edu.emory.mathcs.utils.Utils.icat;
-import static edu.emory.mathcs.utils.Utils.complex;
-import static edu.emory.mathcs.utils.Utils.irange;
-import static edu.emory.mathcs.utils.Utils.polar;
 
 /**
  * Solves the power flow using a full Newton's method.
@@ -62,8 +49,20 @@ public class Djp_newtonpf {
 	 * set the termination tolerance, maximum number of iterations, and
 	 * output options (see JPOPTION for details). Uses default options if
 	 * this parameter is not given. Returns the final complex voltages, a
-	 * flag which indicates whether it converged or not, and the number of
-	 * iterations performed.
+	 * flag which indicates whether it converged or not, the number of
+	 * iterations performed and the LU factors of the last Jacobian.
+	 *
+	 * If PF_ALG is 5 the dishonest (chord) variant is used, where the LU
+	 * factors of the Jacobian are kept from one iteration to the next and
+	 * are only refreshed when the ratio of successive mismatch norms rises
+	 * above PF_DNR_RATIO, or when they are PF_DNR_MAX_AGE iterations old.
+	 * If the factors returned by a previous call are given in LU0 and the
+	 * sparsity pattern is unchanged, the first iteration uses them too.
+	 *
+	 * A Jacobian built for the same Ybus structure and bus types may be
+	 * given in J0 to avoid rebuilding its sparsity pattern, for example
+	 * when solving many cases on the same network. J0 and LU0 are
+	 * updated in place, so must not be shared between threads.
 	 *
 	 * @param Ybus
 	 * @param Sbus
@@ -72,52 +71,71 @@ public class Djp_newtonpf {
 	 * @param pv
 	 * @param pq
 	 * @param jpopt
+	 * @param J0 Jacobian workspace, or null
+	 * @param lu0 factors from a previous solve, or null
 	 * @return
 	 */
 	public static Object[] newtonpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
-			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
-		int i, max_it, verbose, npv, npq, j1, j2, j3, j4, j5, j6;
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt,
+			Jacobian J0, SparseLU lu0) {
+		int i, j, nb, max_it, verbose, npv, npq, j1, j3, j5, max_age, age, nfact;
 		int[] pvpq;
-		double tol, normF;
-		boolean converged;
-		DoubleMatrix1D F, dx;
-		DoubleMatrix2D J11, J12, J21, J22, J1, J2, J;
-		DComplexMatrix1D mis, V, Va, Vm, dxz;
-		DComplexMatrix2D dSbus_dVm, dSbus_dVa;
-		DComplexMatrix2D[] dSbus_dV;
-		SparseRCDoubleMatrix2D JJ;
+		double tol, normF, normF0, ratio;
+		double[] Va, Vm, P, Q, F;
+		boolean converged, dishonest, refresh;
+		DComplexMatrix1D V;
+		VoltageState x;
+		Mismatch mis;
+		Jacobian J;
+		SparseLU lu;
 
 		/* options */
 		tol	= jpopt.get("PF_TOL");
 		max_it	= jpopt.get("PF_MAX_IT").intValue();
 		verbose	= jpopt.get("VERBOSE").intValue();
+		dishonest = jpopt.get("PF_ALG").intValue() == 5;
+		ratio	= jpopt.get("PF_DNR_RATIO");
+		max_age	= jpopt.get("PF_DNR_MAX_AGE").intValue();
 
 		/* initialize */
 		pvpq = icat(pv, pq);
 		converged = false;
 		i = 0;
-		V = V0;
-		Va = V.copy().assign(cfunc.arg);
-		Vm = V.copy().assign(cfunc.abs);
+		nfact = 0;
+		x = new VoltageState(V0);
+		Va = x.Va;
+		Vm = x.Vm;
+		nb = x.size();
+		P = new double[nb];
+		Q = new double[nb];
+		VoltageState.split(Sbus, P, Q);
 
 		/* set up indexing for updating V */
 		npv = pv.length;
 		npq = pq.length;
-		j1 = 0;		j2 = npv;			// j1:j2 - V angle of pv buses
-		j3 = j2;	j4 = j2 + npq;		// j3:j4 - V angle of pq buses
-		j5 = j4;	j6 = j4 + npq;		// j5:j6 - V mag of pq buses
+		j1 = 0;				// j1:j2 - V angle of pv buses
+		j3 = npv;			// j3:j4 - V angle of pq buses
+		j5 = npv + npq;		// j5:j6 - V mag of pq buses
+
+		/* sparsity pattern of the Jacobian is fixed, build and analyse it once */
+		J = (J0 != null) ? J0 : new Jacobian(Ybus, pv, pq);
+		if (lu0 != null && lu0.matches(J.getDcs())) {
+			lu = lu0;
+			refresh = !(dishonest && lu0.isFactored());
+		} else {
+			lu = new SparseLU(J.getDcs());
+			refresh = true;
+		}
+		age = 0;
 
 		/* evaluate F(x0) */
-		mis = Ybus.zMult(V, null).assign(cfunc.conj);
-		mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus);
-		F = DoubleFactory1D.sparse.make(new DoubleMatrix1D[] {
-				mis.viewSelection(pvpq).getRealPart(),
-				mis.viewSelection(pq).getImaginaryPart() });
+		mis = new Mismatch(Ybus, pvpq, pq);
+		F = new double[j5 + npq];
+		normF = mis.evaluate(x.Vr, x.Vi, null, P, Q, F, F, null);
 
 		/* check tolerance */
-		normF = DenseDoubleAlgebra.DEFAULT.norm(F, Norm.Infinity);
 		if (verbose > 0)
-			System.out.print("(Newton)\n");
+			System.out.print(dishonest ? "(dishonest Newton)\n" : "(Newton)\n");
 		if (verbose > 1) {
 			System.out.printf("\n it    max P & Q mismatch (p.u.)");
 			System.out.printf("\n----  ---------------------------");
@@ -134,46 +152,40 @@ public class Djp_newtonpf {
 			/* update iteration counter */
 			i += 1;
 
-			/* evaluate Jacobian */
-			dSbus_dV = Djp_dSbus_dV.dSbus_dV(Ybus, V);
-			dSbus_dVm = dSbus_dV[0];
-			dSbus_dVa = dSbus_dV[1];
+			if (!dishonest || refresh) {
+				/* evaluate Jacobian, values only */
+				J.update(Vm, Va);
 
-			J11 = dSbus_dVa.getRealPart().viewSelection(pvpq, pvpq).copy();
-			J12 = dSbus_dVm.getRealPart().viewSelection(pvpq, pq).copy();
-			J21 = dSbus_dVa.getImaginaryPart().viewSelection(pq, pvpq).copy();
-			J22 = dSbus_dVm.getImaginaryPart().viewSelection(pq, pq).copy();
-			J1 = DoubleFactory2D.sparse.appendColumns(J11, J12);
-			J2 = DoubleFactory2D.sparse.appendColumns(J21, J22);
-			J = DoubleFactory2D.sparse.appendRows(J1, J2);
-			JJ = new SparseRCDoubleMatrix2D(J.rows(), J.columns());
-			JJ.assign(J);
+				/* numeric factorization only */
+				if (!lu.factor(J.getDcs())) {
+					System.err.println("newtonpf: singular Jacobian");
+					break;
+				}
+				nfact += 1;
+				age = 0;
+			}
+			age += 1;
 
-			dx = SparseDoubleAlgebra.DEFAULT.solve(JJ, F).assign(dfunc.neg);
-			dxz = complex(dx, null);
+			/* compute update step, J * dx = F, in place */
+			lu.solve(F);
 
 			/* update voltage */
-			if (npv > 0)
-				Va.viewSelection(pv).assign(dxz.viewSelection(irange(j1, j2)), cfunc.plus);
-			if (npq > 0) {
-				Va.viewSelection(pq).assign(dxz.viewSelection(irange(j3, j4)), cfunc.plus);
-				Vm.viewSelection(pq).assign(dxz.viewSelection(irange(j5, j6)), cfunc.plus);
+			for (j = 0; j < npv; j++)
+				Va[pv[j]] -= F[j1 + j];
+			for (j = 0; j < npq; j++) {
+				Va[pq[j]] -= F[j3 + j];
+				Vm[pq[j]] -= F[j5 + j];
 			}
 
-			V = polar(Vm.getRealPart(), Va.getRealPart());
 			/* update Vm and Va again in case we wrapped around with a negative Vm */
-			Va = V.copy().assign(cfunc.arg);
-			Vm = V.copy().assign(cfunc.abs);
+			x.toRectangular();
+			x.toPolar();
 
 			/* evalute F(x) */
-			mis = Ybus.zMult(V, null).assign(cfunc.conj);
-			mis.assign(V, cfunc.mult).assign(Sbus, cfunc.minus);
-			F = DoubleFactory1D.sparse.make(new DoubleMatrix1D[] {
-					mis.viewSelection(pvpq).getRealPart(),
-					mis.viewSelection(pq).getImaginaryPart() });
+			normF0 = normF;
+			normF = mis.evaluate(x.Vr, x.Vi, null, P, Q, F, F, null);
 
 			/* check for convergence */
-			normF = DenseDoubleAlgebra.DEFAULT.norm(F, Norm.Infinity);
 			if (verbose > 1)
 				System.out.printf("\n%3d        %10.3e", i, normF);
 			if (normF < tol) {
@@ -181,14 +193,192 @@ public class Djp_newtonpf {
 				if (verbose > 0)
 					System.out.printf("\nNewton's method power flow converged in %d iterations.\n", i);
 			}
+
+			/* refresh factors if the mismatch reduction has stalled */
+			refresh = normF > ratio * normF0 || (max_age > 0 && age >= max_age);
 		}
-		if (verbose > 0)
+		if (verbose > 0) {
 			if (!converged)
 				System.out.printf("\nNewton''s method power did not converge in %d iterations.\n", i);
+			if (dishonest)
+				System.out.printf("Jacobian factorized %d times.\n", nfact);
+		}
+
+		V = x.toComplex();
+
+		return new Object[] {V, converged, i, lu};
+	}
+
+	/**
+	 * Solves the power flow with Newton's method, enforcing the generator
+	 * reactive power limits in QLIM by switching PV buses to PQ, and back,
+	 * between iterations (ENFORCE_Q_LIMS = 3). The Jacobian is built once,
+	 * with voltage magnitude columns for the PV buses as well as the PQ
+	 * buses, and the voltage of each bus that is regulating is held with
+	 * Jacobian.setFixedVm(). A switch therefore changes only the values
+	 * of the Jacobian, its symbolic factorization is kept and the solve
+	 * continues from the current voltages. Sbus is not modified. The
+	 * final state of each PV bus is left in QLIM. Returns the final
+	 * complex voltages, a flag which indicates whether it converged or not
+	 * and the number of iterations performed.
+	 *
+	 * @param Ybus
+	 * @param Sbus
+	 * @param V0
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param jpopt
+	 * @param qlim limits of the PV buses
+	 * @return
+	 */
+	public static Object[] newtonpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt,
+			QLimits qlim) {
+		int i, j, k, nb, max_it, verbose, npv, npvpq, nswitch;
+		int[] pvpq;
+		double tol, normF;
+		double[] Va, Vm, P, Q, F, Qinj;
+		boolean converged;
+		boolean[] fixed;
+		DComplexMatrix1D V;
+		VoltageState x;
+		Mismatch mis;
+		Jacobian J;
+		SparseLU lu;
+
+		/* options */
+		tol	= jpopt.get("PF_TOL");
+		max_it	= jpopt.get("PF_MAX_IT").intValue();
+		verbose	= jpopt.get("VERBOSE").intValue();
+
+		/* initialize */
+		pvpq = icat(pv, pq);
+		npv = pv.length;
+		npvpq = pvpq.length;
+		converged = false;
+		i = 0;
+		x = new VoltageState(V0);
+		Va = x.Va;
+		Vm = x.Vm;
+		nb = x.size();
+		P = new double[nb];
+		Q = new double[nb];
+		VoltageState.split(Sbus, P, Q);
+		F = new double[2 * npvpq];
+		Qinj = new double[nb];
+		qlim.start(Vm);
+
+		/* voltage magnitudes of all PV and PQ buses are unknowns, PV buses fix theirs */
+		J = new Jacobian(Ybus, new int[0], pvpq);
+		mis = new Mismatch(Ybus, pvpq, pvpq);
+		fixed = new boolean[nb];
+		for (j = 0; j < npv; j++) {
+			fixed[pv[j]] = true;
+			J.setFixedVm(pv[j], true);
+			mis.setQRow(pv[j], -1);
+		}
+		lu = new SparseLU(J.getDcs());
+
+		/* evaluate F(x0) */
+		normF = mismatch(mis, x.Vr, x.Vi, P, Q, pv, fixed, npvpq, F, Qinj);
+		if (verbose > 0)
+			System.out.print("(Newton, PV-PQ switching)\n");
+		if (verbose > 1) {
+			System.out.printf("\n it    max P & Q mismatch (p.u.)");
+			System.out.printf("\n----  ---------------------------");
+			System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+
+		while (true) {
+			/* switch bus types once close to the solution */
+			nswitch = (normF < QLimits.SWITCH_TOL) ? qlim.update(Qinj, Vm, Q) : 0;
+			if (nswitch > 0) {
+				for (j = 0; j < npv; j++) {
+					k = pv[j];
+					fixed[k] = qlim.state(j) == 0;
+					J.setFixedVm(k, fixed[k]);
+					mis.setQRow(k, fixed[k] ? -1 : npvpq + j);
+					x.toRectangular(k);
+				}
+				normF = mismatch(mis, x.Vr, x.Vi, P, Q, pv, fixed, npvpq, F, Qinj);
+				if (verbose > 1)
+					System.out.printf("\n     %d bus types switched, %10.3e", nswitch, normF);
+			} else if (normF < tol) {
+				converged = true;
+				if (verbose > 0)
+					System.out.printf("\nNewton's method power flow converged in %d iterations.\n", i);
+				break;
+			}
+			if (i >= max_it)
+				break;
+
+			/* update iteration counter */
+			i += 1;
+
+			/* evaluate Jacobian and factor, values only */
+			J.update(Vm, Va);
+			if (!lu.factor(J.getDcs())) {
+				System.err.println("newtonpf: singular Jacobian");
+				break;
+			}
+
+			/* compute update step, J * dx = F */
+			lu.solve(F);
+
+			/* update voltage */
+			for (j = 0; j < npvpq; j++) {
+				k = pvpq[j];
+				Va[k] -= F[j];
+				if (!fixed[k])
+					Vm[k] -= F[npvpq + j];
+			}
+			x.toRectangular();
+			x.toPolar();
+
+			/* evalute F(x) */
+			normF = mismatch(mis, x.Vr, x.Vi, P, Q, pv, fixed, npvpq, F, Qinj);
+			if (verbose > 1)
+				System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+		if (verbose > 0 && !converged)
+			System.out.printf("\nNewton''s method power did not converge in %d iterations.\n", i);
+
+		V = x.toComplex();
 
 		return new Object[] {V, converged, i};
 	}
 
+	/**
+	 * Evaluates the P mismatch of the PV and PQ buses and the Q mismatch of
+	 * those with a free voltage magnitude into F, with zeros for the
+	 * Q rows of the PV buses that are fixed, and the reactive power
+	 * injection of every PV and PQ bus into Qinj.
+	 *
+	 * @return the infinity norm of F.
+	 */
+	private static double mismatch(Mismatch mis, double[] Vr, double[] Vi, double[] P,
+			double[] Q, int[] pv, boolean[] fixed, int npvpq, double[] F, double[] Qinj) {
+		double norm = mis.evaluate(Vr, Vi, null, P, Q, F, F, Qinj);
+
+		/* the PV buses lead pvpq */
+		for (int j = 0; j < pv.length; j++)
+			if (fixed[pv[j]])
+				F[npvpq + j] = 0;
+		return norm;
+	}
+
+	public static Object[] newtonpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt,
+			SparseLU lu0) {
+		return newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, null, lu0);
+	}
+
+	public static Object[] newtonpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
+		return newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, (SparseLU) null);
+	}
+
 	public static Object[] newtonpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
 			DComplexMatrix1D V0, int ref, int[] pv, int[] pq) {
 		return newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpoption());
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Map;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+
+import static edu.emory.mathcs.utils.Utils.icat;
+
+/**
+ * Solves the power flow using Newton's method on the current injection
+ * equations, in rectangular coordinates.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class Djp_newtonpf_I_cart {
+
+	/**
+	 * Solves for bus voltages given the full system admittance matrix (for
+	 * all buses), the complex bus power injection vector (for all buses),
+	 * the initial vector of complex bus voltages, and column vectors with
+	 * the lists of bus indices for the swing bus, PV buses, and PQ buses,
+	 * respectively. The bus voltage vector contains the set point for
+	 * generator (including ref bus) buses, and the reference angle of the
+	 * swing bus, as well as an initial guess for remaining magnitudes and
+	 * angles. JPOPT is a JPOWER options vector which can be used to
+	 * set the termination tolerance, maximum number of iterations, and
+	 * output options (see JPOPTION for details). Returns the final complex
+	 * voltages, a flag which indicates whether it converged or not and the
+	 * number of iterations performed.
+	 *
+	 * The unknowns are the real and imaginary parts of the voltages of the
+	 * PV and PQ buses and the reactive power injections of the PV buses,
+	 * whose voltage magnitudes are held by an extra equation each. The
+	 * off-diagonal blocks of the Jacobian are the elements of Ybus, so
+	 * only the diagonal blocks change between iterations (see
+	 * CurrentJacobian). Convergence is tested on the same P and Q
+	 * mismatch as PF_ALG 1, with the voltage magnitude error of the PV
+	 * buses.
+	 *
+	 * @param Ybus
+	 * @param Sbus
+	 * @param V0
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param jpopt
+	 * @return
+	 */
+	public static Object[] newtonpf_I_cart(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt) {
+		int i, j, k, nb, max_it, verbose, npv, npvpq;
+		int[] pvpq;
+		double tol, normF;
+		double[] Vr, Vi, P, Q, Vset, D, F, Qinj;
+		boolean converged;
+		DComplexMatrix1D V;
+		VoltageState x;
+		Mismatch mis;
+		CurrentJacobian J;
+		SparseLU lu;
+
+		/* options */
+		tol	= jpopt.get("PF_TOL");
+		max_it	= jpopt.get("PF_MAX_IT").intValue();
+		verbose	= jpopt.get("VERBOSE").intValue();
+
+		/* initialize */
+		pvpq = icat(pv, pq);
+		npv = pv.length;
+		npvpq = pvpq.length;
+		converged = false;
+		i = 0;
+		x = new VoltageState(V0);
+		x.toRectangular();
+		Vr = x.Vr;
+		Vi = x.Vi;
+		nb = x.size();
+		P = new double[nb];
+		Q = new double[nb];
+		VoltageState.split(Sbus, P, Q);
+
+		/* voltage set points of the PV buses */
+		Vset = new double[npv];
+		for (j = 0; j < npv; j++)
+			Vset[j] = x.Vm[pv[j]];
+
+		/* sparsity pattern and off-diagonal values of the Jacobian are fixed */
+		J = new CurrentJacobian(Ybus, pv, pq);
+		lu = new SparseLU(J.getDcs());
+
+		/* P and Q mismatch of all PV and PQ buses */
+		mis = new Mismatch(Ybus, pvpq, pvpq);
+		D = new double[2 * npvpq];
+		F = new double[J.size()];
+		Qinj = new double[nb];
+
+		/* initial reactive power of the PV buses, from V0 */
+		mis.evaluate(Vr, Vi, null, P, Q, D, D, Qinj);
+		for (j = 0; j < npv; j++)
+			Q[pv[j]] = Qinj[pv[j]];
+
+		/* evaluate F(x0) */
+		normF = residual(mis, Vr, Vi, P, Q, pv, pvpq, Vset, D, F);
+
+		/* check tolerance */
+		if (verbose > 0)
+			System.out.print("(Newton, current injection, cartesian)\n");
+		if (verbose > 1) {
+			System.out.printf("\n it    max P & Q mismatch (p.u.)");
+			System.out.printf("\n----  ---------------------------");
+			System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+		if (normF < tol) {
+			converged = true;
+			if (verbose > 1)
+				System.out.printf("\nConverged!\n");
+		}
+
+		/* do Newton iterations */
+		while ((!converged) & (i < max_it)) {
+			/* update iteration counter */
+			i += 1;
+
+			/* evaluate diagonal blocks of the Jacobian */
+			J.update(Vr, Vi, P, Q);
+
+			/* numeric factorization only */
+			if (!lu.factor(J.getDcs())) {
+				System.err.println("newtonpf_I_cart: singular Jacobian");
+				break;
+			}
+
+			/* compute update step, J * dx = F, in place */
+			lu.solve(F);
+
+			/* update voltage and reactive power of PV buses */
+			for (j = 0; j < npvpq; j++) {
+				k = pvpq[j];
+				Vr[k] -= F[2 * j];
+				Vi[k] -= F[2 * j + 1];
+			}
+			for (j = 0; j < npv; j++)
+				Q[pv[j]] -= F[2 * npvpq + j];
+
+			/* evalute F(x) */
+			normF = residual(mis, Vr, Vi, P, Q, pv, pvpq, Vset, D, F);
+
+			/* check for convergence */
+			if (verbose > 1)
+				System.out.printf("\n%3d        %10.3e", i, normF);
+			if (normF < tol) {
+				converged = true;
+				if (verbose > 0)
+					System.out.printf("\nNewton's method power flow (current injection) converged in %d iterations.\n", i);
+			}
+		}
+		if (verbose > 0 && !converged)
+			System.out.printf("\nNewton's method power flow (current injection) did not converge in %d iterations.\n", i);
+
+		V = x.toComplex();
+
+		return new Object[] {V, converged, i};
+	}
+
+	/**
+	 * Evaluates the current mismatch of the PV and PQ buses and the
+	 * voltage magnitude error of the PV buses into F. The current
+	 * mismatch conj(dS / V) is formed from the power mismatch dS
+	 * evaluated into D. Returns the infinity norm of the power mismatch
+	 * and of the voltage magnitude error.
+	 */
+	private static double residual(Mismatch mis, double[] Vr, double[] Vi,
+			double[] P, double[] Q, int[] pv, int[] pvpq, double[] Vset,
+			double[] D, double[] F) {
+		int j, k, npvpq = pvpq.length;
+		double e, f, m2, dp, dq, normF;
+
+		normF = mis.evaluate(Vr, Vi, null, P, Q, D, D, null);
+
+		for (j = 0; j < npvpq; j++) {
+			k = pvpq[j];
+			e = Vr[k];
+			f = Vi[k];
+			m2 = e * e + f * f;
+			dp = D[j];
+			dq = D[npvpq + j];
+			F[2 * j] = (dp * e + dq * f) / m2;
+			F[2 * j + 1] = (dp * f - dq * e) / m2;
+		}
+		for (j = 0; j < pv.length; j++) {
+			k = pv[j];
+			m2 = Vr[k] * Vr[k] + Vi[k] * Vi[k];
+			F[2 * npvpq + j] = (m2 - Vset[j] * Vset[j]) / 2;
+			normF = Math.max(normF, Math.abs(Math.sqrt(m2) - Vset[j]));
+		}
+		return normF;
+	}
+
+}
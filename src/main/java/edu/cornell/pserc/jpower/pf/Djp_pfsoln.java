@@ -72,9 +72,10 @@ public class Djp_pfsoln {
 		int[] on, gbus, ig, out, br;
 		double Pg_o;
 		IntMatrix1D ggbus, refgen;
-		DoubleMatrix1D Va, ngb, ngg, Qg_tot, Qg_min, Qg_max, Qg_on, Qg_save, Qg;
+		DoubleMatrix1D ngb, ngg, Qg_tot, Qg_min, Qg_max, Qg_on, Qg_save, Qg;
 		DComplexMatrix1D Sg, Sf, St;
 		SparseRCDoubleMatrix2D Cg, Cmin, Cmax;
+		VoltageState x;
 
 		/* initialize return values */
 		bus = bus0.copy();
@@ -82,9 +83,11 @@ public class Djp_pfsoln {
 		branch = branch0.copy();
 
 		/* ----- update bus voltages ----- */
-		bus.Vm.assign(V.copy().assign(cfunc.abs).getRealPart());
-		Va = V.copy().assign(cfunc.arg).getRealPart();
-		bus.Va.assign(Va.assign(dfunc.mult(180)).assign(dfunc.div(Math.PI)));
+		x = new VoltageState(V);
+		for (int k = 0; k < x.size(); k++) {
+			bus.Vm.setQuick(k, x.Vm[k]);
+			bus.Va.setQuick(k, x.Va[k] * 180 / Math.PI);
+		}
 
 		/* ----- update Qg for all gens and Pg for swing bus ----- */
 		// generator info
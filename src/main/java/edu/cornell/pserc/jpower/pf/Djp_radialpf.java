@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Map;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+
+import static edu.emory.mathcs.utils.Utils.icat;
+
+/**
+ * Solves the power flow of a radial network using the backward/forward
+ * sweep method.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class Djp_radialpf {
+
+	/**
+	 * Solves for bus voltages given the full system admittance matrix (for
+	 * all buses), the complex bus power injection vector (for all buses),
+	 * the initial vector of complex bus voltages, and column vectors with
+	 * the lists of bus indices for the swing bus, PV buses, and PQ buses,
+	 * respectively. The bus voltage vector contains the set point for
+	 * generator (including ref bus) buses, and the reference angle of the
+	 * swing bus, as well as an initial guess for remaining magnitudes and
+	 * angles. JPOPT is a JPOWER options vector which can be used to
+	 * set the termination tolerance, maximum number of iterations, and
+	 * output options (see JPOPTION for details). Returns the final complex
+	 * voltages, a flag which indicates whether it converged or not and the
+	 * number of iterations performed.
+	 *
+	 * The network must be radial, with the feeders and the order of their
+	 * buses given by NET (see RadialFeeders.build). Each iteration is one
+	 * sweep of all feeders, followed by a correction of the reactive power
+	 * injection of each PV bus in proportion to its voltage magnitude error
+	 * and the reactance of its path to the reference bus. Convergence is
+	 * tested on the same P and Q mismatch as the other algorithms, with
+	 * the voltage magnitude error of the PV buses, within PF_MAX_IT_BFS
+	 * iterations.
+	 *
+	 * @param Ybus
+	 * @param Sbus
+	 * @param V0
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param jpopt
+	 * @param net radial topology of the network
+	 * @return
+	 */
+	public static Object[] radialpf(DComplexMatrix2D Ybus, DComplexMatrix1D Sbus,
+			DComplexMatrix1D V0, int ref, int[] pv, int[] pq, Map<String, Double> jpopt,
+			RadialFeeders net) {
+		int i, j, k, nb, max_it, verbose, npv;
+		double tol, normF, Vm;
+		double[] Vr, Vi, P, Q, Vset, Ir, Ii, F;
+		boolean converged;
+		DComplexMatrix1D V;
+		VoltageState x;
+		Mismatch mis;
+
+		/* options */
+		tol	= jpopt.get("PF_TOL");
+		max_it	= jpopt.get("PF_MAX_IT_BFS").intValue();
+		verbose	= jpopt.get("VERBOSE").intValue();
+
+		/* initialize */
+		converged = false;
+		i = 0;
+		x = new VoltageState(V0);
+		x.toRectangular();
+		Vr = x.Vr;
+		Vi = x.Vi;
+		nb = x.size();
+		P = new double[nb];
+		Q = new double[nb];
+		VoltageState.split(Sbus, P, Q);
+		Ir = new double[nb];
+		Ii = new double[nb];
+
+		/* voltage set points of the PV buses */
+		npv = pv.length;
+		Vset = new double[npv];
+		for (j = 0; j < npv; j++)
+			Vset[j] = x.Vm[pv[j]];
+
+		/* evaluate F(x0) */
+		mis = new Mismatch(Ybus, icat(pv, pq), pq);
+		F = new double[npv + 2 * pq.length];
+		normF = residual(mis, Vr, Vi, P, Q, pv, Vset, F);
+
+		/* check tolerance */
+		if (verbose > 0)
+			System.out.printf("(backward/forward sweep, %d feeders)\n", net.feeders());
+		if (verbose > 1) {
+			System.out.printf("\n it    max P & Q mismatch (p.u.)");
+			System.out.printf("\n----  ---------------------------");
+			System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+		if (normF < tol) {
+			converged = true;
+			if (verbose > 1)
+				System.out.printf("\nConverged!\n");
+		}
+
+		/* do backward/forward sweeps */
+		while ((!converged) & (i < max_it)) {
+			/* update iteration counter */
+			i += 1;
+
+			/* update voltages of all buses but the root */
+			net.sweep(Vr, Vi, P, Q, Ir, Ii);
+
+			/* update reactive power of PV buses towards the set point */
+			for (j = 0; j < npv; j++) {
+				k = pv[j];
+				Vm = Math.sqrt(Vr[k] * Vr[k] + Vi[k] * Vi[k]);
+				Q[k] += Vm * (Vset[j] - Vm) / net.pathReactance(k);
+			}
+
+			/* evalute F(x) */
+			normF = residual(mis, Vr, Vi, P, Q, pv, Vset, F);
+
+			/* check for convergence */
+			if (verbose > 1)
+				System.out.printf("\n%3d        %10.3e", i, normF);
+			if (normF < tol) {
+				converged = true;
+				if (verbose > 0)
+					System.out.printf("\nBackward/forward sweep power flow converged in %d iterations.\n", i);
+			}
+		}
+		if (verbose > 0 && !converged)
+			System.out.printf("\nBackward/forward sweep power flow did not converge in %d iterations.\n", i);
+
+		V = x.toComplex();
+
+		return new Object[] {V, converged, i};
+	}
+
+	/**
+	 * Returns the infinity norm of the P mismatch of the PV and PQ buses,
+	 * the Q mismatch of the PQ buses and the voltage magnitude error of
+	 * the PV buses.
+	 */
+	private static double residual(Mismatch mis, double[] Vr, double[] Vi,
+			double[] P, double[] Q, int[] pv, double[] Vset, double[] F) {
+		int k;
+		double normF;
+
+		normF = mis.evaluate(Vr, Vi, null, P, Q, F, F, null);
+		for (int j = 0; j < pv.length; j++) {
+			k = pv[j];
+			normF = Math.max(normF, Math.abs(Math.sqrt(Vr[k] * Vr[k] + Vi[k] * Vi[k]) - Vset[j]));
+		}
+		return normF;
+	}
+
+}
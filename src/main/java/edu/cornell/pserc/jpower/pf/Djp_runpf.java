@@ -26,6 +26,7 @@ import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition;
 import cern.colt.matrix.tint.IntMatrix1D;
 
 import static edu.emory.mathcs.utils.Utils.ifunc;
@@ -112,7 +113,9 @@ public class Djp_runpf {
 		DoubleMatrix1D Va0, Pbusinj, Pfinj, Pbus, Va, fixedQg;
 		DoubleMatrix2D B, Bf;
 		AbstractMatrix[] Bdc;
-		DoubleMatrix2D[] BB;
+		SparseDoubleLUDecomposition[] lu;
+		FDPFFactors fd;
+		QLimits qlims;
 		DComplexMatrix1D V0, Sbus, V;
 		DComplexMatrix2D Ybus, Yf, Yt;
 		DComplexMatrix2D[] Y;
@@ -215,7 +218,8 @@ public class Djp_runpf {
 
 			ref0 = 0;
 			Varef0 = 0;
-			limited = null;					// list of indices of gens @ Q lims
+			limited = new int[0];			// list of indices of gens @ Q lims
+			qlims = null;
 			fixedQg = null;
 			if (qlim > 0) {
 				ref0 = ref;							// save index and angle of
@@ -234,13 +238,34 @@ public class Djp_runpf {
 				/* run the power flow */
 				int alg = jpopt.get("PF_ALG").intValue();
 				soln = null;
-				if (alg == 1) {
+				if (qlim == 3 && (alg == 1 || alg == 5)) {
+					/* bus types are switched within the solve */
+					qlims = new QLimits(baseMVA, bus, gen, pv);
+					soln = Djp_newtonpf.newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, qlims);
+				} else if (qlim == 3 && (alg == 2 || alg == 3)) {
+					qlims = new QLimits(baseMVA, bus, gen, pv);
+					fd = FDPFFactors.factors(baseMVA, bus, branch, alg);
+					lu = fd.lu(pv, pq);
+					soln = Djp_fdpf.fdpf(Ybus, Sbus, V0, lu[0], fd.Bpp, ref, pv, pq, jpopt, qlims);
+				} else if (alg == 1 || alg == 5) {
 					soln = Djp_newtonpf.newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt);
 				} else if (alg == 2 || alg == 3) {
-					BB = Djp_makeB.makeB(baseMVA, bus, branch, alg);
-					soln = Djp_fdpf.fdpf(Ybus, Sbus, V0, BB[0], BB[1], ref, pv, pq, jpopt);
+					/* B matrices and factors are reused while branch data is unchanged */
+					lu = FDPFFactors.factors(baseMVA, bus, branch, alg).lu(pv, pq);
+					soln = Djp_fdpf.fdpf(Ybus, Sbus, V0, lu[0], lu[1], ref, pv, pq, jpopt);
 				} else if (alg == 4) {
 					soln = Djp_gausspf.gausspf(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+				} else if (alg == 6) {
+					soln = Djp_newtonpf_I_cart.newtonpf_I_cart(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+				} else if (alg == 7) {
+					/* search order of the feeders is built once for all sweeps */
+					RadialFeeders feeders = RadialFeeders.build(baseMVA, bus, branch, ref);
+					if (feeders != null) {
+						soln = Djp_radialpf.radialpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, feeders);
+					} else {
+						System.err.println("runpf: network is not radial, using Newton's method");
+						soln = Djp_newtonpf.newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+					}
 				} else {
 					System.err.println("Only Newton''s method, fast-decoupled, and Gauss-Seidel power flow algorithms currently implemented.");
 					// TODO: throw unsupported algorithm exception.
@@ -255,7 +280,13 @@ public class Djp_runpf {
 				gen = (Gen) data[1];
 				branch = (Branch) data[2];
 
-				if (qlim > 0) {		// enforce generator Q limits
+				if (qlims != null) {
+					/* buses left at a limit become PQ buses, as for ENFORCE_Q_LIMS = 1 */
+					for (i = 0; i < pv.length; i++)
+						if (qlims.state(i) != 0)
+							bus.bus_type.set(pv[i], JPC.PQ);
+					repeat = false;
+				} else if (qlim > 0) {		// enforce generator Q limits
 					/* find gens with violated Q constraints */
 					mx = nonzero( gen.gen_status.copy().assign(intm( gen.Qg.copy().assign(gen.Qmax, dfunc.greater) ), ifunc.and) );
 					mn = nonzero( gen.gen_status.copy().assign(intm( gen.Qg.copy().assign(gen.Qmin, dfunc.less) ), ifunc.and) );
@@ -325,19 +356,19 @@ public class Djp_runpf {
 				} else {
 					repeat = false;		// don't enforce generator Q limits, once is enough
 				}
-				if (qlim > 0 && limited.length > 0) {
-					// restore injections from limited gens (those at Q limits)
-					gen.Qg.viewSelection(limited).assign(fixedQg.viewSelection(limited));	// restore Qg value,
-					for (i = 0; i < limited.length; i++) {								// (one at a time, since
-						bi = gen.gen_bus.get(limited[i]);								//  they may be at same bus)
-						bus.Pd.set(bi, bus.Pd.get(bi) + gen.Pg.get(limited[i]));			// re-adjust load,
-						bus.Qd.set(bi, bus.Qd.get(bi) + gen.Qg.get(limited[i]));
-					}
-					gen.gen_status.viewSelection(limited).assign(1);						// and turn gen back on
-					if (ref != ref0) {
-						/* adjust voltage angles to make original ref bus correct */
-						bus.Va.assign(dfunc.minus(bus.Va.get(ref0) + Varef0));
-					}
+			}
+			if (qlim > 0 && limited.length > 0) {
+				// restore injections from limited gens (those at Q limits)
+				gen.Qg.viewSelection(limited).assign(fixedQg.viewSelection(limited));	// restore Qg value,
+				for (i = 0; i < limited.length; i++) {								// (one at a time, since
+					bi = gen.gen_bus.get(limited[i]);								//  they may be at same bus)
+					bus.Pd.set(bi, bus.Pd.get(bi) + gen.Pg.get(limited[i]));			// re-adjust load,
+					bus.Qd.set(bi, bus.Qd.get(bi) + gen.Qg.get(limited[i]));
+				}
+				gen.gen_status.viewSelection(limited).assign(1);						// and turn gen back on
+				if (ref != ref0) {
+					/* adjust voltage angles to make original ref bus correct */
+					bus.Va.assign(dfunc.minus(bus.Va.get(ref0) - Varef0));
 				}
 			}
 		}
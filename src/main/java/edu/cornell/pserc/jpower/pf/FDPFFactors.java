@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebra;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+import static edu.emory.mathcs.utils.Utils.icat;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+
+/**
+ * Cache of the fast-decoupled B prime and B double prime matrices and
+ * their LU factors.
+ *
+ * B' and B'' depend only on the branch data, the number of buses and the
+ * FDPF variant, and their reduced factors additionally on the lists of
+ * PV and PQ buses. Entries are keyed on all of this data, so repeated
+ * solves of the same network (time series, Q limit iterations,
+ * contingency screening) reuse the factors while a change to any
+ * branch parameter or status simply misses the cache. Call invalidate()
+ * to release the factors explicitly, for example after modifying branch
+ * data in place.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class FDPFFactors {
+
+	/** maximum number of networks kept in the cache */
+	public static final int CACHE_SIZE = 8;
+
+	/** maximum number of bus type partitions kept for each network */
+	public static final int LU_CACHE_SIZE = 4;
+
+	private static final Map<Key, FDPFFactors> cache = lru(CACHE_SIZE);
+
+	/** B prime */
+	public final DoubleMatrix2D Bp;
+
+	/** B double prime */
+	public final DoubleMatrix2D Bpp;
+
+	private final Map<Key, SparseDoubleLUDecomposition[]> lus = lru(LU_CACHE_SIZE);
+
+	private FDPFFactors(DoubleMatrix2D Bp, DoubleMatrix2D Bpp) {
+		this.Bp = Bp;
+		this.Bpp = Bpp;
+	}
+
+	/**
+	 * Returns the B matrices for the given network, building them with
+	 * makeB only if they are not already cached.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @param alg value of the PF_ALG option (2 - XB, 3 - BX)
+	 * @return cached B matrices
+	 */
+	public static FDPFFactors factors(double baseMVA, Bus bus, Branch branch, int alg) {
+		Key key = networkKey(baseMVA, bus, branch, alg);
+		FDPFFactors f;
+
+		synchronized (cache) {
+			f = cache.get(key);
+		}
+		if (f == null) {
+			DoubleMatrix2D[] BB = Djp_makeB.makeB(baseMVA, bus, branch, alg);
+			f = new FDPFFactors(BB[0], BB[1]);
+			synchronized (cache) {
+				cache.put(key, f);
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Returns the LU factors of B' and B'' reduced to the given lists of
+	 * PV and PQ buses, factorizing only if not already cached.
+	 *
+	 * @param pv PV bus indices
+	 * @param pq PQ bus indices
+	 * @return LU factors of B'[pvpq,pvpq] and B''[pq,pq]
+	 */
+	public SparseDoubleLUDecomposition[] lu(int[] pv, int[] pq) {
+		Key key = new Key(0, new double[0], new int[][] {pv.clone(), pq.clone()});
+		SparseDoubleLUDecomposition[] lu;
+
+		synchronized (lus) {
+			lu = lus.get(key);
+		}
+		if (lu == null) {
+			lu = factor(Bp, Bpp, pv, pq);
+			synchronized (lus) {
+				lus.put(key, lu);
+			}
+		}
+		return lu;
+	}
+
+	/**
+	 * Reduces and factors the B matrices.
+	 *
+	 * @param Bp B prime
+	 * @param Bpp B double prime
+	 * @param pv PV bus indices
+	 * @param pq PQ bus indices
+	 * @return LU factors of B'[pvpq,pvpq] and B''[pq,pq]
+	 */
+	public static SparseDoubleLUDecomposition[] factor(DoubleMatrix2D Bp, DoubleMatrix2D Bpp,
+			int[] pv, int[] pq) {
+		return new SparseDoubleLUDecomposition[] {
+				factor(Bp, icat(pv, pq)),
+				factor(Bpp, pq) };
+	}
+
+	/**
+	 * Reduces and factors one of the B matrices.
+	 *
+	 * @param B B prime or B double prime
+	 * @param idx indices of the buses to keep
+	 * @return LU factors of B[idx,idx]
+	 */
+	public static SparseDoubleLUDecomposition factor(DoubleMatrix2D B, int[] idx) {
+		SparseCCDoubleMatrix2D CCB;
+
+		/* column-compressed format for factorisation */
+		CCB = new SparseCCDoubleMatrix2D(idx.length, idx.length);
+		CCB.assign(B.viewSelection(idx, idx));
+
+		return SparseDoubleAlgebra.DEFAULT.lu(CCB, 0);
+	}
+
+	/**
+	 * Removes all cached B matrices and factors.
+	 */
+	public static void invalidate() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Removes the cached B matrices and factors for the given network.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @param alg
+	 */
+	public static void invalidate(double baseMVA, Bus bus, Branch branch, int alg) {
+		Key key = networkKey(baseMVA, bus, branch, alg);
+		synchronized (cache) {
+			cache.remove(key);
+		}
+	}
+
+	private static Key networkKey(double baseMVA, Bus bus, Branch branch, int alg) {
+		return new Key(alg, new double[] {baseMVA, bus.size()},
+			new int[][] {
+				branch.f_bus.toArray(),
+				branch.t_bus.toArray(),
+				branch.br_status.toArray()
+			},
+			branch.br_r.toArray(),
+			branch.br_x.toArray(),
+			branch.br_b.toArray(),
+			branch.tap.toArray(),
+			branch.shift.toArray());
+	}
+
+	private static <V> Map<Key, V> lru(final int maxSize) {
+		return new LinkedHashMap<Key, V>(maxSize, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Cache key holding copies of the data the factors depend on.
+	 */
+	private static class Key {
+
+		private int alg, hash;
+		private int[][] idata;
+		private double[][] ddata;
+
+		Key(int alg, double[] scalars, int[][] idata, double[]... ddata) {
+			this.alg = alg;
+			this.idata = idata;
+			this.ddata = new double[ddata.length + 1][];
+			this.ddata[0] = scalars;
+			System.arraycopy(ddata, 0, this.ddata, 1, ddata.length);
+			hash = 31 * (31 * alg + Arrays.deepHashCode(this.idata)) + Arrays.deepHashCode(this.ddata);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && alg == other.alg
+					&& Arrays.deepEquals(idata, other.idata)
+					&& Arrays.deepEquals(ddata, other.ddata);
+		}
+	}
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Gauss-Seidel power flow iterations on the compressed rows of Ybus.
+ *
+ * The admittances are split into separate real and imaginary arrays, as
+ * held by Mismatch, and the reciprocals of the diagonal elements are
+ * computed once, on construction. Each sweep updates the voltage of
+ * every PQ bus and then every PV bus in place, so each update sees the
+ * latest voltages of its neighbours, and the voltages may be
+ * over-relaxed (SOR) by a factor omega. Sweeps and mismatch evaluations
+ * do not allocate.
+ *
+ * In the red-black ordering the buses are coloured so that no two
+ * adjacent buses have the same colour, using as many colours as the
+ * network needs, and the buses of each colour are updated in parallel.
+ * The iterates differ from those of the natural ordering, but the
+ * solution is the same.
+ *
+ * Instances hold workspace for the bus voltages, so must not be shared
+ * between threads.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class GaussSeidel {
+
+	/** update PQ buses then PV buses, in the order given */
+	public static final int NATURAL = 0;
+
+	/** update the buses of each colour in parallel */
+	public static final int RED_BLACK = 1;
+
+	private static final int REF = 0, PV = 1, PQ = 2;
+
+	private final int nb;
+
+	/* Ybus in compressed-row form, real and imaginary parts */
+	private final int[] Yp, Yj;
+	private final double[] Yr, Yi;
+
+	/* position of the diagonal elements and their reciprocals */
+	private final int[] diag;
+	private final double[] Dr, Di;
+
+	/* type of each bus and the order of the natural sweep */
+	private final int[] type, order;
+
+	/* buses of each colour, for the red-black sweep */
+	private int[] colorp, colorb;
+
+	/* P mismatch of the PV and PQ buses, Q mismatch of the PQ buses */
+	private final Mismatch mis;
+
+	/* workspace */
+	private final double[] Vset, F;
+
+	private double omega = 1.0;
+	private int ordering = NATURAL;
+
+	/**
+	 *
+	 * @param Ybus full system admittance matrix
+	 * @param ref reference bus index
+	 * @param pv PV bus indices
+	 * @param pq PQ bus indices
+	 */
+	public GaussSeidel(DComplexMatrix2D Ybus, int ref, int[] pv, int[] pq) {
+		double a, b, d;
+
+		nb = Ybus.rows();
+		order = new int[pq.length + pv.length];
+		System.arraycopy(pq, 0, order, 0, pq.length);
+		System.arraycopy(pv, 0, order, pq.length, pv.length);
+		mis = new Mismatch(Ybus, order, pq);
+		mis.setParallel(false);
+		Yp = mis.Yp;
+		Yj = mis.Yj;
+		Yr = mis.Yr;
+		Yi = mis.Yi;
+
+		diag = new int[nb];
+		Dr = new double[nb];
+		Di = new double[nb];
+		for (int i = 0; i < nb; i++) {
+			for (int p = Yp[i]; p < Yp[i + 1]; p++) {
+				if (Yj[p] != i)
+					continue;
+				diag[i] = p;
+				a = Yr[p];
+				b = Yi[p];
+				d = a * a + b * b;
+				Dr[i] = a / d;
+				Di[i] = -b / d;
+			}
+		}
+
+		type = new int[nb];
+		type[ref] = REF;
+		for (int k : pv)
+			type[k] = PV;
+		for (int k : pq)
+			type[k] = PQ;
+
+		Vset = new double[nb];
+		F = new double[order.length + pq.length];
+	}
+
+	/**
+	 *
+	 * @param omega relaxation factor, 1 for Gauss-Seidel, between 1 and 2
+	 * for successive over-relaxation
+	 */
+	public void setRelaxation(double omega) {
+		if (omega <= 0 || omega >= 2)
+			throw new IllegalArgumentException("GaussSeidel: relaxation factor must be in (0, 2)");
+		this.omega = omega;
+	}
+
+	/**
+	 *
+	 * @param ordering NATURAL or RED_BLACK
+	 */
+	public void setOrdering(int ordering) {
+		if (ordering != NATURAL && ordering != RED_BLACK)
+			throw new IllegalArgumentException("GaussSeidel: invalid ordering " + ordering);
+		this.ordering = ordering;
+		mis.setParallel(ordering == RED_BLACK);
+		if (ordering == RED_BLACK && colorp == null)
+			color();
+	}
+
+	/**
+	 *
+	 * @return number of colours of the red-black ordering.
+	 */
+	public int colors() {
+		if (colorp == null)
+			color();
+		return colorp.length - 1;
+	}
+
+	/**
+	 * Iterates until the mismatch is below tol. The voltages of the PV
+	 * buses are held at their initial magnitudes.
+	 *
+	 * @param Vr real part of the bus voltages, updated in place
+	 * @param Vi imaginary part of the bus voltages, updated in place
+	 * @param P real power injection of each bus (p.u.)
+	 * @param Q reactive power injection of each bus (p.u.), not used for PV buses
+	 * @param tol termination tolerance on the P and Q mismatch (p.u.)
+	 * @param max_it maximum number of sweeps
+	 * @param verbose print progress if greater than 1
+	 * @return number of sweeps performed, or -1 minus that number if the
+	 * mismatch is still above tol.
+	 */
+	public int solve(double[] Vr, double[] Vi, double[] P, double[] Q, double tol,
+			int max_it, int verbose) {
+		double normF;
+		int i = 0;
+
+		for (int k : order)
+			if (type[k] == PV)
+				Vset[k] = Math.hypot(Vr[k], Vi[k]);
+
+		normF = mis.evaluate(Vr, Vi, null, P, Q, F, F, null);
+		if (verbose > 1) {
+			System.out.printf("\n it    max P & Q mismatch (p.u.)");
+			System.out.printf("\n----  ---------------------------");
+			System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+		while (normF >= tol && i < max_it) {
+			i += 1;
+			if (ordering == RED_BLACK) {
+				for (int c = 0; c < colorp.length - 1; c++)
+					parallel(colorp[c], colorp[c + 1], Vr, Vi, P, Q);
+			} else {
+				update(order, 0, order.length, Vr, Vi, P, Q);
+			}
+			normF = mis.evaluate(Vr, Vi, null, P, Q, F, F, null);
+			if (verbose > 1)
+				System.out.printf("\n%3d        %10.3e", i, normF);
+		}
+
+		return (normF < tol) ? i : -1 - i;
+	}
+
+	/**
+	 * Updates the voltages of buses[first:last].
+	 */
+	private void update(int[] buses, int first, int last, double[] Vr, double[] Vi,
+			double[] P, double[] Q) {
+		int k, j, p;
+		double ir, ii, vr, vi, q, m2, ar, ai, nr, ni, s;
+
+		for (int n = first; n < last; n++) {
+			k = buses[n];
+			vr = Vr[k];
+			vi = Vi[k];
+
+			/* current injected by the neighbours, sum of Y(k,j) * V(j), j != k */
+			ir = 0;
+			ii = 0;
+			for (p = Yp[k]; p < Yp[k + 1]; p++) {
+				j = Yj[p];
+				if (j == k)
+					continue;
+				ir += Yr[p] * Vr[j] - Yi[p] * Vi[j];
+				ii += Yr[p] * Vi[j] + Yi[p] * Vr[j];
+			}
+
+			if (type[k] == PV) {
+				/* Q(k) = imag(V(k) * conj(Y(k,:) * V)) */
+				p = diag[k];
+				ar = ir + Yr[p] * vr - Yi[p] * vi;
+				ai = ii + Yr[p] * vi + Yi[p] * vr;
+				q = vi * ar - vr * ai;
+			} else {
+				q = Q[k];
+			}
+			m2 = vr * vr + vi * vi;
+
+			/* V(k) = (conj(S(k) / V(k)) - sum) / Y(k,k) */
+			ar = (P[k] * vr + q * vi) / m2 - ir;
+			ai = (P[k] * vi - q * vr) / m2 - ii;
+			nr = ar * Dr[k] - ai * Di[k];
+			ni = ar * Di[k] + ai * Dr[k];
+
+			/* over-relax */
+			nr = vr + omega * (nr - vr);
+			ni = vi + omega * (ni - vi);
+
+			if (type[k] == PV) {
+				s = Vset[k] / Math.sqrt(nr * nr + ni * ni);
+				nr *= s;
+				ni *= s;
+			}
+			Vr[k] = nr;
+			Vi[k] = ni;
+		}
+	}
+
+	/**
+	 * Updates the buses of one colour, which are not adjacent, in parallel
+	 * chunks.
+	 */
+	private void parallel(int first, int last, final double[] Vr, final double[] Vi,
+			final double[] P, final double[] Q) {
+		int n = last - first, nthreads = ConcurrencyUtils.getNumberOfThreads();
+
+		if (nthreads > 1 && n >= ConcurrencyUtils.getThreadsBeginN_1D()) {
+			Future<?>[] futures = new Future<?>[nthreads];
+			int chunk = n / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int f = first + j * chunk;
+				final int l = (j == nthreads - 1) ? last : f + chunk;
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						update(colorb, f, l, Vr, Vi, P, Q);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+		} else {
+			update(colorb, first, last, Vr, Vi, P, Q);
+		}
+	}
+
+	/**
+	 * Greedy colouring of the PV and PQ buses, such that no two adjacent
+	 * buses have the same colour.
+	 */
+	private void color() {
+		int[] color = new int[nb], mark = new int[nb + 1], count;
+		int ncolors = 0, c, k;
+
+		Arrays.fill(mark, -1);
+		for (int n = 0; n < order.length; n++) {
+			k = order[n];
+			for (int p = Yp[k]; p < Yp[k + 1]; p++) {
+				if (Yj[p] != k && type[Yj[p]] != REF && color[Yj[p]] > 0)
+					mark[color[Yj[p]] - 1] = k;
+			}
+			for (c = 0; mark[c] == k; c++)
+				;
+			color[k] = c + 1;
+			ncolors = Math.max(ncolors, c + 1);
+		}
+
+		count = new int[ncolors + 1];
+		for (int n = 0; n < order.length; n++)
+			count[color[order[n]]]++;
+		colorp = new int[ncolors + 1];
+		for (c = 0; c < ncolors; c++)
+			colorp[c + 1] = colorp[c] + count[c + 1];
+		colorb = new int[order.length];
+		count = colorp.clone();
+		for (int n = 0; n < order.length; n++) {
+			k = order[n];
+			colorb[count[color[k] - 1]++] = k;
+		}
+	}
+
+}
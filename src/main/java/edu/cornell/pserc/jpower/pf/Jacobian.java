@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+
+/**
+ * Power flow Jacobian with a fixed sparsity pattern.
+ *
+ * The structure of the reduced Jacobian
+ *
+ * 	| J11  J12 |   | dP/dVa[pvpq,pvpq]  dP/dVm[pvpq,pq] |
+ * 	|          | = |                                     |
+ * 	| J21  J22 |   | dQ/dVa[pq,pvpq]    dQ/dVm[pq,pq]   |
+ *
+ * depends only on the structure of Ybus and the bus type lists, so it is
+ * computed once on construction. Each call to update() then refills the
+ * numeric values in place, directly from Ybus and the bus voltages,
+ * without allocating, using the sparse products of the Kernels in use.
+ * The matrix is stored in compressed-column form so that it may be
+ * passed straight to CSparse.
+ *
+ * The voltage magnitude of a PQ bus may be fixed with setFixedVm(), in
+ * which case its dQ/dVa and dQ/dVm row is replaced by the corresponding
+ * row of the identity, so the bus behaves as a PV bus without a change
+ * to the sparsity pattern. This allows buses to be switched between PV
+ * and PQ during a solve while keeping the symbolic factorization.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Jacobian {
+
+	private int nb, npvpq, n;
+
+	/* Ybus in compressed-row form (values interleaved re, im) */
+	private int[] Yp, Yj;
+	private double[] Yx;
+
+	/* row index of each Ybus element */
+	private int[] Yrow;
+
+	/* position of the diagonal element of each Ybus row (-1 if absent) */
+	private int[] Ydiag;
+
+	/* destinations in Jx of each off-diagonal Ybus element (-1 if none) */
+	private int[] o11, o12, o21, o22;
+
+	/* destinations in Jx of the diagonal terms of each bus (-1 if none) */
+	private int[] d11, d12, d21, d22;
+
+	/* Jacobian in compressed-column form */
+	private Dcs J;
+
+	/* buses whose Q row is replaced by a fixed voltage magnitude */
+	private boolean[] fixed;
+
+	private Kernels kernels;
+
+	/* workspace */
+	private double[] Yr, Yi, Vr, Vi, Vm, Ir, Ii, Sr, Si, Wr, Wi;
+
+	/**
+	 * Builds the sparsity pattern of the reduced Jacobian for the given
+	 * admittance matrix and lists of PV and PQ bus indices.
+	 *
+	 * @param Ybus full system admittance matrix
+	 * @param pv PV bus indices
+	 * @param pq PQ bus indices
+	 */
+	public Jacobian(DComplexMatrix2D Ybus, int[] pv, int[] pq) {
+		int i, k, p, r, c, npv, npq, nz;
+		int[] ang, mag, busOf, Jp, Ji, count, mark;
+		boolean qrow;
+		SparseRCDComplexMatrix2D Y;
+
+		Y = compressedRows(Ybus);
+		Yp = Y.getRowPointers();
+		Yj = Y.getColumnIndexes();
+		Yx = Y.getValues();
+
+		nb = Ybus.rows();
+		npv = pv.length;
+		npq = pq.length;
+		npvpq = npv + npq;
+		n = npvpq + npq;
+
+		/* column (and row) of each bus in the reduced system, -1 if none */
+		ang = new int[nb];
+		mag = new int[nb];
+		for (i = 0; i < nb; i++) {
+			ang[i] = -1;
+			mag[i] = -1;
+		}
+		busOf = new int[n];
+		for (i = 0; i < npv; i++) {
+			ang[pv[i]] = i;
+			busOf[i] = pv[i];
+		}
+		for (i = 0; i < npq; i++) {
+			ang[pq[i]] = npv + i;
+			mag[pq[i]] = npvpq + i;
+			busOf[npv + i] = pq[i];
+			busOf[npvpq + i] = pq[i];
+		}
+
+		Ydiag = new int[nb];
+		for (i = 0; i < nb; i++) {
+			Ydiag[i] = -1;
+			for (p = Yp[i]; p < Yp[i + 1]; p++)
+				if (Yj[p] == i)
+					Ydiag[i] = p;
+		}
+
+		/* count the non-zeros in each column, visiting rows in order */
+		count = new int[n];
+		mark = new int[n];
+		for (c = 0; c < n; c++)
+			mark[c] = -1;
+		for (r = 0; r < n; r++) {
+			i = busOf[r];
+			for (p = Yp[i]; p <= Yp[i + 1]; p++) {
+				k = (p < Yp[i + 1]) ? Yj[p] : i;	// diagonal last, if missing
+				if (ang[k] >= 0 && mark[ang[k]] != r) {
+					mark[ang[k]] = r;
+					count[ang[k]]++;
+				}
+				if (mag[k] >= 0 && mark[mag[k]] != r) {
+					mark[mag[k]] = r;
+					count[mag[k]]++;
+				}
+			}
+		}
+
+		Jp = new int[n + 1];
+		for (c = 0; c < n; c++)
+			Jp[c + 1] = Jp[c] + count[c];
+		nz = Jp[n];
+		Ji = new int[nz];
+
+		o11 = new int[Yj.length];
+		o12 = new int[Yj.length];
+		o21 = new int[Yj.length];
+		o22 = new int[Yj.length];
+		d11 = new int[nb];
+		d12 = new int[nb];
+		d21 = new int[nb];
+		d22 = new int[nb];
+		fill(o11, -1);
+		fill(o12, -1);
+		fill(o21, -1);
+		fill(o22, -1);
+		fill(d11, -1);
+		fill(d12, -1);
+		fill(d21, -1);
+		fill(d22, -1);
+
+		/* assign positions, rows appear in ascending order in each column */
+		for (c = 0; c < n; c++) {
+			count[c] = Jp[c];
+			mark[c] = -1;
+		}
+		for (r = 0; r < n; r++) {
+			i = busOf[r];
+			qrow = r >= npvpq;
+			for (p = Yp[i]; p <= Yp[i + 1]; p++) {
+				if (p == Yp[i + 1] && Ydiag[i] >= 0)
+					break;
+				k = (p < Yp[i + 1]) ? Yj[p] : i;
+				if (ang[k] >= 0 && mark[ang[k]] != r) {
+					mark[ang[k]] = r;
+					Ji[count[ang[k]]] = r;
+					if (k == i) {
+						if (qrow) d21[i] = count[ang[k]]; else d11[i] = count[ang[k]];
+					} else {
+						if (qrow) o21[p] = count[ang[k]]; else o11[p] = count[ang[k]];
+					}
+					count[ang[k]]++;
+				}
+				if (mag[k] >= 0 && mark[mag[k]] != r) {
+					mark[mag[k]] = r;
+					Ji[count[mag[k]]] = r;
+					if (k == i) {
+						if (qrow) d22[i] = count[mag[k]]; else d12[i] = count[mag[k]];
+					} else {
+						if (qrow) o22[p] = count[mag[k]]; else o12[p] = count[mag[k]];
+					}
+					count[mag[k]]++;
+				}
+			}
+		}
+
+		J = new Dcs();
+		J.m = n;
+		J.n = n;
+		J.nzmax = nz;
+		J.nz = -1;			// compressed-column
+		J.p = Jp;
+		J.i = Ji;
+		J.x = new double[nz];
+
+		Yrow = new int[Yj.length];
+		for (i = 0; i < nb; i++)
+			for (p = Yp[i]; p < Yp[i + 1]; p++)
+				Yrow[p] = i;
+
+		kernels = Kernels.get();
+		Yr = new double[Yj.length];
+		Yi = new double[Yj.length];
+		Vr = new double[nb];
+		Vi = new double[nb];
+		Vm = new double[nb];
+		Ir = new double[nb];
+		Ii = new double[nb];
+		Sr = new double[nb];
+		Si = new double[nb];
+		Wr = new double[Yj.length];
+		Wi = new double[Yj.length];
+	}
+
+	/**
+	 * Refills the Jacobian values for the given bus voltages, in polar
+	 * form. Does not allocate.
+	 *
+	 * @param Vm voltage magnitudes (p.u.)
+	 * @param Va voltage angles (radians)
+	 */
+	public void update(double[] Vm, double[] Va) {
+		for (int i = 0; i < nb; i++) {
+			Vr[i] = Vm[i] * Math.cos(Va[i]);
+			Vi[i] = Vm[i] * Math.sin(Va[i]);
+		}
+		refill();
+	}
+
+	/**
+	 * Refills the Jacobian values for the given bus voltages, in
+	 * rectangular form. Does not allocate.
+	 *
+	 * @param Vr real part of the bus voltages
+	 * @param Vi imaginary part of the bus voltages
+	 */
+	public void updateRect(double[] Vr, double[] Vi) {
+		System.arraycopy(Vr, 0, this.Vr, 0, nb);
+		System.arraycopy(Vi, 0, this.Vi, 0, nb);
+		refill();
+	}
+
+	private void refill() {
+		int i, k, p, nz = Yp[nb];
+		double wr, wi, sr, si;
+		double[] Jx = J.x;
+
+		/* the values of Ybus may have been updated in place */
+		kernels.split(Yx, Yr, Yi, 0, nz);
+
+		/* Ibus = Ybus * V, S = V .* conj(Ibus), W(i,k) = V(i) * conj(Y(i,k) * V(k)) */
+		kernels.multiply(Yp, Yj, Yr, Yi, Vr, Vi, Ir, Ii, null, 0, nb);
+		kernels.power(Vr, Vi, Ir, Ii, Sr, Si, null, 0, nb);
+		kernels.products(Yrow, Yj, Yr, Yi, Vr, Vi, Wr, Wi, 0, nz);
+		for (i = 0; i < nb; i++)
+			Vm[i] = Math.sqrt(Vr[i] * Vr[i] + Vi[i] * Vi[i]);
+
+		for (i = 0; i < nb; i++) {
+			/* off-diagonal elements
+			 * 	dS/dVa(i,k) = -j * W(i,k)
+			 * 	dS/dVm(i,k) = W(i,k) / abs(V(k))
+			 */
+			for (p = Yp[i]; p < Yp[i + 1]; p++) {
+				k = Yj[p];
+				if (k == i)
+					continue;
+				wr = Wr[p];
+				wi = Wi[p];
+				if (o11[p] >= 0) Jx[o11[p]] = wi;
+				if (o21[p] >= 0) Jx[o21[p]] = -wr;
+				if (o12[p] >= 0) Jx[o12[p]] = wr / Vm[k];
+				if (o22[p] >= 0) Jx[o22[p]] = wi / Vm[k];
+			}
+
+			/* diagonal elements, with S(i) = V(i) * conj(Ibus(i))
+			 * 	dS/dVa(i,i) = j * (S(i) - W(i,i))
+			 * 	dS/dVm(i,i) = (S(i) + W(i,i)) / abs(V(i))
+			 */
+			if (Ydiag[i] >= 0) {
+				wr = Wr[Ydiag[i]];
+				wi = Wi[Ydiag[i]];
+			} else {
+				wr = 0;
+				wi = 0;
+			}
+			sr = Sr[i];
+			si = Si[i];
+			if (d11[i] >= 0) Jx[d11[i]] = wi - si;
+			if (d21[i] >= 0) Jx[d21[i]] = sr - wr;
+			if (d12[i] >= 0) Jx[d12[i]] = (wr + sr) / Vm[i];
+			if (d22[i] >= 0) Jx[d22[i]] = (wi + si) / Vm[i];
+
+			/* dVm(i) = 0 */
+			if (fixed != null && fixed[i]) {
+				for (p = Yp[i]; p < Yp[i + 1]; p++) {
+					if (o21[p] >= 0) Jx[o21[p]] = 0;
+					if (o22[p] >= 0) Jx[o22[p]] = 0;
+				}
+				if (d21[i] >= 0) Jx[d21[i]] = 0;
+				Jx[d22[i]] = 1;
+			}
+		}
+	}
+
+	/**
+	 * Fixes or frees the voltage magnitude of a PQ bus. Takes effect from
+	 * the next update.
+	 *
+	 * @param i index of a bus in the PQ list given on construction
+	 * @param fixed true to hold the voltage magnitude of the bus
+	 */
+	public void setFixedVm(int i, boolean fixed) {
+		if (d22[i] < 0)
+			throw new IllegalArgumentException("Jacobian: bus " + i + " is not a PQ bus");
+		if (this.fixed == null)
+			this.fixed = new boolean[nb];
+		this.fixed[i] = fixed;
+	}
+
+	/**
+	 *
+	 * @return the Jacobian in CSparse compressed-column form. The
+	 * returned object is shared and is overwritten by each update.
+	 */
+	public Dcs getDcs() {
+		return J;
+	}
+
+	/**
+	 *
+	 * @return the dimension of the reduced Jacobian.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 *
+	 * @return a dense copy of the Jacobian.
+	 */
+	public DoubleMatrix2D toMatrix() {
+		DoubleMatrix2D JJ = DoubleFactory2D.dense.make(n, n);
+		for (int c = 0; c < n; c++)
+			for (int p = J.p[c]; p < J.p[c + 1]; p++)
+				JJ.setQuick(J.i[p], c, J.x[p]);
+		return JJ;
+	}
+
+	/**
+	 *
+	 * @param Ybus
+	 * @return Ybus in compressed-row form.
+	 */
+	static SparseRCDComplexMatrix2D compressedRows(DComplexMatrix2D Ybus) {
+		SparseRCDComplexMatrix2D Y;
+		if (Ybus instanceof SparseRCDComplexMatrix2D) {
+			Y = (SparseRCDComplexMatrix2D) Ybus;
+		} else {
+			Y = new SparseRCDComplexMatrix2D(Ybus.rows(), Ybus.columns());
+			Y.assign(Ybus);
+		}
+		return Y;
+	}
+
+	private static void fill(int[] a, int val) {
+		for (int i = 0; i < a.length; i++)
+			a[i] = val;
+	}
+
+}
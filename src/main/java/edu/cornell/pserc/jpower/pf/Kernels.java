@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+/**
+ * Complex sparse kernels of the AC power flow, on compressed-row
+ * matrices with separate real and imaginary parts.
+ *
+ * This class is the scalar implementation. A SIMD implementation using
+ * the JDK Vector API is compiled, by the "vector" build profile, when
+ * building with JDK 17 or later and is used when the jdk.incubator.vector
+ * module is present at run time, e.g.
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector ...
+ * </pre>
+ *
+ * The implementation may be chosen with the jpower.kernels system
+ * property, "scalar" or "vector", or with set(). Mismatch and Jacobian
+ * take the current implementation on construction.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Kernels {
+
+	/** name of the system property that selects the implementation */
+	public static final String PROPERTY = "jpower.kernels";
+
+	private static final String VECTOR_CLASS = "edu.cornell.pserc.jpower.pf.VectorKernels";
+
+	private static Kernels current;
+
+	/**
+	 *
+	 * @return the kernels selected by the jpower.kernels property, or by
+	 * set(), otherwise the vector kernels if available, otherwise the
+	 * scalar kernels.
+	 */
+	public static synchronized Kernels get() {
+		String name;
+
+		if (current == null) {
+			name = System.getProperty(PROPERTY);
+			if (name != null) {
+				current = forName(name);
+				if (current == null) {
+					System.err.println("Kernels: " + name + " kernels not available, using scalar");
+					current = new Kernels();
+				}
+			} else {
+				current = forName("vector");
+				if (current == null)
+					current = new Kernels();
+			}
+		}
+		return current;
+	}
+
+	/**
+	 *
+	 * @param kernels implementation to be used by subsequently constructed
+	 * solvers
+	 */
+	public static synchronized void set(Kernels kernels) {
+		current = kernels;
+	}
+
+	/**
+	 *
+	 * @param name "scalar" or "vector"
+	 * @return the named kernels, or null if not available.
+	 */
+	public static Kernels forName(String name) {
+		if (name.equals("scalar"))
+			return new Kernels();
+		if (!name.equals("vector"))
+			throw new IllegalArgumentException("Kernels: unknown kernels " + name);
+		try {
+			return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;		// not compiled
+		} catch (LinkageError e) {
+			return null;		// module not present
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 *
+	 * @return the name of the implementation.
+	 */
+	public String name() {
+		return "scalar";
+	}
+
+	/**
+	 * Complex sparse matrix-vector product of selected rows, y = A * x.
+	 *
+	 * @param Ap row pointers of A
+	 * @param Aj column indexes of A
+	 * @param Ar real parts of the values of A
+	 * @param Ai imaginary parts of the values of A
+	 * @param xr real part of x
+	 * @param xi imaginary part of x
+	 * @param yr real part of y, updated for the selected rows
+	 * @param yi imaginary part of y, updated for the selected rows
+	 * @param rows row indexes, or null for the rows first to last - 1
+	 * @param first first position in rows
+	 * @param last position after the last in rows
+	 */
+	public void multiply(int[] Ap, int[] Aj, double[] Ar, double[] Ai, double[] xr, double[] xi,
+			double[] yr, double[] yi, int[] rows, int first, int last) {
+		int i, j;
+		double sr, si;
+
+		for (int n = first; n < last; n++) {
+			i = (rows == null) ? n : rows[n];
+			sr = 0;
+			si = 0;
+			for (int p = Ap[i]; p < Ap[i + 1]; p++) {
+				j = Aj[p];
+				sr += Ar[p] * xr[j] - Ai[p] * xi[j];
+				si += Ar[p] * xi[j] + Ai[p] * xr[j];
+			}
+			yr[i] = sr;
+			yi[i] = si;
+		}
+	}
+
+	/**
+	 * Complex power injection of selected buses, S = V .* conj(I).
+	 *
+	 * @param Vr real part of the bus voltages
+	 * @param Vi imaginary part of the bus voltages
+	 * @param Ir real part of the current injections
+	 * @param Ii imaginary part of the current injections
+	 * @param Sr real power injections, updated for the selected buses
+	 * @param Si reactive power injections, updated for the selected buses
+	 * @param rows bus indexes, or null for the buses first to last - 1
+	 * @param first first position in rows
+	 * @param last position after the last in rows
+	 */
+	public void power(double[] Vr, double[] Vi, double[] Ir, double[] Ii, double[] Sr,
+			double[] Si, int[] rows, int first, int last) {
+		int k;
+
+		for (int n = first; n < last; n++) {
+			k = (rows == null) ? n : rows[n];
+			Sr[k] = Vr[k] * Ir[k] + Vi[k] * Ii[k];
+			Si[k] = Vi[k] * Ir[k] - Vr[k] * Ii[k];
+		}
+	}
+
+	/**
+	 * Complex power of each element of A, W(p) = V(i) * conj(A(i,j) * V(j)),
+	 * for the elements first to last - 1, as used for the derivatives of
+	 * the power injections.
+	 *
+	 * @param Arow row index of each element of A
+	 * @param Aj column index of each element of A
+	 * @param Ar real parts of the values of A
+	 * @param Ai imaginary parts of the values of A
+	 * @param Vr real part of the bus voltages
+	 * @param Vi imaginary part of the bus voltages
+	 * @param Wr real part of W, output
+	 * @param Wi imaginary part of W, output
+	 * @param first first element
+	 * @param last element after the last
+	 */
+	public void products(int[] Arow, int[] Aj, double[] Ar, double[] Ai, double[] Vr, double[] Vi,
+			double[] Wr, double[] Wi, int first, int last) {
+		int i, j;
+		double zr, zi;
+
+		for (int p = first; p < last; p++) {
+			i = Arow[p];
+			j = Aj[p];
+			zr = Ar[p] * Vr[j] - Ai[p] * Vi[j];
+			zi = Ar[p] * Vi[j] + Ai[p] * Vr[j];
+			Wr[p] = Vr[i] * zr + Vi[i] * zi;
+			Wi[p] = Vi[i] * zr - Vr[i] * zi;
+		}
+	}
+
+	/**
+	 * Splits interleaved complex values, as stored by Colt, into their
+	 * real and imaginary parts.
+	 *
+	 * @param x interleaved values
+	 * @param re real parts, output
+	 * @param im imaginary parts, output
+	 * @param first first value
+	 * @param last value after the last
+	 */
+	public void split(double[] x, double[] re, double[] im, int first, int last) {
+		for (int p = first; p < last; p++) {
+			re[p] = x[2 * p];
+			im[p] = x[2 * p + 1];
+		}
+	}
+
+}
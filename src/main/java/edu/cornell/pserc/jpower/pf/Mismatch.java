@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.concurrent.Future;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Power mismatch of the AC power flow, evaluated on the compressed rows
+ * of Ybus.
+ *
+ * For each chunk of buses with a P or Q residual, the current injections
+ * are computed from their rows of Ybus and the complex power injections
+ * V(k) * conj(I(k)) from those, by the Kernels in use, and a final pass
+ * over the same buses forms the mismatch with the specified injection
+ * and the running infinity norms of the P and Q residuals, so no
+ * intermediate vectors are allocated. The residuals are written into
+ * buffers given by the caller, at the positions set with setRows() or
+ * setQRow(). Large systems are evaluated in parallel chunks of rows.
+ *
+ * Instances hold workspace for the injections and norms, so must not be
+ * shared between threads.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Mismatch {
+
+	final int nb;
+
+	/* Ybus in compressed-row form, real and imaginary parts */
+	final int[] Yp, Yj;
+	final double[] Yr, Yi;
+
+	/* position of the P and Q residual of each bus, -1 if none */
+	private final int[] prow, qrow;
+
+	/* buses with a residual, in bus order */
+	private int[] rows;
+
+	private boolean parallel = true;
+
+	private final Kernels kernels;
+
+	/* workspace */
+	private final double[] Ir, Ii, Sr, Si, normsP, normsQ;
+	private double normP, normQ;
+
+	/**
+	 *
+	 * @param Ybus full system admittance matrix
+	 */
+	public Mismatch(DComplexMatrix2D Ybus) {
+		SparseRCDComplexMatrix2D Y = Jacobian.compressedRows(Ybus);
+		int nz;
+
+		kernels = Kernels.get();
+		nb = Ybus.rows();
+		Yp = Y.getRowPointers();
+		Yj = Y.getColumnIndexes();
+		nz = Yp[nb];
+		Yr = new double[nz];
+		Yi = new double[nz];
+		kernels.split(Y.getValues(), Yr, Yi, 0, nz);
+
+		prow = new int[nb];
+		qrow = new int[nb];
+		setRows(new int[0], new int[0], 0);
+		Ir = new double[nb];
+		Ii = new double[nb];
+		Sr = new double[nb];
+		Si = new double[nb];
+		normsP = new double[ConcurrencyUtils.getNumberOfThreads()];
+		normsQ = new double[normsP.length];
+	}
+
+	/**
+	 * Same as above, with the P residuals of the buses in PBUS followed by
+	 * the Q residuals of the buses in QBUS, [P(pbus); Q(qbus)], as in the
+	 * mismatch vector F of newtonpf.
+	 *
+	 * @param Ybus full system admittance matrix
+	 * @param pbus buses with a P residual, usually the PV and PQ buses
+	 * @param qbus buses with a Q residual, usually the PQ buses
+	 */
+	public Mismatch(DComplexMatrix2D Ybus, int[] pbus, int[] qbus) {
+		this(Ybus);
+		setRows(pbus, qbus, pbus.length);
+	}
+
+	/**
+	 * Places the P residual of PBUS[j] at position j of the P buffer and
+	 * the Q residual of QBUS[j] at position QOFF + j of the Q buffer.
+	 * Buses in neither list have no residual.
+	 *
+	 * @param pbus buses with a P residual
+	 * @param qbus buses with a Q residual
+	 * @param qoff position of the first Q residual
+	 */
+	public void setRows(int[] pbus, int[] qbus, int qoff) {
+		for (int k = 0; k < nb; k++) {
+			prow[k] = -1;
+			qrow[k] = -1;
+		}
+		for (int j = 0; j < pbus.length; j++)
+			prow[pbus[j]] = j;
+		for (int j = 0; j < qbus.length; j++)
+			qrow[qbus[j]] = qoff + j;
+		rows = null;
+	}
+
+	/**
+	 *
+	 * @param k bus index
+	 * @param row position of the Q residual of the bus, -1 for none
+	 */
+	public void setQRow(int k, int row) {
+		qrow[k] = row;
+		rows = null;
+	}
+
+	/**
+	 *
+	 * @param parallel evaluate large systems in parallel chunks of rows
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Evaluates the residuals V .* conj(Ybus * V) - S of the buses set up
+	 * with setRows(), optionally scaled by the voltage magnitudes as in
+	 * the fast decoupled method. FP and FQ may be the same array.
+	 *
+	 * @param Vr real part of the bus voltages
+	 * @param Vi imaginary part of the bus voltages
+	 * @param Vm voltage magnitudes to divide the residuals by, or null
+	 * @param P specified real power injection of each bus (p.u.)
+	 * @param Q specified reactive power injection of each bus (p.u.)
+	 * @param FP P residuals, output
+	 * @param FQ Q residuals, output
+	 * @param Qinj reactive power injection of each bus with a residual,
+	 * output, or null
+	 * @return the infinity norm of all residuals.
+	 */
+	public double evaluate(final double[] Vr, final double[] Vi, final double[] Vm,
+			final double[] P, final double[] Q, final double[] FP, final double[] FQ,
+			final double[] Qinj) {
+		int n, nthreads = normsP.length;
+
+		if (rows == null)
+			rows();
+		n = rows.length;
+
+		if (parallel && nthreads > 1 && n >= ConcurrencyUtils.getThreadsBeginN_1D()) {
+			Future<?>[] futures = new Future<?>[nthreads];
+			int chunk = n / nthreads;
+			for (int j = 0; j < nthreads; j++) {
+				final int t = j;
+				final int first = j * chunk;
+				final int last = (j == nthreads - 1) ? n : first + chunk;
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						evaluate(t, first, last, Vr, Vi, Vm, P, Q, FP, FQ, Qinj);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+			normP = 0;
+			normQ = 0;
+			for (int j = 0; j < nthreads; j++) {
+				normP = Math.max(normP, normsP[j]);
+				normQ = Math.max(normQ, normsQ[j]);
+			}
+		} else {
+			evaluate(0, 0, n, Vr, Vi, Vm, P, Q, FP, FQ, Qinj);
+			normP = normsP[0];
+			normQ = normsQ[0];
+		}
+		return Math.max(normP, normQ);
+	}
+
+	/**
+	 *
+	 * @return the infinity norm of the P residuals of the last evaluation.
+	 */
+	public double normP() {
+		return normP;
+	}
+
+	/**
+	 *
+	 * @return the infinity norm of the Q residuals of the last evaluation.
+	 */
+	public double normQ() {
+		return normQ;
+	}
+
+	/**
+	 * Evaluates the residuals of rows[first:last] into the norms of
+	 * thread t.
+	 */
+	private void evaluate(int t, int first, int last, double[] Vr, double[] Vi, double[] Vm,
+			double[] P, double[] Q, double[] FP, double[] FQ, double[] Qinj) {
+		int k;
+		double dp, dq, np = 0, nq = 0;
+
+		/* I = Y * V, S = V .* conj(I) */
+		kernels.multiply(Yp, Yj, Yr, Yi, Vr, Vi, Ir, Ii, rows, first, last);
+		kernels.power(Vr, Vi, Ir, Ii, Sr, Si, rows, first, last);
+
+		for (int n = first; n < last; n++) {
+			k = rows[n];
+			if (Qinj != null)
+				Qinj[k] = Si[k];
+			dp = Sr[k] - P[k];
+			dq = Si[k] - Q[k];
+			if (Vm != null) {
+				dp /= Vm[k];
+				dq /= Vm[k];
+			}
+
+			if (prow[k] >= 0) {
+				FP[prow[k]] = dp;
+				np = Math.max(np, Math.abs(dp));
+			}
+			if (qrow[k] >= 0) {
+				FQ[qrow[k]] = dq;
+				nq = Math.max(nq, Math.abs(dq));
+			}
+		}
+		normsP[t] = np;
+		normsQ[t] = nq;
+	}
+
+	private void rows() {
+		int n = 0;
+
+		for (int k = 0; k < nb; k++)
+			if (prow[k] >= 0 || qrow[k] >= 0)
+				n++;
+		rows = new int[n];
+		n = 0;
+		for (int k = 0; k < nb; k++)
+			if (prow[k] >= 0 || qrow[k] >= 0)
+				rows[n++] = k;
+	}
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleLUDecomposition;
+import cern.jet.math.tdcomplex.DComplexFunctions;
+
+import static edu.emory.mathcs.utils.Utils.complex;
+import static edu.emory.mathcs.utils.Utils.polar;
+
+import static edu.cornell.pserc.jpower.Djp_jpoption.jpoption;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.Order;
+
+/**
+ * Power flow solver selected by PF_ALG, with the state it keeps between
+ * solves, for the classes that solve one network repeatedly (BatchPF,
+ * ContingencyAnalysis, PowerFlowSession and TimeSeriesPF), along with the
+ * parts of their setup that follow runpf.
+ *
+ * A solver is set up for a network by update(), which returns a solver
+ * that shares whatever state the changes leave valid. The Jacobian reads
+ * Ybus in place, so it is only rebuilt for new bus types or a new Ybus,
+ * while the FDPF factors and the radial feeders also depend on the
+ * branch data. PF_ALG 7 falls back to Newton's method, as in runpf, if
+ * the network is not radial. Instances are not thread-safe: use copy()
+ * to give each thread its own Jacobian and factors.
+ *
+ * @author Richard Lincoln
+ *
+ */
+final class PFSolver {
+
+	private final String owner;
+	private final Map<String, Double> jpopt;
+	private final int alg;
+
+	/* network the solver is set up for */
+	private DComplexMatrix2D Ybus;
+	private int ref;
+	private int[] pv, pq;
+
+	/* Newton's method */
+	private Jacobian J;
+	private SparseLU lu;
+
+	/* fast-decoupled */
+	private DoubleMatrix2D Bp, Bpp;
+	private SparseDoubleLUDecomposition[] fdlu;
+
+	/* backward/forward sweep, radial is false once the network is found to be meshed */
+	private RadialFeeders feeders;
+	private boolean radial = true;
+
+	/**
+	 * Generator reactive power limits and the DC power flow are ignored,
+	 * with a warning.
+	 *
+	 * @param owner class name used in messages
+	 * @param jpopt JPOWER options vector, copied with VERBOSE set to 0
+	 */
+	PFSolver(String owner, Map<String, Double> jpopt) {
+		this.owner = owner;
+		this.jpopt = jpoption(new HashMap<String, Double>(jpopt), "VERBOSE", 0.0);
+		alg = jpopt.get("PF_ALG").intValue();
+		if (alg < 1 || alg > 7)
+			throw new IllegalArgumentException(owner + ": unknown power flow algorithm PF_ALG " + alg);
+		if (jpopt.get("PF_DC") != 0.0 || jpopt.get("ENFORCE_Q_LIMS") != 0.0)
+			System.err.println(owner + ": DC power flow and generator Q limits are not supported, ignoring.");
+	}
+
+	private PFSolver(PFSolver s) {
+		owner = s.owner;
+		jpopt = s.jpopt;
+		alg = s.alg;
+		Ybus = s.Ybus;
+		ref = s.ref;
+		pv = s.pv;
+		pq = s.pq;
+		J = s.J;
+		lu = s.lu;
+		Bp = s.Bp;
+		Bpp = s.Bpp;
+		fdlu = s.fdlu;
+		feeders = s.feeders;
+		radial = s.radial;
+	}
+
+	/**
+	 * Sets up a solver for a network. This solver is not changed and may
+	 * still be used for the network it was set up for.
+	 *
+	 * @param baseMVA
+	 * @param bus bus data, internal indexing
+	 * @param branch branch data, internal indexing
+	 * @param Ybus bus admittance matrix of the network
+	 * @param ref
+	 * @param pv
+	 * @param pq
+	 * @param types true if the bus types differ from those this solver was set up for
+	 * @param branches true if the branch data differ from those this solver was set up for
+	 * @return a solver for the network.
+	 */
+	PFSolver update(double baseMVA, Bus bus, Branch branch, DComplexMatrix2D Ybus,
+			int ref, int[] pv, int[] pq, boolean types, boolean branches) {
+		PFSolver s = new PFSolver(this);
+		DoubleMatrix2D[] BB;
+
+		/* nothing is reused for a new Ybus, as on the first update */
+		if (Ybus != this.Ybus) {
+			types = true;
+			branches = true;
+		}
+		s.Ybus = Ybus;
+		s.ref = ref;
+		s.pv = pv;
+		s.pq = pq;
+
+		if (alg == 2 || alg == 3) {
+			if (branches) {
+				BB = Djp_makeB.makeB(baseMVA, bus, branch, alg);
+				s.Bp = BB[0];
+				s.Bpp = BB[1];
+			}
+			if (branches || types)
+				s.fdlu = FDPFFactors.factor(s.Bp, s.Bpp, pv, pq);
+		}
+		if (alg == 7 && radial && (branches || types)) {
+			s.feeders = RadialFeeders.build(baseMVA, bus, branch, ref);
+			if (s.feeders == null) {
+				System.err.println(owner + ": network is not radial, using Newton's method");
+				s.radial = false;
+			}
+		}
+		if (s.newton() && (types || s.J == null)) {
+			s.J = new Jacobian(Ybus, pv, pq);
+			s.lu = new SparseLU(s.J.getDcs());
+		}
+
+		return s;
+	}
+
+	/**
+	 * A solver for the same network with its own Jacobian and factors.
+	 *
+	 * @param Ybus copy of the bus admittance matrix the solver was set up
+	 * for, read by the new solver
+	 * @return a solver for another thread.
+	 */
+	PFSolver copy(DComplexMatrix2D Ybus) {
+		PFSolver s = new PFSolver(this);
+
+		s.Ybus = Ybus;
+		if (J != null) {
+			s.J = new Jacobian(Ybus, pv, pq);
+			s.lu = new SparseLU(s.J.getDcs());
+		}
+		if (fdlu != null)
+			s.fdlu = FDPFFactors.factor(Bp, Bpp, pv, pq);
+
+		return s;
+	}
+
+	/**
+	 *
+	 * @param Sbus complex bus power injections
+	 * @param V0 initial bus voltages
+	 * @return the solved voltages, whether the power flow converged and the
+	 * number of iterations, as the solvers.
+	 */
+	Object[] solve(DComplexMatrix1D Sbus, DComplexMatrix1D V0) {
+		if (alg == 2 || alg == 3) {
+			return Djp_fdpf.fdpf(Ybus, Sbus, V0, fdlu[0], fdlu[1], ref, pv, pq, jpopt);
+		} else if (alg == 4) {
+			return Djp_gausspf.gausspf(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+		} else if (alg == 6) {
+			return Djp_newtonpf_I_cart.newtonpf_I_cart(Ybus, Sbus, V0, ref, pv, pq, jpopt);
+		} else if (alg == 7 && feeders != null) {
+			return Djp_radialpf.radialpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, feeders);
+		} else {
+			return Djp_newtonpf.newtonpf(Ybus, Sbus, V0, ref, pv, pq, jpopt, J, lu);
+		}
+	}
+
+	private boolean newton() {
+		return alg == 1 || alg == 5 || (alg == 7 && feeders == null);
+	}
+
+	/**
+	 * Index of each row in a list of rows.
+	 *
+	 * @param rows row of each element
+	 * @param n number of rows
+	 * @return the element in each row, -1 for rows not in the list.
+	 */
+	static int[] index(int[] rows, int n) {
+		int[] index = new int[n];
+
+		Arrays.fill(index, -1);
+		for (int i = 0; i < rows.length; i++)
+			index[rows[i]] = i;
+		return index;
+	}
+
+	/**
+	 *
+	 * @param o order of a case converted by ext2int
+	 * @param ng number of generators of the converted case
+	 * @return the row of the gen table of the original case for each
+	 * generator of the converted case.
+	 */
+	static int[] genRows(Order o, int ng) {
+		int[] on = o.gen.status.on, rows = new int[ng];
+
+		for (int k = 0; k < ng; k++)
+			rows[k] = on[o.gen.e2i.get(k)];
+		return rows;
+	}
+
+	/**
+	 * Initial bus voltages, as in runpf: the case voltages with the
+	 * magnitudes of generator buses set to the generator setpoints.
+	 *
+	 * @param bus
+	 * @param gen
+	 * @return initial bus voltages.
+	 */
+	static DComplexMatrix1D initialVoltages(Bus bus, Gen gen) {
+		int[] gbus = gen.gen_bus.toArray();
+		DComplexMatrix1D V, normV0g, cVg;
+
+		V = polar(bus.Vm, bus.Va, false);
+		normV0g = V.viewSelection(gbus).copy().assign(DComplexFunctions.abs).assign(V.viewSelection(gbus), DComplexFunctions.mult);
+		cVg = complex(gen.Vg, null);
+		V.viewSelection(gbus).assign(cVg.assign(normV0g, DComplexFunctions.div));
+		return V;
+	}
+
+	/**
+	 * Power injected into each branch at one end, S = V(bus) * conj(Ybr * V),
+	 * in MVA, scattered to the rows of the original case.
+	 *
+	 * @param Ybr Yf or Yt
+	 * @param bus "from" or "to" bus of each branch
+	 * @param rows row of the original case for each branch
+	 * @param baseMVA
+	 * @param v bus voltages, interleaved real and imaginary parts
+	 * @param P real power flows (MW)
+	 * @param Q reactive power flows (MVAr)
+	 */
+	static void flows(SparseRCDComplexMatrix2D Ybr, int[] bus, int[] rows, double baseMVA,
+			double[] v, double[] P, double[] Q) {
+		int[] Yp = Ybr.getRowPointers(), Yj = Ybr.getColumnIndexes();
+		double[] Yx = Ybr.getValues();
+		double ir, ii, vr, vi;
+
+		for (int l = 0; l < bus.length; l++) {
+			ir = 0;
+			ii = 0;
+			for (int p = Yp[l]; p < Yp[l + 1]; p++) {
+				vr = v[2 * Yj[p]];
+				vi = v[2 * Yj[p] + 1];
+				ir += Yx[2 * p] * vr - Yx[2 * p + 1] * vi;
+				ii += Yx[2 * p] * vi + Yx[2 * p + 1] * vr;
+			}
+			vr = v[2 * bus[l]];
+			vi = v[2 * bus[l] + 1];
+			P[rows[l]] = (vr * ir + vi * ii) * baseMVA;
+			Q[rows[l]] = (vi * ir - vr * ii) * baseMVA;
+		}
+	}
+
+}
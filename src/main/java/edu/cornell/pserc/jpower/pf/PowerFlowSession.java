@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Map;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_int2ext.int2ext;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.jpc.Order;
+
+/**
+ * A power flow case that is modified and solved repeatedly.
+ *
+ * The case is copied and converted to internal indexing once, on
+ * construction, and the session keeps Ybus, Yf and Yt in a YbusUpdater,
+ * along with Sbus, the bus types and the Jacobian, LU or FDPF factors.
+ * Loads, generator outputs and the status of generators and branches are
+ * changed in place, by their rows in the bus, gen and branch tables of
+ * the case, and each call to solve() recomputes only what the changes
+ * since the last solve invalidate:
+ *
+ * - loads and generator outputs rebuild Sbus,
+ * - branch status updates Ybus in place and refactors the FDPF B matrices
+ *   or rebuilds the radial feeders,
+ * - generator status may change the bus types, which rebuilds the Jacobian,
+ * - switching on a branch or generator that was out of service in the
+ *   case, and so not in the internal data, converts the case again.
+ *
+ * Each solve starts from the last converged voltages. The solved case,
+ * in external indexing as returned by runpf, is only built when
+ * requested. Outages that leave part of the network disconnected are not
+ * detected and cause the power flow to fail.
+ *
+ * The power flow algorithm is selected by PF_ALG, as for runpf. Generator
+ * reactive power limits (ENFORCE_Q_LIMS) and the DC power flow are not
+ * supported. Sessions are not thread-safe.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class PowerFlowSession {
+
+	/* the case, external indexing, with all changes applied */
+	private final JPC casedata;
+
+	/* the case, internal indexing */
+	private JPC jpc;
+	private YbusUpdater Y;
+	private int ref;
+	private int[] pv, pq;
+	private DComplexMatrix1D Sbus, V;
+
+	/* solver state */
+	private PFSolver solver;
+
+	/* internal element for each row of the case, -1 if not in the internal data */
+	private int[] busInt, branchInt, genInt;
+
+	/* what the changes since the last solve invalidate */
+	private boolean rebuild, types, branches, injections;
+
+	/* last solution */
+	private boolean success;
+	private int iterations;
+	private JPC results;
+
+	/**
+	 *
+	 * @param casedata case, not modified
+	 * @param jpopt JPOWER options vector
+	 */
+	public PowerFlowSession(JPC casedata, Map<String, Double> jpopt) {
+		Branch branch;
+		int nl;
+
+		solver = new PFSolver("PowerFlowSession", jpopt);
+
+		/* read data and add zero columns to branch for flows if needed */
+		this.casedata = loadcase(casedata);
+		branch = this.casedata.branch;
+		if (branch.Qt == null) {
+			nl = branch.size();
+			branch.Pf = DoubleFactory1D.dense.make(nl);
+			branch.Qf = DoubleFactory1D.dense.make(nl);
+			branch.Pt = DoubleFactory1D.dense.make(nl);
+			branch.Qt = DoubleFactory1D.dense.make(nl);
+		}
+
+		build();
+	}
+
+	/**
+	 * Converts the case to internal indexing and builds the network
+	 * matrices, bus types, injections and solver state.
+	 */
+	private void build() {
+		Order o;
+		Bus bus;
+		Gen gen;
+
+		jpc = ext2int(casedata.copy());
+		bus = jpc.bus;
+		gen = jpc.gen;
+
+		/* internal element for each row of the case */
+		o = jpc.order;
+		busInt = PFSolver.index(o.bus.status.on, casedata.bus.size());
+		branchInt = PFSolver.index(o.branch.status.on, casedata.branch.size());
+		genInt = PFSolver.index(PFSolver.genRows(o, gen.size()), casedata.gen.size());
+
+		Y = new YbusUpdater(jpc.baseMVA, bus, jpc.branch);
+		Sbus = Djp_makeSbus.makeSbus(jpc.baseMVA, bus, gen);
+
+		V = PFSolver.initialVoltages(bus, gen);
+
+		rebuild = false;
+		types = true;
+		branches = true;
+		injections = false;
+	}
+
+	/**
+	 *
+	 * @param row row of the bus table
+	 * @param Pd real power demand (MW)
+	 * @param Qd reactive power demand (MVAr)
+	 */
+	public void setLoad(int row, double Pd, double Qd) {
+		int i = busInt[row];
+
+		casedata.bus.Pd.setQuick(row, Pd);
+		casedata.bus.Qd.setQuick(row, Qd);
+		if (i >= 0) {
+			jpc.bus.Pd.setQuick(i, Pd);
+			jpc.bus.Qd.setQuick(i, Qd);
+			injections = true;
+		}
+		results = null;
+	}
+
+	/**
+	 *
+	 * @param row row of the gen table
+	 * @param Pg real power output (MW)
+	 * @param Qg reactive power output (MVAr), used only at PQ buses
+	 */
+	public void setGenPower(int row, double Pg, double Qg) {
+		int k = genInt[row];
+
+		casedata.gen.Pg.setQuick(row, Pg);
+		casedata.gen.Qg.setQuick(row, Qg);
+		if (k >= 0) {
+			jpc.gen.Pg.setQuick(k, Pg);
+			jpc.gen.Qg.setQuick(k, Qg);
+			injections = true;
+		}
+		results = null;
+	}
+
+	/**
+	 *
+	 * @param row row of the gen table
+	 * @param status > 0 - in service, <= 0 - out of service
+	 */
+	public void setGenStatus(int row, int status) {
+		int k = genInt[row];
+
+		casedata.gen.gen_status.setQuick(row, status);
+		if (k >= 0) {
+			jpc.gen.gen_status.setQuick(k, status);
+			types = true;
+			injections = true;
+		} else if (status > 0) {
+			rebuild = true;
+		}
+		results = null;
+	}
+
+	/**
+	 *
+	 * @param row row of the branch table
+	 * @param status 1 - in service, 0 - out of service
+	 */
+	public void setBranchStatus(int row, int status) {
+		int l = branchInt[row];
+
+		casedata.branch.br_status.setQuick(row, status);
+		if (l >= 0) {
+			jpc.branch.br_status.setQuick(l, status);
+			Y.setBranchStatus(l, status);
+			branches = true;
+		} else if (status != 0) {
+			rebuild = true;
+		}
+		results = null;
+	}
+
+	/**
+	 * Solves the power flow for the current data, starting from the last
+	 * converged voltages.
+	 *
+	 * @return true if the power flow converged.
+	 */
+	public boolean solve() {
+		IntMatrix1D[] bt;
+		Object[] soln;
+
+		if (rebuild) {
+			/* start from the current voltages of the buses in the internal data */
+			double[] v = V.toArray();
+			int i;
+			for (int row = 0; row < busInt.length; row++) {
+				if ((i = busInt[row]) < 0)
+					continue;
+				casedata.bus.Vm.setQuick(row, Math.hypot(v[2 * i], v[2 * i + 1]));
+				casedata.bus.Va.setQuick(row, Math.toDegrees(Math.atan2(v[2 * i + 1], v[2 * i])));
+			}
+			build();
+		}
+
+		if (types) {
+			bt = bustypes(jpc.bus, jpc.gen);
+			ref = bt[0].get(0);
+			pv = bt[1].toArray();
+			pq = bt[2].toArray();
+		}
+		if (types || branches)
+			solver = solver.update(jpc.baseMVA, Y.getBus(), Y.getBranch(), Y.getYbus(),
+					ref, pv, pq, types, branches);
+		if (injections)
+			Sbus = Djp_makeSbus.makeSbus(jpc.baseMVA, jpc.bus, jpc.gen);
+		types = branches = injections = false;
+
+		soln = solver.solve(Sbus, V);
+
+		success = (Boolean) soln[1];
+		iterations = (Integer) soln[2];
+		if (success)
+			V = (DComplexMatrix1D) soln[0];
+		results = null;
+
+		return success;
+	}
+
+	/**
+	 *
+	 * @return true if the last solve converged.
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 *
+	 * @return number of iterations of the last solve.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 *
+	 * @return bus voltages of the last converged solve, or the initial
+	 * voltages, internal bus indexing. Should not be modified.
+	 */
+	public DComplexMatrix1D getV() {
+		return V;
+	}
+
+	/**
+	 *
+	 * @return the case with the current data and the solution of the last
+	 * solve, external indexing, as returned by runpf. Built on the first
+	 * call after each solve or change and should not be modified.
+	 */
+	public JPC getCase() {
+		IntMatrix1D status;
+		Object[] data;
+
+		if (results != null)
+			return results;
+
+		results = jpc.copy();
+		data = Djp_pfsoln.pfsoln(jpc.baseMVA, jpc.bus, jpc.gen, jpc.branch,
+				Y.getYbus(), Y.getYf(), Y.getYt(), V, ref, pv, pq);
+		results.bus = (Bus) data[0];
+		results.gen = (Gen) data[1];
+		results.branch = (Branch) data[2];
+		results.success = success;
+
+		/* changes to elements not in the internal data are kept in the case */
+		results.order.external.bus = casedata.bus;
+		results.order.external.gen = casedata.gen;
+		results.order.external.branch = casedata.branch;
+		results = int2ext(results);
+
+		/* zero out result fields of out-of-service gens & branches */
+		status = casedata.gen.gen_status;
+		for (int k = 0; k < status.size(); k++) {
+			if (status.getQuick(k) <= 0) {
+				results.gen.Pg.setQuick(k, 0);
+				results.gen.Qg.setQuick(k, 0);
+			}
+		}
+		status = casedata.branch.br_status;
+		for (int l = 0; l < status.size(); l++) {
+			if (status.getQuick(l) == 0) {
+				results.branch.Pf.setQuick(l, 0);
+				results.branch.Qf.setQuick(l, 0);
+				results.branch.Pt.setQuick(l, 0);
+				results.branch.Qt.setQuick(l, 0);
+			}
+		}
+
+		return results;
+	}
+
+}
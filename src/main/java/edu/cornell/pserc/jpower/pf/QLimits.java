@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+
+/**
+ * Generator reactive power limits of the PV buses, for switching between
+ * PV and PQ within a power flow solve (ENFORCE_Q_LIMS = 3).
+ *
+ * The limits of the in-service generators at each PV bus are summed and
+ * net of the bus reactive demand, so they bound the reactive power
+ * injection of the bus. Once the mismatch is below SWITCH_TOL, a PV bus
+ * whose injection exceeds a limit becomes a PQ bus with its injection
+ * held at that limit. A bus held at its upper limit returns to PV if its
+ * voltage rises above the set point, and one at its lower limit if its
+ * voltage falls below it, at most MAX_SWITCHES times, after which it
+ * stays at its limit. The reference bus is not limited. Instances hold
+ * the state of a single solve.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class QLimits {
+
+	/** mismatch (p.u.) below which limits are checked */
+	public static final double SWITCH_TOL = 1e-3;
+
+	/** number of times a bus may return to PV */
+	public static final int MAX_SWITCHES = 2;
+
+	private final int[] pv;
+
+	/** limits of the reactive power injection of each PV bus (p.u.) */
+	private final double[] Qmin, Qmax;
+
+	/** voltage set point of each PV bus, recorded by start() */
+	private final double[] Vset;
+
+	/** 0 - regulating voltage, 1 - at upper limit, -1 - at lower limit */
+	private final int[] state;
+
+	private final int[] switches;
+
+	/**
+	 *
+	 * @param baseMVA
+	 * @param bus bus data, internal bus indexing
+	 * @param gen generator data, internal bus indexing
+	 * @param pv PV bus indices
+	 */
+	public QLimits(double baseMVA, Bus bus, Gen gen, int[] pv) {
+		int nb = bus.size(), b;
+		double[] qmin = new double[nb], qmax = new double[nb];
+
+		for (int k = 0; k < gen.size(); k++) {
+			if (gen.gen_status.getQuick(k) <= 0)
+				continue;
+			b = gen.gen_bus.getQuick(k);
+			qmin[b] += gen.Qmin.getQuick(k);
+			qmax[b] += gen.Qmax.getQuick(k);
+		}
+
+		this.pv = pv.clone();
+		Qmin = new double[pv.length];
+		Qmax = new double[pv.length];
+		Vset = new double[pv.length];
+		state = new int[pv.length];
+		switches = new int[pv.length];
+		for (int j = 0; j < pv.length; j++) {
+			b = pv[j];
+			Qmin[j] = (qmin[b] - bus.Qd.getQuick(b)) / baseMVA;
+			Qmax[j] = (qmax[b] - bus.Qd.getQuick(b)) / baseMVA;
+		}
+	}
+
+	/**
+	 *
+	 * @return the PV bus indices, as given on construction.
+	 */
+	public int[] pv() {
+		return pv;
+	}
+
+	/**
+	 *
+	 * @param j index in the PV list
+	 * @return 0 if the bus is regulating its voltage, 1 if it is at its
+	 * upper limit or -1 if it is at its lower limit.
+	 */
+	public int state(int j) {
+		return state[j];
+	}
+
+	/**
+	 * Switches PV buses at their limits to PQ and limited buses back to
+	 * PV. The reactive injection of a bus switched to PQ is set to its
+	 * limit in Q and the voltage magnitude of a bus switched back to PV
+	 * is reset to its set point in Vm.
+	 *
+	 * @param Qinj computed reactive power injection of each bus (p.u.)
+	 * @param Vm voltage magnitude of each bus (p.u.)
+	 * @param Q specified reactive power injection of each bus (p.u.),
+	 * updated in place
+	 * @return number of buses switched.
+	 */
+	public int update(double[] Qinj, double[] Vm, double[] Q) {
+		int n = 0, b;
+
+		for (int j = 0; j < pv.length; j++) {
+			b = pv[j];
+			if (state[j] == 0) {
+				if (Qinj[b] > Qmax[j]) {
+					state[j] = 1;
+				} else if (Qinj[b] < Qmin[j]) {
+					state[j] = -1;
+				} else {
+					continue;
+				}
+				Q[b] = (state[j] > 0) ? Qmax[j] : Qmin[j];
+				n++;
+			} else if (switches[j] < MAX_SWITCHES
+					&& ((state[j] > 0 && Vm[b] > Vset[j]) || (state[j] < 0 && Vm[b] < Vset[j]))) {
+				state[j] = 0;
+				Vm[b] = Vset[j];
+				switches[j]++;
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Records the voltage set points without checking limits. Called by
+	 * the solvers before the first iteration.
+	 *
+	 * @param Vm initial voltage magnitude of each bus (p.u.)
+	 */
+	public void start(double[] Vm) {
+		for (int j = 0; j < pv.length; j++)
+			Vset[j] = Vm[pv[j]];
+	}
+
+}
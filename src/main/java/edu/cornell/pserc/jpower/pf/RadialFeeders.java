@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.concurrent.Future;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+
+/**
+ * Radial topology of a network, for the backward/forward sweep power
+ * flow.
+ *
+ * The in-service branches are searched breadth-first from the reference
+ * bus. Each branch from the reference bus starts a feeder and the buses
+ * of each feeder are stored contiguously in the search order, with every
+ * bus after its parent, so the feeders may be swept independently of
+ * each other. For each bus the branch to its parent is stored as in the
+ * pi model of makeYbus, series impedance, line charging split between
+ * the two ends and an ideal transformer at the "from" end, so tap
+ * ratios and phase shifts are included and the solution is that of the
+ * full AC power flow equations.
+ *
+ * A sweep makes three passes over the buses and does not allocate, so the
+ * search order is built once and reused for all iterations.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class RadialFeeders {
+
+	/** reference (root) bus */
+	public final int ref;
+
+	private int nb, n, nf;
+
+	/* buses other than the root, in breadth-first order, and their parents */
+	private int[] order, parent;
+
+	/* position in order of the first bus of each feeder */
+	private int[] fp;
+
+	/* series impedance, half the line charging and complex tap ratio of the
+	 * branch to the parent, and bus shunt admittance, indexed by bus */
+	private double[] Zr, Zi, Bh, Tr, Ti, Yshr, Yshi;
+
+	/* is the transformer of the branch to the parent at the parent end */
+	private boolean[] tapParent;
+
+	/* imaginary part of the series impedance of the path to the root */
+	private double[] Xth;
+
+	private RadialFeeders(int ref) {
+		this.ref = ref;
+	}
+
+	/**
+	 * Finds the feeders of a radial network and the breadth-first order of
+	 * their buses. Returns null if the in-service branches form a loop,
+	 * including parallel branches, or if some bus that is not isolated
+	 * can not be reached from the reference bus.
+	 *
+	 * @param baseMVA
+	 * @param bus
+	 * @param branch
+	 * @param ref reference bus index
+	 * @return the radial topology, or null if the network is not radial.
+	 */
+	public static RadialFeeders build(double baseMVA, Bus bus, Branch branch, int ref) {
+		int nb, nl, i, j, k, l, c, head, tail, p, q;
+		int[] f, t, status, type, Ap, Ab, count, via;
+		double r, x, tap;
+		double[] Gs, Bs, br_r, br_x, br_b, br_tap, br_shift, Rth;
+		boolean[] seen;
+		RadialFeeders net;
+
+		nb = bus.size();
+		nl = branch.size();
+		f = Columns.elements(branch.f_bus);
+		t = Columns.elements(branch.t_bus);
+		status = Columns.elements(branch.br_status);
+		type = Columns.elements(bus.bus_type);
+
+		/* incidence lists of the in-service branches, compressed by bus */
+		count = new int[nb];
+		for (l = 0; l < nl; l++) {
+			if (status[l] == 0)
+				continue;
+			if (f[l] == t[l])
+				return null;
+			count[f[l]]++;
+			count[t[l]]++;
+		}
+		Ap = new int[nb + 1];
+		for (k = 0; k < nb; k++)
+			Ap[k + 1] = Ap[k] + count[k];
+		Ab = new int[Ap[nb]];
+		for (k = 0; k < nb; k++)
+			count[k] = Ap[k];
+		for (l = 0; l < nl; l++) {
+			if (status[l] == 0)
+				continue;
+			Ab[count[f[l]]++] = l;
+			Ab[count[t[l]]++] = l;
+		}
+
+		net = new RadialFeeders(ref);
+		net.nb = nb;
+		net.order = new int[nb];
+		net.parent = new int[nb];
+		net.fp = new int[Ap[ref + 1] - Ap[ref] + 1];
+		via = new int[nb];
+		seen = new boolean[nb];
+
+		/* breadth-first search of each feeder in turn */
+		seen[ref] = true;
+		net.parent[ref] = -1;
+		tail = 0;
+		for (p = Ap[ref]; p < Ap[ref + 1]; p++) {
+			l = Ab[p];
+			c = (f[l] == ref) ? t[l] : f[l];
+			if (seen[c])
+				return null;		// parallel branches
+			net.fp[net.nf++] = tail;
+			seen[c] = true;
+			net.parent[c] = ref;
+			via[c] = l;
+			net.order[tail++] = c;
+			for (head = tail - 1; head < tail; head++) {
+				i = net.order[head];
+				for (q = Ap[i]; q < Ap[i + 1]; q++) {
+					l = Ab[q];
+					if (l == via[i])
+						continue;
+					j = (f[l] == i) ? t[l] : f[l];
+					if (seen[j])
+						return null;	// loop
+					seen[j] = true;
+					net.parent[j] = i;
+					via[j] = l;
+					net.order[tail++] = j;
+				}
+			}
+		}
+		net.fp[net.nf] = tail;
+		net.n = tail;
+
+		for (k = 0; k < nb; k++)
+			if (!seen[k] && type[k] != JPC.NONE)
+				return null;		// not connected to the reference bus
+
+		/* pi model of the branch to the parent */
+		br_r = Columns.elements(branch.br_r);
+		br_x = Columns.elements(branch.br_x);
+		br_b = Columns.elements(branch.br_b);
+		br_tap = Columns.elements(branch.tap);
+		br_shift = Columns.elements(branch.shift);
+		net.Zr = new double[nb];
+		net.Zi = new double[nb];
+		net.Bh = new double[nb];
+		net.Tr = new double[nb];
+		net.Ti = new double[nb];
+		net.tapParent = new boolean[nb];
+		net.Xth = new double[nb];
+		Rth = new double[nb];
+		for (i = 0; i < net.n; i++) {
+			k = net.order[i];
+			l = via[k];
+			r = br_r[l];
+			x = br_x[l];
+			tap = (br_tap[l] != 0) ? br_tap[l] : 1;
+			net.Zr[k] = r;
+			net.Zi[k] = x;
+			net.Bh[k] = br_b[l] / 2;
+			net.Tr[k] = tap * Math.cos(Math.toRadians(br_shift[l]));
+			net.Ti[k] = tap * Math.sin(Math.toRadians(br_shift[l]));
+			net.tapParent[k] = f[l] != k;
+
+			/* path to the root, parents come first */
+			Rth[k] = Rth[net.parent[k]] + r;
+			net.Xth[k] = net.Xth[net.parent[k]] + x;
+		}
+		for (k = 0; k < nb; k++)
+			if (net.Xth[k] <= 0)
+				net.Xth[k] = Math.max(Rth[k], 1e-6);
+
+		/* bus shunt admittances, as in makeYbus */
+		Gs = Columns.elements(bus.Gs);
+		Bs = Columns.elements(bus.Bs);
+		net.Yshr = new double[nb];
+		net.Yshi = new double[nb];
+		for (k = 0; k < nb; k++) {
+			net.Yshr[k] = Gs[k] / baseMVA;
+			net.Yshi[k] = Bs[k] / baseMVA;
+		}
+
+		return net;
+	}
+
+	/**
+	 * Performs one backward/forward sweep of all feeders. The current
+	 * drawn by each bus, -conj(S(k) / V(k)) + Ysh(k) * V(k), and the
+	 * currents of the branches below it are summed towards the root,
+	 * adding the line charging current and the transformer ratio at each
+	 * end of each branch, to give the current through the series
+	 * impedance of each branch. Then the voltage of each bus is updated
+	 * from that of its parent and the voltage drop across the series
+	 * impedance. The voltage of the reference bus is not changed. Feeders
+	 * are swept in parallel for large networks.
+	 *
+	 * @param Vr real part of the bus voltages, updated
+	 * @param Vi imaginary part of the bus voltages, updated
+	 * @param P real power injection of each bus (p.u.)
+	 * @param Q reactive power injection of each bus (p.u.)
+	 * @param Ir workspace of length nb
+	 * @param Ii workspace of length nb
+	 */
+	public void sweep(final double[] Vr, final double[] Vi, final double[] P,
+			final double[] Q, final double[] Ir, final double[] Ii) {
+		int nthreads = ConcurrencyUtils.getNumberOfThreads();
+
+		if (nthreads > 1 && nf > 1 && n >= ConcurrencyUtils.getThreadsBeginN_1D()) {
+			nthreads = Math.min(nthreads, nf);
+			Future<?>[] futures = new Future<?>[nthreads];
+			int first, last = 0;
+			for (int j = 0; j < nthreads; j++) {
+				/* whole feeders, of about n / nthreads buses each */
+				first = last;
+				last = first + 1;
+				while (last < nf - (nthreads - 1 - j)
+						&& fp[last] < (long) n * (j + 1) / nthreads)
+					last++;
+				if (j == nthreads - 1)
+					last = nf;
+				final int a = fp[first];
+				final int b = fp[last];
+				futures[j] = ConcurrencyUtils.submit(new Runnable() {
+					public void run() {
+						sweep(a, b, Vr, Vi, P, Q, Ir, Ii);
+					}
+				});
+			}
+			ConcurrencyUtils.waitForCompletion(futures);
+		} else {
+			sweep(0, n, Vr, Vi, P, Q, Ir, Ii);
+		}
+	}
+
+	/**
+	 * Sweeps the buses order[first:last], which must be whole feeders.
+	 * On return Ir and Ii hold the series current of the branch from
+	 * the parent of each bus.
+	 */
+	private void sweep(int first, int last, double[] Vr, double[] Vi,
+			double[] P, double[] Q, double[] Ir, double[] Ii) {
+		int i, k, p;
+		double e, f, m2, tr, ti, t2, ir, ii, er, ei;
+
+		/* current drawn by each bus, conj(-S / V) + Ysh * V */
+		for (i = first; i < last; i++) {
+			k = order[i];
+			e = Vr[k];
+			f = Vi[k];
+			m2 = e * e + f * f;
+			Ir[k] = -(P[k] * e + Q[k] * f) / m2 + Yshr[k] * e - Yshi[k] * f;
+			Ii[k] = -(P[k] * f - Q[k] * e) / m2 + Yshr[k] * f + Yshi[k] * e;
+		}
+
+		/* backward sweep, from the current into the subtree of each bus to
+		 * the series current of its branch and the current drawn from the
+		 * parent */
+		for (i = last - 1; i >= first; i--) {
+			k = order[i];
+			p = parent[k];
+			tr = Tr[k];
+			ti = Ti[k];
+			t2 = tr * tr + ti * ti;
+			if (tapParent[k]) {
+				/* series current, I + j b/2 * V(k) */
+				ir = Ir[k] - Bh[k] * Vi[k];
+				ii = Ii[k] + Bh[k] * Vr[k];
+				Ir[k] = ir;
+				Ii[k] = ii;
+				if (p == ref)
+					continue;
+				/* current at the parent side of the series impedance,
+				 * I + j b/2 * V(p) / t, through the transformer, / conj(t) */
+				er = (Vr[p] * tr + Vi[p] * ti) / t2;
+				ei = (Vi[p] * tr - Vr[p] * ti) / t2;
+				ir -= Bh[k] * ei;
+				ii += Bh[k] * er;
+				Ir[p] += (ir * tr - ii * ti) / t2;
+				Ii[p] += (ii * tr + ir * ti) / t2;
+			} else {
+				/* through the transformer, I * conj(t), plus j b/2 * V(k) / t */
+				er = (Vr[k] * tr + Vi[k] * ti) / t2;
+				ei = (Vi[k] * tr - Vr[k] * ti) / t2;
+				ir = Ir[k] * tr + Ii[k] * ti - Bh[k] * ei;
+				ii = Ii[k] * tr - Ir[k] * ti + Bh[k] * er;
+				Ir[k] = ir;
+				Ii[k] = ii;
+				if (p == ref)
+					continue;
+				/* current drawn from the parent, I + j b/2 * V(p) */
+				Ir[p] += ir - Bh[k] * Vi[p];
+				Ii[p] += ii + Bh[k] * Vr[p];
+			}
+		}
+
+		/* forward sweep, subtract the drop across each series impedance */
+		for (i = first; i < last; i++) {
+			k = order[i];
+			p = parent[k];
+			tr = Tr[k];
+			ti = Ti[k];
+			t2 = tr * tr + ti * ti;
+			ir = Ir[k];
+			ii = Ii[k];
+			if (tapParent[k]) {
+				/* V(k) = V(p) / t - Z * I */
+				Vr[k] = (Vr[p] * tr + Vi[p] * ti) / t2 - (Zr[k] * ir - Zi[k] * ii);
+				Vi[k] = (Vi[p] * tr - Vr[p] * ti) / t2 - (Zr[k] * ii + Zi[k] * ir);
+			} else {
+				/* V(k) = t * (V(p) - Z * I) */
+				er = Vr[p] - (Zr[k] * ir - Zi[k] * ii);
+				ei = Vi[p] - (Zr[k] * ii + Zi[k] * ir);
+				Vr[k] = er * tr - ei * ti;
+				Vi[k] = er * ti + ei * tr;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param k bus index
+	 * @return the reactance of the path from the bus to the root, or its
+	 * resistance if the reactance is not positive, for the voltage
+	 * control of PV buses.
+	 */
+	public double pathReactance(int k) {
+		return Xth[k];
+	}
+
+	/**
+	 *
+	 * @return the number of feeders.
+	 */
+	public int feeders() {
+		return nf;
+	}
+
+	/**
+	 *
+	 * @return the number of buses, including the reference bus.
+	 */
+	public int size() {
+		return nb;
+	}
+
+}
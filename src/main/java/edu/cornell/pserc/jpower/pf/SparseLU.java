@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsn;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_lsolve;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_lu;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_sqr;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_usolve;
+
+/**
+ * Sparse LU factorization with reusable symbolic analysis.
+ *
+ * The fill-reducing ordering and symbolic structure depend only on the
+ * sparsity pattern of the matrix, so they are computed once and each
+ * refactorization performs only the numeric factorization. Symbolic
+ * analyses are also kept in a small cache keyed on the sparsity pattern,
+ * so that repeated solves of the same network skip the analysis
+ * entirely.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class SparseLU {
+
+	/** fill-reducing ordering, amd(A+A') */
+	public static final int ORDER = 1;
+
+	/** partial pivoting tolerance */
+	public static final double TOL = 1.0;
+
+	/** maximum number of symbolic analyses kept in the cache */
+	public static final int CACHE_SIZE = 16;
+
+	private static final Map<Pattern, Dcss> cache =
+		new LinkedHashMap<Pattern, Dcss>(CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Pattern, Dcss> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	private int n;
+	private Pattern pattern;
+	private Dcss S;
+	private Dcsn N;
+	private double[] x;
+
+	/**
+	 * Performs (or looks up) the symbolic analysis of the given matrix.
+	 * The matrix values are not used.
+	 *
+	 * @param A square matrix in compressed-column form
+	 */
+	public SparseLU(Dcs A) {
+		n = A.n;
+		pattern = new Pattern(A);
+		S = symbolic(pattern, A);
+		x = new double[n];
+	}
+
+	/**
+	 * Numeric factorization of a matrix with the same sparsity pattern as
+	 * that analysed on construction.
+	 *
+	 * @param A square matrix in compressed-column form
+	 * @return false if the matrix is singular
+	 */
+	public boolean factor(Dcs A) {
+		N = Dcs_lu.cs_lu(A, S, TOL);
+		return N != null;
+	}
+
+	/**
+	 * Solves A * x = b, using the most recent factorization.
+	 *
+	 * @param b right-hand side, overwritten with the solution
+	 */
+	public void solve(double[] b) {
+		solve(b, x);
+	}
+
+	/**
+	 * Solves A * x = b, using the most recent factorization. May be called
+	 * from several threads at once, each with its own workspace.
+	 *
+	 * @param b right-hand side, overwritten with the solution
+	 * @param x workspace of length n
+	 */
+	public void solve(double[] b, double[] x) {
+		Dcs_ipvec.cs_ipvec(N.pinv, b, x, n);	// x = b(p)
+		Dcs_lsolve.cs_lsolve(N.L, x);			// x = L\x
+		Dcs_usolve.cs_usolve(N.U, x);			// x = U\x
+		Dcs_ipvec.cs_ipvec(S.q, x, b, n);		// b(q) = x
+	}
+
+	/**
+	 *
+	 * @param A
+	 * @return true if A has the sparsity pattern analysed on construction.
+	 * Compares the column pointers and row indices directly, without
+	 * allocating or touching the cache.
+	 */
+	public boolean matches(Dcs A) {
+		return pattern.matches(A);
+	}
+
+	/**
+	 *
+	 * @return true if a numeric factorization is available.
+	 */
+	public boolean isFactored() {
+		return N != null;
+	}
+
+	/**
+	 *
+	 * @param A
+	 * @return the symbolic analysis of A, from the cache if available.
+	 */
+	public static Dcss symbolic(Dcs A) {
+		return symbolic(new Pattern(A), A);
+	}
+
+	private static Dcss symbolic(Pattern key, Dcs A) {
+		Dcss S;
+
+		synchronized (cache) {
+			S = cache.get(key);
+		}
+		if (S == null) {
+			S = Dcs_sqr.cs_sqr(ORDER, A, false);
+			synchronized (cache) {
+				cache.put(key, S);
+			}
+		}
+		return S;
+	}
+
+	/**
+	 * Removes all cached symbolic analyses.
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sparsity pattern of a compressed-column matrix, used as cache key.
+	 */
+	private static class Pattern {
+
+		private int m, n, hash;
+		private int[] p, i;
+
+		Pattern(Dcs A) {
+			m = A.m;
+			n = A.n;
+			p = Arrays.copyOf(A.p, n + 1);
+			i = Arrays.copyOf(A.i, p[n]);
+			hash = 31 * (31 * (31 * m + n) + Arrays.hashCode(p)) + Arrays.hashCode(i);
+		}
+
+		/**
+		 * Same as equals(new Pattern(A)), without copying A.
+		 */
+		boolean matches(Dcs A) {
+			if (A.m != m || A.n != n || A.p[n] != p[n])
+				return false;
+			for (int k = 0; k <= n; k++)
+				if (A.p[k] != p[k])
+					return false;
+			for (int k = 0; k < p[n]; k++)
+				if (A.i[k] != i[k])
+					return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Pattern))
+				return false;
+			Pattern other = (Pattern) obj;
+			return hash == other.hash && m == other.m && n == other.n
+					&& Arrays.equals(p, other.p) && Arrays.equals(i, other.i);
+		}
+	}
+
+}
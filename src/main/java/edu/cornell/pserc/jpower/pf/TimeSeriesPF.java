@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Map;
+
+import cern.colt.matrix.tdcomplex.DComplexFactory1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import static edu.cornell.pserc.jpower.Djp_bustypes.bustypes;
+import static edu.cornell.pserc.jpower.Djp_ext2int.ext2int;
+import static edu.cornell.pserc.jpower.Djp_loadcase.loadcase;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.jpc.Order;
+import edu.cornell.pserc.jpower.jpc.Profile;
+
+/**
+ * Solves a sequence of operating points given by load and generation
+ * profiles.
+ *
+ * The case is converted to internal indexing and Ybus, Yf, Yt, the bus
+ * types and the Jacobian, LU or FDPF factors are built once, on
+ * construction, since a profile changes only the bus power injections.
+ * Each step is started from the voltages of the last step that converged
+ * and its bus voltages and branch flows are passed to a sink, in the
+ * rows of the base case, as soon as it is solved. The arrays holding
+ * them are reused from step to step, so memory use does not grow with
+ * the number of steps.
+ *
+ * The power flow algorithm is selected by PF_ALG, as for runpf. Generator
+ * reactive power limits (ENFORCE_Q_LIMS) and the DC power flow are not
+ * supported.
+ *
+ * @author Richard Lincoln
+ *
+ */
+@SuppressWarnings("static-access")
+public class TimeSeriesPF {
+
+	/**
+	 * Receives the solution of each step.
+	 */
+	public interface Sink {
+
+		/**
+		 * Called in step order, from the thread running the profile. The
+		 * step and its arrays are overwritten by the next step.
+		 *
+		 * @param step solution of the step
+		 */
+		void step(Step step);
+
+	}
+
+	/**
+	 * Solution of a time step. Arrays are indexed by the rows of the bus
+	 * and branch tables of the base case and are zero for isolated buses
+	 * and out-of-service branches.
+	 */
+	public static class Step {
+
+		/** index of the step in the profile */
+		public int t;
+
+		/** true if the power flow converged */
+		public boolean success;
+
+		/** number of iterations performed */
+		public int iterations;
+
+		/** bus voltage magnitudes (p.u.) and angles (degrees) */
+		public final double[] Vm, Va;
+
+		/** real and reactive power flows at the "from" and "to" ends (MW, MVAr) */
+		public final double[] Pf, Qf, Pt, Qt;
+
+		Step(int nb, int nl) {
+			Vm = new double[nb];
+			Va = new double[nb];
+			Pf = new double[nl];
+			Qf = new double[nl];
+			Pt = new double[nl];
+			Qt = new double[nl];
+		}
+
+	}
+
+	/* base case, internal indexing */
+	private final double baseMVA;
+	private final int nb;
+	private final int[] f, t, gbus;
+	private final DComplexMatrix2D Yf, Yt;
+	private final DComplexMatrix1D V0;
+
+	/* solver state, built once */
+	private final PFSolver solver;
+
+	/* base injections */
+	private final double[] Pd, Qd, Pg, Qg;
+
+	/* rows of the base case for each internal element and vice versa */
+	private final int[] busRow, branchRow, busInt, genInt;
+	private final int nbRows, nlRows;
+
+	/**
+	 *
+	 * @param casedata base case
+	 * @param jpopt JPOWER options vector
+	 */
+	public TimeSeriesPF(JPC casedata, Map<String, Double> jpopt) {
+		int ng, ref;
+		int[] pv, pq;
+		Order o;
+		JPC jpc;
+		Bus bus;
+		Gen gen;
+		Branch branch;
+		IntMatrix1D[] bt;
+		DComplexMatrix2D[] Y;
+		PFSolver pf;
+
+		pf = new PFSolver("TimeSeriesPF", jpopt);
+
+		/* convert to internal indexing */
+		casedata = loadcase(casedata);
+		nbRows = casedata.bus.size();
+		nlRows = casedata.branch.size();
+		jpc = ext2int(casedata);
+		baseMVA = jpc.baseMVA;
+		bus = jpc.bus;
+		gen = jpc.gen;
+		branch = jpc.branch;
+		nb = bus.size();
+		ng = gen.size();
+
+		/* bus types are fixed for all steps */
+		bt = bustypes(bus, gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		/* rows of the base case for each internal bus, branch and gen */
+		o = jpc.order;
+		busRow = o.bus.status.on.clone();
+		branchRow = o.branch.status.on.clone();
+		busInt = PFSolver.index(busRow, nbRows);
+		genInt = PFSolver.index(PFSolver.genRows(o, ng), casedata.gen.size());
+
+		f = branch.f_bus.toArray();
+		t = branch.t_bus.toArray();
+		gbus = gen.gen_bus.toArray();
+		Pd = bus.Pd.toArray();
+		Qd = bus.Qd.toArray();
+		Pg = gen.Pg.toArray();
+		Qg = gen.Qg.toArray();
+
+		/* network matrices and factors */
+		Y = Djp_makeYbus.makeYbus(baseMVA, bus, branch);
+		Yf = Y[1]; Yt = Y[2];
+		solver = pf.update(baseMVA, bus, branch, Y[0], ref, pv, pq, true, true);
+
+		/* initial state of the first step */
+		V0 = PFSolver.initialVoltages(bus, gen);
+	}
+
+	/**
+	 * Solves each step of a profile in turn.
+	 *
+	 * @param profile loads and generation at each step
+	 * @param sink receives the solution of each step
+	 * @return number of steps that converged.
+	 */
+	public int run(Profile profile, Sink sink) {
+		int ncols = profile.columns(), steps = profile.steps(), converged = 0, row, k;
+		int[] field = new int[ncols], index = new int[ncols];
+		double[][] values = new double[ncols][];
+		double[] pd = Pd.clone(), qd = Qd.clone(), pg = Pg.clone(), S = new double[2 * nb];
+		DComplexMatrix1D Sbus, V;
+		Step step;
+		Object[] soln;
+
+		/* internal element of each column, columns of isolated or out-of-service elements are dropped */
+		k = 0;
+		for (int c = 0; c < ncols; c++) {
+			row = profile.row(c);
+			if (profile.field(c) == Profile.PG) {
+				if (row < 0 || row >= genInt.length)
+					throw new IllegalArgumentException("TimeSeriesPF: no gen in row " + row);
+				index[k] = genInt[row];
+			} else {
+				if (row < 0 || row >= busInt.length)
+					throw new IllegalArgumentException("TimeSeriesPF: no bus in row " + row);
+				index[k] = busInt[row];
+			}
+			if (index[k] < 0)
+				continue;
+			field[k] = profile.field(c);
+			values[k++] = profile.values(c);
+		}
+		ncols = k;
+
+		Sbus = DComplexFactory1D.dense.make(nb);
+		step = new Step(nbRows, nlRows);
+		V = V0;
+		for (int s = 0; s < steps; s++) {
+			for (int c = 0; c < ncols; c++) {
+				switch (field[c]) {
+				case Profile.PD: pd[index[c]] = values[c][s]; break;
+				case Profile.QD: qd[index[c]] = values[c][s]; break;
+				default: pg[index[c]] = values[c][s];
+				}
+			}
+
+			/* complex bus power injections, as makeSbus */
+			for (int i = 0; i < nb; i++) {
+				S[2 * i] = -pd[i];
+				S[2 * i + 1] = -qd[i];
+			}
+			for (int g = 0; g < gbus.length; g++) {
+				S[2 * gbus[g]] += pg[g];
+				S[2 * gbus[g] + 1] += Qg[g];
+			}
+			for (int i = 0; i < 2 * nb; i++)
+				S[i] /= baseMVA;
+			Sbus.assign(S);
+
+			soln = solver.solve(Sbus, V);
+
+			step.t = s;
+			step.success = (Boolean) soln[1];
+			step.iterations = (Integer) soln[2];
+			result(step, (DComplexMatrix1D) soln[0]);
+			sink.step(step);
+
+			/* warm start the next step from the last converged solution */
+			if (step.success) {
+				V = (DComplexMatrix1D) soln[0];
+				converged++;
+			}
+		}
+
+		return converged;
+	}
+
+	/**
+	 * Scatters the voltages and branch flows to the rows of the base case.
+	 */
+	private void result(Step step, DComplexMatrix1D V) {
+		double[] v = V.toArray();
+
+		for (int i = 0; i < nb; i++) {
+			step.Vm[busRow[i]] = Math.hypot(v[2 * i], v[2 * i + 1]);
+			step.Va[busRow[i]] = Math.toDegrees(Math.atan2(v[2 * i + 1], v[2 * i]));
+		}
+		PFSolver.flows((SparseRCDComplexMatrix2D) Yf, f, branchRow, baseMVA, v, step.Pf, step.Qf);
+		PFSolver.flows((SparseRCDComplexMatrix2D) Yt, t, branchRow, baseMVA, v, step.Pt, step.Qt);
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import cern.colt.matrix.tdcomplex.DComplexFactory1D;
+import cern.colt.matrix.tdcomplex.DComplexMatrix1D;
+
+/**
+ * Bus voltages of a power flow solve, held in both polar and rectangular
+ * form as separate primitive arrays.
+ *
+ * The solvers update one form and convert to the other in place, with
+ * plain loops over the arrays, so no complex vectors are created between
+ * iterations. A Colt vector is only formed when the solution is returned.
+ * The two forms are only consistent after a conversion.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class VoltageState {
+
+	/** voltage magnitudes (p.u.) */
+	public final double[] Vm;
+
+	/** voltage angles (radians) */
+	public final double[] Va;
+
+	/** real parts of the voltages (p.u.) */
+	public final double[] Vr;
+
+	/** imaginary parts of the voltages (p.u.) */
+	public final double[] Vi;
+
+	/* interleaved workspace for Colt vectors */
+	private final double[] v;
+
+	/**
+	 *
+	 * @param nb number of buses
+	 */
+	public VoltageState(int nb) {
+		Vm = new double[nb];
+		Va = new double[nb];
+		Vr = new double[nb];
+		Vi = new double[nb];
+		v = new double[2 * nb];
+	}
+
+	/**
+	 *
+	 * @param V complex bus voltages, not modified
+	 */
+	public VoltageState(DComplexMatrix1D V) {
+		this((int) V.size());
+		assign(V);
+	}
+
+	/**
+	 *
+	 * @return number of buses.
+	 */
+	public int size() {
+		return Vm.length;
+	}
+
+	/**
+	 * Sets both forms from complex voltages.
+	 *
+	 * @param V complex bus voltages, not modified
+	 */
+	public void assign(DComplexMatrix1D V) {
+		split(V, Vr, Vi);
+		toPolar();
+	}
+
+	/**
+	 * Sets the rectangular form from the polar form.
+	 */
+	public void toRectangular() {
+		for (int k = 0; k < Vm.length; k++) {
+			Vr[k] = Vm[k] * Math.cos(Va[k]);
+			Vi[k] = Vm[k] * Math.sin(Va[k]);
+		}
+	}
+
+	/**
+	 * Sets the rectangular form of one bus from its polar form.
+	 *
+	 * @param k bus index
+	 */
+	public void toRectangular(int k) {
+		Vr[k] = Vm[k] * Math.cos(Va[k]);
+		Vi[k] = Vm[k] * Math.sin(Va[k]);
+	}
+
+	/**
+	 * Sets the polar form from the rectangular form.
+	 */
+	public void toPolar() {
+		for (int k = 0; k < Vm.length; k++) {
+			Vm[k] = Math.sqrt(Vr[k] * Vr[k] + Vi[k] * Vi[k]);
+			Va[k] = Math.atan2(Vi[k], Vr[k]);
+		}
+	}
+
+	/**
+	 *
+	 * @return a new complex vector of the voltages in rectangular form.
+	 */
+	public DComplexMatrix1D toComplex() {
+		DComplexMatrix1D V = DComplexFactory1D.dense.make(Vm.length);
+
+		for (int k = 0; k < Vm.length; k++) {
+			v[2 * k] = Vr[k];
+			v[2 * k + 1] = Vi[k];
+		}
+		V.assign(v);
+		return V;
+	}
+
+	/**
+	 * Splits a complex vector, such as Sbus, into its real and imaginary
+	 * parts.
+	 *
+	 * @param x complex vector
+	 * @param re real parts, output
+	 * @param im imaginary parts, output
+	 */
+	public static void split(DComplexMatrix1D x, double[] re, double[] im) {
+		double[] a = x.toArray();
+
+		for (int k = 0; k < re.length; k++) {
+			re[k] = a[2 * k];
+			im[k] = a[2 * k + 1];
+		}
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
+
+/**
+ * Bus and branch admittance matrices that can be updated in place.
+ *
+ * The matrices are built once with makeYbus. A change to the status,
+ * impedance, tap ratio or phase shift of a branch is a rank-2 update of
+ * Ybus, confined to the 2x2 block of the "from" and "to" buses, and
+ * changes a single row of each of Yf and Yt. A change to a bus shunt
+ * changes one diagonal element. Since makeYbus keeps explicit zeros for
+ * out-of-service branches, none of these change the sparsity pattern and
+ * the positions of the affected nonzeros are located once, on
+ * construction.
+ *
+ * The branch and bus data are copied, so the case passed in is not
+ * modified, and the matrices should only be changed through this class.
+ * Instances are not thread-safe: use copy() to give each thread its own
+ * matrices.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class YbusUpdater {
+
+	private final double baseMVA;
+	private final Bus bus;
+	private final Branch branch;
+
+	private final SparseRCDComplexMatrix2D Ybus, Yf, Yt;
+
+	/** nonzero values of Ybus, Yf and Yt, interleaved real and imaginary parts */
+	private final double[] Yx, Fx, Tx;
+
+	/** Yff, Yft, Ytf, Ytt of each branch, as assembled into Ybus */
+	private final double[] Ybr;
+
+	/** positions in Ybus of the Yff, Yft, Ytf and Ytt entries of each branch */
+	private final int[] pos;
+
+	/** positions in Ybus of the diagonal elements */
+	private final int[] diag;
+
+	/** positions in Yf and Yt of the "from" and "to" bus entries of each branch */
+	private final int[] fpos, tpos;
+
+	/**
+	 *
+	 * @param baseMVA
+	 * @param bus bus data, internal bus indexing
+	 * @param branch branch data, internal bus indexing
+	 */
+	public YbusUpdater(double baseMVA, Bus bus, Branch branch) {
+		int nb, nl, f, t;
+		int[] Yp, Yj, Fp;
+		DComplexMatrix2D[] Y;
+
+		this.baseMVA = baseMVA;
+		this.bus = bus.copy();
+		this.branch = branch.copy();
+
+		Y = Djp_makeYbus.makeYbus(baseMVA, this.bus, this.branch);
+		Ybus = (SparseRCDComplexMatrix2D) Y[0];
+		Yf = (SparseRCDComplexMatrix2D) Y[1];
+		Yt = (SparseRCDComplexMatrix2D) Y[2];
+		Yx = Ybus.getValues();
+		Fx = Yf.getValues();
+		Tx = Yt.getValues();
+
+		nb = this.bus.size();
+		nl = this.branch.size();
+		Ybr = new double[8 * nl];
+		Djp_makeYbus.branchAdmittances(0, nl, this.branch, Ybr);
+
+		/* locate the affected nonzeros */
+		Yp = Ybus.getRowPointers();
+		Yj = Ybus.getColumnIndexes();
+		Fp = Yf.getRowPointers();
+		pos = new int[4 * nl];
+		fpos = new int[nl];
+		tpos = new int[nl];
+		for (int l = 0; l < nl; l++) {
+			f = this.branch.f_bus.getQuick(l);
+			t = this.branch.t_bus.getQuick(l);
+			pos[4 * l] = find(Yp, Yj, f, f);
+			pos[4 * l + 1] = find(Yp, Yj, f, t);
+			pos[4 * l + 2] = find(Yp, Yj, t, f);
+			pos[4 * l + 3] = find(Yp, Yj, t, t);
+			fpos[l] = (f <= t) ? Fp[l] : Fp[l] + 1;
+			tpos[l] = (t <= f) ? Fp[l] : Fp[l] + 1;
+		}
+		diag = new int[nb];
+		for (int i = 0; i < nb; i++)
+			diag[i] = find(Yp, Yj, i, i);
+	}
+
+	private YbusUpdater(YbusUpdater other) {
+		baseMVA = other.baseMVA;
+		bus = other.bus.copy();
+		branch = other.branch.copy();
+		Yx = other.Yx.clone();
+		Fx = other.Fx.clone();
+		Tx = other.Tx.clone();
+		Ybus = copy(other.Ybus, Yx);
+		Yf = copy(other.Yf, Fx);
+		Yt = copy(other.Yt, Tx);
+		Ybr = other.Ybr.clone();
+		pos = other.pos;
+		diag = other.diag;
+		fpos = other.fpos;
+		tpos = other.tpos;
+	}
+
+	/**
+	 *
+	 * @return independent copy of the matrices and data, sharing only the
+	 * sparsity pattern.
+	 */
+	public YbusUpdater copy() {
+		return new YbusUpdater(this);
+	}
+
+	/**
+	 *
+	 * @return bus admittance matrix.
+	 */
+	public DComplexMatrix2D getYbus() {
+		return Ybus;
+	}
+
+	/**
+	 *
+	 * @return "from" end branch admittance matrix.
+	 */
+	public DComplexMatrix2D getYf() {
+		return Yf;
+	}
+
+	/**
+	 *
+	 * @return "to" end branch admittance matrix.
+	 */
+	public DComplexMatrix2D getYt() {
+		return Yt;
+	}
+
+	/**
+	 *
+	 * @return current bus data, should not be modified.
+	 */
+	public Bus getBus() {
+		return bus;
+	}
+
+	/**
+	 *
+	 * @return current branch data, should not be modified.
+	 */
+	public Branch getBranch() {
+		return branch;
+	}
+
+	/**
+	 * Takes a branch in or out of service.
+	 *
+	 * @param l branch index
+	 * @param status 1 - in service, 0 - out of service
+	 */
+	public void setBranchStatus(int l, int status) {
+		branch.br_status.setQuick(l, status);
+		update(l);
+	}
+
+	/**
+	 *
+	 * @param l branch index
+	 * @param r resistance (p.u.)
+	 * @param x reactance (p.u.)
+	 * @param b total line charging susceptance (p.u.)
+	 */
+	public void setBranchImpedance(int l, double r, double x, double b) {
+		branch.br_r.setQuick(l, r);
+		branch.br_x.setQuick(l, x);
+		branch.br_b.setQuick(l, b);
+		update(l);
+	}
+
+	/**
+	 *
+	 * @param l branch index
+	 * @param tap transformer off nominal turns ratio, 0 for a line
+	 * @param shift transformer phase shift angle (degrees)
+	 */
+	public void setBranchTap(int l, double tap, double shift) {
+		branch.tap.setQuick(l, tap);
+		branch.shift.setQuick(l, shift);
+		update(l);
+	}
+
+	/**
+	 *
+	 * @param i bus index
+	 * @param Gs shunt conductance (MW demanded at V = 1.0 p.u.)
+	 * @param Bs shunt susceptance (MVAr injected at V = 1.0 p.u.)
+	 */
+	public void setBusShunt(int i, double Gs, double Bs) {
+		int p = diag[i];
+
+		Yx[2 * p] += (Gs - bus.Gs.getQuick(i)) / baseMVA;
+		Yx[2 * p + 1] += (Bs - bus.Bs.getQuick(i)) / baseMVA;
+		bus.Gs.setQuick(i, Gs);
+		bus.Bs.setQuick(i, Bs);
+	}
+
+	/**
+	 * Recomputes the admittances of a branch and applies the difference
+	 * to Ybus. The rows of Yf and Yt are overwritten.
+	 */
+	private void update(int l) {
+		int p = 8 * l;
+		double[] old = Arrays.copyOfRange(Ybr, p, p + 8);
+
+		Djp_makeYbus.branchAdmittances(l, l + 1, branch, Ybr);
+
+		for (int k = 0; k < 4; k++) {
+			int q = pos[4 * l + k];
+			Yx[2 * q] += Ybr[p + 2 * k] - old[2 * k];
+			Yx[2 * q + 1] += Ybr[p + 2 * k + 1] - old[2 * k + 1];
+		}
+
+		Fx[2 * fpos[l]] = Fx[2 * fpos[l] + 1] = 0;
+		Fx[2 * tpos[l]] = Fx[2 * tpos[l] + 1] = 0;
+		Fx[2 * fpos[l]] += Ybr[p];
+		Fx[2 * fpos[l] + 1] += Ybr[p + 1];
+		Fx[2 * tpos[l]] += Ybr[p + 2];
+		Fx[2 * tpos[l] + 1] += Ybr[p + 3];
+
+		Tx[2 * fpos[l]] = Tx[2 * fpos[l] + 1] = 0;
+		Tx[2 * tpos[l]] = Tx[2 * tpos[l] + 1] = 0;
+		Tx[2 * fpos[l]] += Ybr[p + 4];
+		Tx[2 * fpos[l] + 1] += Ybr[p + 5];
+		Tx[2 * tpos[l]] += Ybr[p + 6];
+		Tx[2 * tpos[l] + 1] += Ybr[p + 7];
+	}
+
+	/**
+	 *
+	 * @return position of element (i, j) in the compressed rows.
+	 */
+	private static int find(int[] Yp, int[] Yj, int i, int j) {
+		int p = Arrays.binarySearch(Yj, Yp[i], Yp[i + 1], j);
+		if (p < 0)
+			throw new IllegalStateException("no element (" + i + ", " + j + ") in admittance matrix");
+		return p;
+	}
+
+	private static SparseRCDComplexMatrix2D copy(SparseRCDComplexMatrix2D Y, double[] values) {
+		return new SparseRCDComplexMatrix2D(Y.rows(), Y.columns(),
+				Y.getRowPointers().clone(), Y.getColumnIndexes().clone(), values);
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.pf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Power flow kernels using the JDK Vector API.
+ *
+ * The element-wise kernels gather the voltages of the buses at each end
+ * of the admittances through the column (and row) indexes and process a
+ * full vector of elements per step, and the matrix-vector product
+ * accumulates each row a vector at a time, with the remainder of every
+ * loop done by the scalar code. Requires JDK 17 or later with the
+ * jdk.incubator.vector module, see Kernels.
+ *
+ * @author Richard Lincoln
+ *
+ */
+class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+
+	/* positions of the real and imaginary parts in a block of interleaved values */
+	private static final int[] EVEN = new int[LANES], ODD = new int[LANES];
+
+	static {
+		for (int l = 0; l < LANES; l++) {
+			EVEN[l] = 2 * l;
+			ODD[l] = 2 * l + 1;
+		}
+	}
+
+	@Override
+	public String name() {
+		return "vector";
+	}
+
+	@Override
+	public void multiply(int[] Ap, int[] Aj, double[] Ar, double[] Ai, double[] xr, double[] xi,
+			double[] yr, double[] yi, int[] rows, int first, int last) {
+		int i, j, p, end, bound;
+		double sr, si;
+		DoubleVector a, b, vr, vi, accr, acci;
+
+		for (int n = first; n < last; n++) {
+			i = (rows == null) ? n : rows[n];
+			p = Ap[i];
+			end = Ap[i + 1];
+			bound = p + SPECIES.loopBound(end - p);
+			accr = DoubleVector.zero(SPECIES);
+			acci = DoubleVector.zero(SPECIES);
+			for (; p < bound; p += LANES) {
+				a = DoubleVector.fromArray(SPECIES, Ar, p);
+				b = DoubleVector.fromArray(SPECIES, Ai, p);
+				vr = DoubleVector.fromArray(SPECIES, xr, 0, Aj, p);
+				vi = DoubleVector.fromArray(SPECIES, xi, 0, Aj, p);
+				accr = a.fma(vr, accr).sub(b.mul(vi));
+				acci = a.fma(vi, acci).add(b.mul(vr));
+			}
+			sr = accr.reduceLanes(VectorOperators.ADD);
+			si = acci.reduceLanes(VectorOperators.ADD);
+			for (; p < end; p++) {
+				j = Aj[p];
+				sr += Ar[p] * xr[j] - Ai[p] * xi[j];
+				si += Ar[p] * xi[j] + Ai[p] * xr[j];
+			}
+			yr[i] = sr;
+			yi[i] = si;
+		}
+	}
+
+	@Override
+	public void power(double[] Vr, double[] Vi, double[] Ir, double[] Ii, double[] Sr,
+			double[] Si, int[] rows, int first, int last) {
+		int n = first, bound = first + SPECIES.loopBound(last - first);
+		DoubleVector er, ei, cr, ci;
+
+		if (rows == null) {
+			for (; n < bound; n += LANES) {
+				er = DoubleVector.fromArray(SPECIES, Vr, n);
+				ei = DoubleVector.fromArray(SPECIES, Vi, n);
+				cr = DoubleVector.fromArray(SPECIES, Ir, n);
+				ci = DoubleVector.fromArray(SPECIES, Ii, n);
+				er.fma(cr, ei.mul(ci)).intoArray(Sr, n);
+				ei.fma(cr, er.mul(ci).neg()).intoArray(Si, n);
+			}
+		} else {
+			for (; n < bound; n += LANES) {
+				er = DoubleVector.fromArray(SPECIES, Vr, 0, rows, n);
+				ei = DoubleVector.fromArray(SPECIES, Vi, 0, rows, n);
+				cr = DoubleVector.fromArray(SPECIES, Ir, 0, rows, n);
+				ci = DoubleVector.fromArray(SPECIES, Ii, 0, rows, n);
+				er.fma(cr, ei.mul(ci)).intoArray(Sr, 0, rows, n);
+				ei.fma(cr, er.mul(ci).neg()).intoArray(Si, 0, rows, n);
+			}
+		}
+		super.power(Vr, Vi, Ir, Ii, Sr, Si, rows, n, last);
+	}
+
+	@Override
+	public void products(int[] Arow, int[] Aj, double[] Ar, double[] Ai, double[] Vr, double[] Vi,
+			double[] Wr, double[] Wi, int first, int last) {
+		int p = first, bound = first + SPECIES.loopBound(last - first);
+		DoubleVector a, b, er, ei, ekr, eki, zr, zi;
+
+		for (; p < bound; p += LANES) {
+			a = DoubleVector.fromArray(SPECIES, Ar, p);
+			b = DoubleVector.fromArray(SPECIES, Ai, p);
+			er = DoubleVector.fromArray(SPECIES, Vr, 0, Arow, p);
+			ei = DoubleVector.fromArray(SPECIES, Vi, 0, Arow, p);
+			ekr = DoubleVector.fromArray(SPECIES, Vr, 0, Aj, p);
+			eki = DoubleVector.fromArray(SPECIES, Vi, 0, Aj, p);
+			zr = a.fma(ekr, b.mul(eki).neg());
+			zi = a.fma(eki, b.mul(ekr));
+			er.fma(zr, ei.mul(zi)).intoArray(Wr, p);
+			ei.fma(zr, er.mul(zi).neg()).intoArray(Wi, p);
+		}
+		super.products(Arow, Aj, Ar, Ai, Vr, Vi, Wr, Wi, p, last);
+	}
+
+	@Override
+	public void split(double[] x, double[] re, double[] im, int first, int last) {
+		int p = first, bound = first + SPECIES.loopBound(last - first);
+
+		for (; p < bound; p += LANES) {
+			DoubleVector.fromArray(SPECIES, x, 2 * p, EVEN, 0).intoArray(re, p);
+			DoubleVector.fromArray(SPECIES, x, 2 * p, ODD, 0).intoArray(im, p);
+		}
+		super.split(x, re, im, p, last);
+	}
+
+}
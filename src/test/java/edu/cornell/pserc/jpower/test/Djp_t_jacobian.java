@@ -32,7 +32,9 @@ import static edu.emory.mathcs.utils.Utils.ifunc;
 import static edu.emory.mathcs.utils.Utils.dfunc;
 import static edu.emory.mathcs.utils.Utils.cfunc;
 import static edu.emory.mathcs.utils.Utils.polar;
+import static edu.emory.mathcs.utils.Utils.icat;
 
+import edu.cornell.pserc.jpower.Djp_bustypes;
 import edu.cornell.pserc.jpower.Djp_ext2int;
 import edu.cornell.pserc.jpower.Djp_jpoption;
 import edu.cornell.pserc.jpower.Djp_loadcase;
@@ -44,6 +46,8 @@ import edu.cornell.pserc.jpower.jpc.JPC;
 import edu.cornell.pserc.jpower.pf.Djp_dSbus_dV;
 import edu.cornell.pserc.jpower.pf.Djp_makeYbus;
 import edu.cornell.pserc.jpower.pf.Djp_runpf;
+import edu.cornell.pserc.jpower.pf.Jacobian;
+import edu.cornell.pserc.jpower.pf.YbusUpdater;
 
 public class Djp_t_jacobian {
 
@@ -81,7 +85,7 @@ public class Djp_t_jacobian {
 		int nl, nb;
 		AbstractMatrix[] dSbr_dV, dIbr_dV;
 
-		Djp_t_begin.t_begin(28, quiet);
+		Djp_t_begin.t_begin(33, quiet);
 
 		// run powerflow to get solved case
 		opt = Djp_jpoption.jpoption("VERBOSE", 0.0, "OUT_ALL", 0.0);
@@ -92,7 +96,7 @@ public class Djp_t_jacobian {
 		Object[] internal = Djp_ext2int.ext2int(r.bus, r.gen, r.branch);
 		//int[] i2e = (int[]) internal[0];
 		Bus bus = (Bus) internal[1];
-		//Djp_gen gen = (Djp_gen) internal[2];
+		Gen gen = (Gen) internal[2];
 		Branch branch = (Branch) internal[3];
 
 		Y = Djp_makeYbus.makeYbus(r.baseMVA, bus, branch);
@@ -163,6 +167,46 @@ public class Djp_t_jacobian {
 //		Djp_t_is.jp_t_is(dSbus_dVm_full, num_dSbus_dVm, 5, "dSbus_dVm (full)");
 //		Djp_t_is.jp_t_is(dSbus_dVa_full, num_dSbus_dVa, 5, "dSbus_dVa (full)");
 
+		//-----  check Jacobian with fixed sparsity pattern  -----
+		IntMatrix1D[] bustypes = Djp_bustypes.bustypes(bus, gen);
+		int[] pv = bustypes[1].toArray();
+		int[] pq = bustypes[2].toArray();
+		int[] pvpq = icat(pv, pq);
+		DoubleMatrix2D J = DoubleFactory2D.dense.compose(new DoubleMatrix2D[][] {
+				{dSbus_dVa_sp.getRealPart().viewSelection(pvpq, pvpq),
+				 dSbus_dVm_sp.getRealPart().viewSelection(pvpq, pq)},
+				{dSbus_dVa_sp.getImaginaryPart().viewSelection(pq, pvpq),
+				 dSbus_dVm_sp.getImaginaryPart().viewSelection(pq, pq)} });
+		Jacobian jac = new Jacobian(Ybus, pv, pq);
+		jac.update(Vm.viewColumn(0).toArray(), Va.viewColumn(0).toArray());
+		Djp_t_is.t_is(jac.toMatrix(), J, 8, "Jacobian (fixed pattern)");
+
+		//-----  check incremental Ybus updates  -----
+		YbusUpdater upd = new YbusUpdater(r.baseMVA, bus, branch);
+		Bus bus2 = bus.copy();
+		Branch branch2 = branch.copy();
+		upd.setBranchStatus(3, 0);
+		branch2.br_status.set(3, 0);
+		upd.setBranchTap(10, 0.98, 2.0);
+		branch2.tap.set(10, 0.98);
+		branch2.shift.set(10, 2.0);
+		upd.setBranchImpedance(20, 0.01, 0.05, 0.02);
+		branch2.br_r.set(20, 0.01);
+		branch2.br_x.set(20, 0.05);
+		branch2.br_b.set(20, 0.02);
+		Y = Djp_makeYbus.makeYbus(r.baseMVA, bus2, branch2);
+		Djp_t_is.t_is(upd.getYbus(), Y[0], 12, "Ybus update (branch)");
+		Djp_t_is.t_is(upd.getYf(), Y[1], 12, "Yf update (branch)");
+		Djp_t_is.t_is(upd.getYt(), Y[2], 12, "Yt update (branch)");
+
+		upd.setBusShunt(5, 10, 20);
+		bus2.Gs.set(5, 10);
+		bus2.Bs.set(5, 20);
+		upd.setBranchStatus(3, 1);
+		branch2.br_status.set(3, 1);
+		Y = Djp_makeYbus.makeYbus(r.baseMVA, bus2, branch2);
+		Djp_t_is.t_is(upd.getYbus(), Y[0], 12, "Ybus update (shunt, restore)");
+
 //		//-----  check dSbr_dV code  -----
 //		// full matrices
 //		dSbr_dV = Djp_dSbr_dV.jp_dSbr_dV(branch, Yf_full, Yt_full, V);
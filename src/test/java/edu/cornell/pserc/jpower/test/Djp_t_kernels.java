@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.test;
+
+import java.util.Random;
+
+import cern.colt.matrix.tdcomplex.DComplexMatrix2D;
+import cern.colt.matrix.tdcomplex.impl.SparseRCDComplexMatrix2D;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import edu.cornell.pserc.jpower.Djp_bustypes;
+import edu.cornell.pserc.jpower.Djp_ext2int;
+import edu.cornell.pserc.jpower.Djp_loadcase;
+import edu.cornell.pserc.jpower.cases.Djp_case_synth;
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Gen;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_makeYbus;
+import edu.cornell.pserc.jpower.pf.Jacobian;
+import edu.cornell.pserc.jpower.pf.Kernels;
+
+/**
+ * Tests the vector kernels against the scalar kernels.
+ *
+ * The vector kernels are only available when compiled with the vector
+ * profile and run with the jdk.incubator.vector module, otherwise the
+ * tests are skipped. The vector profile sets the jpower.test.vector
+ * property, under which their absence is a failure.
+ *
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_t_kernels {
+
+	/** name of the system property that makes the vector kernels required */
+	public static final String REQUIRED = "jpower.test.vector";
+
+	public static void t_kernels() {
+		t_kernels(false);
+	}
+
+	public static void t_kernels(boolean quiet) {
+		int nb, nz, k;
+		int[] Yp, Yj, Yrow, pv, pq;
+		double[] Yx, Yr, Yi, Vm, Va, Vr, Vi;
+		double[][] s, v;
+		boolean required;
+		JPC jpc;
+		Bus bus;
+		Gen gen;
+		Branch branch;
+		DComplexMatrix2D Ybus;
+		IntMatrix1D[] bustypes;
+		Kernels scalar, vector;
+		Jacobian Js, Jv;
+		Random rnd;
+
+		Djp_t_begin.t_begin(12, quiet);
+
+		scalar = Kernels.forName("scalar");
+		vector = Kernels.forName("vector");
+		required = System.getProperty(REQUIRED) != null;
+		Djp_t_ok.t_ok(vector != null || !required, "vector kernels available");
+		if (vector == null) {
+			Djp_t_skip.t_skip(11, "vector kernels not available");
+			Djp_t_end.t_end();
+			return;
+		}
+
+		/* admittance matrix of a case with rows of varied length */
+		jpc = Djp_loadcase.loadcase(Djp_case_synth.jp_case_synth(300));
+		Object[] internal = Djp_ext2int.ext2int(jpc.bus, jpc.gen, jpc.branch);
+		bus = (Bus) internal[1];
+		gen = (Gen) internal[2];
+		branch = (Branch) internal[3];
+		Ybus = Djp_makeYbus.makeYbus(jpc.baseMVA, bus, branch)[0];
+		bustypes = Djp_bustypes.bustypes(bus, gen);
+		pv = bustypes[1].toArray();
+		pq = bustypes[2].toArray();
+
+		Yp = ((SparseRCDComplexMatrix2D) Ybus).getRowPointers();
+		Yj = ((SparseRCDComplexMatrix2D) Ybus).getColumnIndexes();
+		Yx = ((SparseRCDComplexMatrix2D) Ybus).getValues();
+		nb = Ybus.rows();
+		nz = Yp[nb];
+		Yrow = new int[nz];
+		for (int i = 0; i < nb; i++)
+			for (int p = Yp[i]; p < Yp[i + 1]; p++)
+				Yrow[p] = i;
+
+		/* voltages near 1 p.u. */
+		rnd = new Random(1);
+		Vm = new double[nb];
+		Va = new double[nb];
+		Vr = new double[nb];
+		Vi = new double[nb];
+		for (k = 0; k < nb; k++) {
+			Vm[k] = 0.95 + 0.1 * rnd.nextDouble();
+			Va[k] = 0.5 * (rnd.nextDouble() - 0.5);
+			Vr[k] = Vm[k] * Math.cos(Va[k]);
+			Vi[k] = Vm[k] * Math.sin(Va[k]);
+		}
+
+		/* s: results of the scalar kernels, v: of the vector kernels */
+		s = new double[10][];
+		v = new double[10][];
+		kernels(scalar, Yp, Yj, Yrow, Yx, Vr, Vi, pq, s);
+		kernels(vector, Yp, Yj, Yrow, Yx, Vr, Vi, pq, v);
+
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[0]), s[0], 10, "split (real)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[1]), s[1], 10, "split (imag)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[2]), s[2], 10, "Ybus * V (real)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[3]), s[3], 10, "Ybus * V (imag)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[4]), s[4], 10, "Ybus[pq,:] * V (real)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[5]), s[5], 10, "Ybus[pq,:] * V (imag)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[6]), s[6], 10, "power injection (real)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[7]), s[7], 10, "power injection (imag)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[8]), s[8], 10, "element products (real)");
+		Djp_t_is.t_is(DoubleFactory1D.dense.make(v[9]), s[9], 10, "element products (imag)");
+
+		/* Jacobian refill */
+		Kernels.set(scalar);
+		Js = new Jacobian(Ybus, pv, pq);
+		Kernels.set(vector);
+		Jv = new Jacobian(Ybus, pv, pq);
+		Kernels.set(null);
+		Js.update(Vm, Va);
+		Jv.update(Vm, Va);
+		Djp_t_is.t_is(Jv.toMatrix(), Js.toMatrix(), 10, "Jacobian");
+
+		Djp_t_end.t_end();
+	}
+
+	/**
+	 * Evaluates each kernel into results, in the order split, multiply,
+	 * multiply of selected rows, power and products, real part first.
+	 */
+	private static void kernels(Kernels kernels, int[] Yp, int[] Yj, int[] Yrow,
+			double[] Yx, double[] Vr, double[] Vi, int[] rows, double[][] results) {
+		int nb = Vr.length, nz = Yp[nb];
+		double[] Yr, Yi, Ir, Ii, Jr, Ji, Sr, Si, Wr, Wi;
+
+		Yr = new double[nz];
+		Yi = new double[nz];
+		kernels.split(Yx, Yr, Yi, 0, nz);
+
+		Ir = new double[nb];
+		Ii = new double[nb];
+		kernels.multiply(Yp, Yj, Yr, Yi, Vr, Vi, Ir, Ii, null, 0, nb);
+
+		Jr = new double[nb];
+		Ji = new double[nb];
+		kernels.multiply(Yp, Yj, Yr, Yi, Vr, Vi, Jr, Ji, rows, 0, rows.length);
+
+		Sr = new double[nb];
+		Si = new double[nb];
+		kernels.power(Vr, Vi, Ir, Ii, Sr, Si, null, 0, nb);
+
+		Wr = new double[nz];
+		Wi = new double[nz];
+		kernels.products(Yrow, Yj, Yr, Yi, Vr, Vi, Wr, Wi, 0, nz);
+
+		results[0] = Yr;
+		results[1] = Yi;
+		results[2] = Ir;
+		results[3] = Ii;
+		results[4] = Jr;
+		results[5] = Ji;
+		results[6] = Sr;
+		results[7] = Si;
+		results[8] = Wr;
+		results[9] = Wi;
+	}
+
+}
@@ -18,16 +18,85 @@
 
 package edu.cornell.pserc.jpower.test;
 
+import java.io.File;
+import java.io.IOException;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+import edu.cornell.pserc.jpower.Djp_loadcase;
+import edu.cornell.pserc.jpower.Djp_savecase;
+import edu.cornell.pserc.jpower.jpc.JPC;
+
+/**
+ * Test for loadcase().
+ *
+ * @author Ray Zimmerman
+ * @author Richard Lincoln
+ *
+ */
 public class Djp_t_loadcase {
 
+	private static final String CASEV1 = "t_case9_pf.m";
+	private static final String CASEV2 = "t_case9_opfv2.m";
+
 	public static void t_loadcase() {
 		t_loadcase(false);
 	}
 
 	public static void t_loadcase(boolean quiet) {
+		String t;
+		JPC jpc, jpc1;
+		DoubleMatrix2D cost;
+		File file;
+
+		Djp_t_begin.t_begin(18, quiet);
+
+		/* -----  version 1 file  ----- */
+		t = "loadcase(version 1 M-file) : ";
+		jpc = Djp_loadcase.loadcase(Djp_t_loadcase.class.getResource(CASEV1).getFile());
+		jpc1 = Djp_loadcase.loadcase(Djp_t_case9_pf.t_case9_pf());
+		Djp_t_is.t_is(jpc.baseMVA, jpc1.baseMVA, 12, t + "baseMVA");
+		Djp_t_is.t_is(jpc.bus, jpc1.bus, 12, t + "bus");
+		Djp_t_is.t_is(jpc.gen, jpc1.gen, 12, t + "gen");
+		Djp_t_is.t_is(jpc.branch, jpc1.branch, 12, t + "branch");
+
+		/* -----  version 2 file  ----- */
+		t = "loadcase(version 2 M-file) : ";
+		jpc = Djp_loadcase.loadcase(Djp_t_loadcase.class.getResource(CASEV2).getFile());
+		Djp_t_ok.t_ok(jpc.version.equals("2"), t + "version");
+		Djp_t_is.t_is(jpc.baseMVA, 100, 12, t + "baseMVA");
+		Djp_t_is.t_is(jpc.bus, jpc1.bus, 12, t + "bus");
+		Djp_t_is.t_is(jpc.gen.Qc2max, new double[] {0, 10, 15}, 12, t + "gen");
+		Djp_t_is.t_is(jpc.branch.ang_max, new double[] {2.48, 360, 360, 360, 360, 360, 360, 360, 360}, 12, t + "branch");
+		Djp_t_ok.t_ok(jpc.areas.size() == 1 && jpc.areas.price_ref_bus.get(0) == 5, t + "areas");
+		Djp_t_is.t_is(jpc.gencost.startup, new double[] {0, 0, 0}, 12, t + "gencost");
+		cost = DoubleFactory2D.dense.make(new double[][] {
+			{0,	0,	100,	2500,	200,	5500,	250,	7250},
+			{0,	0,	100,	2000,	200,	4403.5,	270,	6363.5},
+			{15,	0,	0,	0,	0,	0,	0,	0}
+		});
+		Djp_t_is.t_is(jpc.gencost.cost, cost, 12, t + "gencost cost");
 
-		Djp_t_begin.t_begin(240, quiet);
+		/* -----  binary snapshot  ----- */
+		t = "savecase/loadcase(snapshot) : ";
+		try {
+			file = File.createTempFile("t_case9_opfv2", Djp_savecase.SNAPSHOT_EXT);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		file.deleteOnExit();
+		Djp_savecase.savecase(file.getPath(), jpc);
+		jpc1 = Djp_loadcase.loadcase(file.getPath());
+		Djp_t_ok.t_ok(jpc1.version.equals(jpc.version) && jpc1.baseMVA == jpc.baseMVA, t + "version, baseMVA");
+		Djp_t_is.t_is(jpc1.bus, jpc.bus, 12, t + "bus");
+		Djp_t_is.t_is(jpc1.gen, jpc.gen, 12, t + "gen");
+		Djp_t_is.t_is(jpc1.branch, jpc.branch, 12, t + "branch");
+		Djp_t_ok.t_ok(jpc1.areas.area_i.equals(jpc.areas.area_i)
+				&& jpc1.areas.price_ref_bus.equals(jpc.areas.price_ref_bus), t + "areas");
+		Djp_t_is.t_is(jpc1.gencost, jpc.gencost, 12, t + "gencost");
 
+		Djp_t_end.t_end();
 	}
 
 	public static void main(String[] args) {
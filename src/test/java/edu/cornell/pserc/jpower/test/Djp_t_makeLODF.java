@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 1996-2010 Power System Engineering Research Center
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.test;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import edu.cornell.pserc.jpower.Djp_bustypes;
+import edu.cornell.pserc.jpower.Djp_ext2int;
+import edu.cornell.pserc.jpower.Djp_loadcase;
+import edu.cornell.pserc.jpower.cases.Djp_case30;
+import edu.cornell.pserc.jpower.jpc.Branch;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_dcpf;
+import edu.cornell.pserc.jpower.pf.Djp_makeBdc;
+import edu.cornell.pserc.jpower.pf.Djp_makeLODF;
+import edu.cornell.pserc.jpower.pf.Djp_makePTDF;
+
+/**
+ * Tests for makeLODF().
+ *
+ * @author Ray Zimmerman
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_t_makeLODF {
+
+	public static void t_makeLODF() {
+		t_makeLODF(false);
+	}
+
+	public static void t_makeLODF(boolean quiet) {
+		String t;
+		JPC jpc;
+		Branch branch;
+		int nb, nl, ref;
+		int[] pv, pq, outages;
+		boolean diag;
+		IntMatrix1D[] bt;
+		AbstractMatrix[] Bdc;
+		DoubleMatrix1D Pbus, Va, flow0, flow, expected;
+		DoubleMatrix2D PTDF, LODF;
+
+		Djp_t_begin.t_begin(5, quiet);
+
+		jpc = Djp_ext2int.ext2int(Djp_loadcase.loadcase(Djp_case30.jp_case30()));
+		nb = jpc.bus.size();
+		nl = jpc.branch.size();
+		bt = Djp_bustypes.bustypes(jpc.bus, jpc.gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch);
+		LODF = Djp_makeLODF.makeLODF(jpc.branch, PTDF);
+
+		/* base case DC flows, with the loads balanced at the reference bus */
+		Pbus = jpc.bus.Pd.copy();
+		for (int i = 0; i < nb; i++)
+			Pbus.setQuick(i, -Pbus.getQuick(i) / jpc.baseMVA);
+		Bdc = Djp_makeBdc.makeBdc(jpc.baseMVA, jpc.bus, jpc.branch);
+		Va = Djp_dcpf.dcpf((DoubleMatrix2D) Bdc[0], Pbus, DoubleFactory1D.dense.make(nb), ref, pv, pq);
+		flow0 = ((DoubleMatrix2D) Bdc[1]).zMult(Va, null);
+
+		t = "makeLODF : ";
+		diag = true;
+		for (int l = 0; l < nl; l++)
+			diag &= LODF.getQuick(l, l) == -1;
+		Djp_t_ok.t_ok(diag, t + "diagonal");
+
+		/* compare with a DC power flow of each outage */
+		for (int k : new int[] {0, 5}) {
+			branch = jpc.branch.copy();
+			branch.br_status.set(k, 0);
+			Bdc = Djp_makeBdc.makeBdc(jpc.baseMVA, jpc.bus, branch);
+			Va = Djp_dcpf.dcpf((DoubleMatrix2D) Bdc[0], Pbus, DoubleFactory1D.dense.make(nb), ref, pv, pq);
+			flow = ((DoubleMatrix2D) Bdc[1]).zMult(Va, null);
+			expected = flow0.copy();
+			for (int l = 0; l < nl; l++)
+				expected.setQuick(l, flow0.getQuick(l) + LODF.getQuick(l, k) * flow0.getQuick(k));
+			Djp_t_is.t_is(flow, expected.toArray(), 8, t + "outage of branch " + k);
+		}
+
+		/* branch 9-11 is the only connection to bus 11 */
+		Djp_t_ok.t_ok(Double.isNaN(LODF.getQuick(0, 12)), t + "islanding outage");
+
+		outages = new int[] {5, 0, 20};
+		Djp_t_is.t_is(Djp_makeLODF.makeLODF(jpc.branch, PTDF, outages),
+				LODF.viewSelection(null, outages).copy(), 12, t + "selected outages");
+
+		Djp_t_end.t_end();
+	}
+
+	public static void main(String[] args) {
+		t_makeLODF(false);
+	}
+
+}
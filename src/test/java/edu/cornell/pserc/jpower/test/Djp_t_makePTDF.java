@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 1996-2010 Power System Engineering Research Center
+ * Copyright (C) 2010-2011 Richard Lincoln
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package edu.cornell.pserc.jpower.test;
+
+import cern.colt.matrix.AbstractMatrix;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tint.IntMatrix1D;
+
+import edu.cornell.pserc.jpower.Djp_bustypes;
+import edu.cornell.pserc.jpower.Djp_ext2int;
+import edu.cornell.pserc.jpower.Djp_loadcase;
+import edu.cornell.pserc.jpower.cases.Djp_case30;
+import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.pf.Djp_dcpf;
+import edu.cornell.pserc.jpower.pf.Djp_makeBdc;
+import edu.cornell.pserc.jpower.pf.Djp_makePTDF;
+
+/**
+ * Tests for makePTDF().
+ *
+ * @author Ray Zimmerman
+ * @author Richard Lincoln
+ *
+ */
+public class Djp_t_makePTDF {
+
+	public static void t_makePTDF() {
+		t_makePTDF(false);
+	}
+
+	public static void t_makePTDF(boolean quiet) {
+		String t;
+		JPC jpc;
+		int nb, nl, ref, slack;
+		int[] pv, pq, br, bs;
+		IntMatrix1D[] bt;
+		AbstractMatrix[] Bdc;
+		DoubleMatrix1D Pbus, Va;
+		DoubleMatrix2D B, Bf, H, Hs, PTDF;
+
+		Djp_t_begin.t_begin(5, quiet);
+
+		jpc = Djp_ext2int.ext2int(Djp_loadcase.loadcase(Djp_case30.jp_case30()));
+		nb = jpc.bus.size();
+		nl = jpc.branch.size();
+		bt = Djp_bustypes.bustypes(jpc.bus, jpc.gen);
+		ref = bt[0].get(0);
+		pv = bt[1].toArray();
+		pq = bt[2].toArray();
+		Bdc = Djp_makeBdc.makeBdc(jpc.baseMVA, jpc.bus, jpc.branch);
+		B = (DoubleMatrix2D) Bdc[0];
+		Bf = (DoubleMatrix2D) Bdc[1];
+
+		/* flows for a unit transfer from each bus to the reference bus, by DC power flow */
+		H = DoubleFactory2D.dense.make(nl, nb);
+		for (int j = 0; j < nb; j++) {
+			if (j == ref)
+				continue;
+			Pbus = DoubleFactory1D.dense.make(nb);
+			Pbus.set(j, 1);
+			Pbus.set(ref, -1);
+			Va = Djp_dcpf.dcpf(B, Pbus, DoubleFactory1D.dense.make(nb), ref, pv, pq);
+			H.viewColumn(j).assign(Bf.zMult(Va, null));
+		}
+
+		t = "makePTDF : ";
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch);
+		Djp_t_is.t_is(PTDF, H, 8, t + "reference bus slack");
+
+		br = new int[] {0, 5, 12, 40};
+		bs = new int[] {1, 2, 7, 20, 29};
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch, ref, br, bs, 0);
+		Djp_t_is.t_is(PTDF, H.viewSelection(br, bs).copy(), 8, t + "monitored branches");
+
+		bs = new int[] {3, 4};
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch, ref, null, bs, 0);
+		Djp_t_is.t_is(PTDF, H.viewSelection(null, bs).copy(), 8, t + "injection buses");
+
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch, ref, null, null, 1e-12);
+		Djp_t_is.t_is(PTDF, H, 8, t + "compact");
+
+		/* moving the slack subtracts the column of the new slack */
+		slack = nb - 1;
+		Hs = H.copy();
+		for (int j = 0; j < nb; j++)
+			for (int l = 0; l < nl; l++)
+				Hs.setQuick(l, j, H.getQuick(l, j) - H.getQuick(l, slack));
+		PTDF = Djp_makePTDF.makePTDF(jpc.baseMVA, jpc.bus, jpc.branch, slack);
+		Djp_t_is.t_is(PTDF, Hs, 8, t + "other slack");
+
+		Djp_t_end.t_end();
+	}
+
+	public static void main(String[] args) {
+		t_makePTDF(false);
+	}
+
+}
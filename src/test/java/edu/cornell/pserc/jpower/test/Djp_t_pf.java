@@ -18,9 +18,14 @@
 
 package edu.cornell.pserc.jpower.test;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream.GetField;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import cern.colt.matrix.tdouble.DoubleFactory2D;
@@ -30,12 +35,21 @@ import static edu.emory.mathcs.utils.MatrixMarketUtils.readMatrix;
 
 import edu.cornell.pserc.jpower.Djp_jpoption;
 import edu.cornell.pserc.jpower.Djp_loadcase;
+import edu.cornell.pserc.jpower.cases.Djp_case_synth;
 import edu.cornell.pserc.jpower.jpc.Branch;
 import edu.cornell.pserc.jpower.jpc.Bus;
+import edu.cornell.pserc.jpower.jpc.Columns;
 import edu.cornell.pserc.jpower.jpc.Gen;
 import edu.cornell.pserc.jpower.jpc.JPC;
+import edu.cornell.pserc.jpower.jpc.Profile;
+import edu.cornell.pserc.jpower.pf.BatchDCPF;
+import edu.cornell.pserc.jpower.pf.BatchPF;
+import edu.cornell.pserc.jpower.pf.ContingencyAnalysis;
+import edu.cornell.pserc.jpower.pf.ContingencyScreening;
 import edu.cornell.pserc.jpower.pf.Djp_rundcpf;
 import edu.cornell.pserc.jpower.pf.Djp_runpf;
+import edu.cornell.pserc.jpower.pf.PowerFlowSession;
+import edu.cornell.pserc.jpower.pf.TimeSeriesPF;
 
 /**
  * Tests for power flow solvers.
@@ -70,7 +84,7 @@ public class Djp_t_pf {
 		DoubleMatrix2D bus_soln, gen_soln, branch_soln;
 		Map<String, Double> jpopt;
 
-		Djp_t_begin.t_begin(25, quiet);
+		Djp_t_begin.t_begin(85, quiet);
 
 		JPC casefile = Djp_t_case9_pf.t_case9_pf();
 		jpopt = Djp_jpoption.jpoption("OUT_ALL", 0.0, "VERBOSE", quiet ? 0.0 : 1.0);
@@ -107,15 +121,224 @@ public class Djp_t_pf {
 		Djp_t_is.t_is(jpc.gen.toMatrix(), gen_soln, 6, t + "gen");
 		Djp_t_is.t_is(jpc.branch.toMatrix(), branch_soln, 6, t + "branch");
 
-//		/* run Gauss-Seidel PF */
-//		t = "Gauss-Seidel PF : ";
-//		jpopt = Djp_jpoption.jp_jpoption(jpopt, "PF_ALG", 4.0);
-//		jpc = Djp_runpf.jp_runpf(casefile, jpopt);
-//		Djp_t_ok.jp_t_ok(jpc.success, t + "success");
-//		Djp_t_is.jp_t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
-//		Djp_t_is.jp_t_is(jpc.gen.toMatrix(), gen_soln, 6, t + "gen");
-//		Djp_t_is.jp_t_is(jpc.branch.toMatrix(), branch_soln, 6, t + "branch");
-//
+		/* run dishonest Newton PF */
+		t = "Dishonest Newton PF : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 5.0, "PF_MAX_IT", 30.0);
+		jpc = Djp_runpf.runpf(casefile.copy(), jpopt);
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
+		Djp_t_is.t_is(jpc.gen.toMatrix(), gen_soln, 6, t + "gen");
+		Djp_t_is.t_is(jpc.branch.toMatrix(), branch_soln, 6, t + "branch");
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_MAX_IT", 10.0);
+
+		/* run Gauss-Seidel PF */
+		t = "Gauss-Seidel PF : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 4.0);
+		jpc = Djp_runpf.runpf(casefile.copy(), jpopt);
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
+		Djp_t_is.t_is(jpc.gen.toMatrix(), gen_soln, 5, t + "gen");
+		Djp_t_is.t_is(jpc.branch.toMatrix(), branch_soln, 5, t + "branch");
+
+		/* run Gauss-Seidel PF with over-relaxation and red-black ordering */
+		t = "Gauss-Seidel PF (SOR, red-black) : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_GS_OMEGA", 1.1, "PF_GS_ORDER", 1.0);
+		jpc = Djp_runpf.runpf(casefile.copy(), jpopt);
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_GS_OMEGA", 1.0, "PF_GS_ORDER", 0.0);
+
+		/* run current injection Newton PF */
+		t = "Newton PF (current injection, cartesian) : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 6.0);
+		jpc = Djp_runpf.runpf(casefile.copy(), jpopt);
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
+		Djp_t_is.t_is(jpc.gen.toMatrix(), gen_soln, 6, t + "gen");
+		Djp_t_is.t_is(jpc.branch.toMatrix(), branch_soln, 6, t + "branch");
+
+		/* run backward/forward sweep PF on a radial, lightly loaded, case */
+		t = "Backward/forward sweep PF : ";
+		jpc = casefile.copy();
+		jpc.branch.br_status.set(8, 0);
+		for (int k = 0; k < jpc.bus.size(); k++) {
+			jpc.bus.Pd.set(k, jpc.bus.Pd.get(k) / 2);
+			jpc.bus.Qd.set(k, jpc.bus.Qd.get(k) / 2);
+		}
+		for (int k = 0; k < jpc.gen.size(); k++)
+			jpc.gen.Pg.set(k, jpc.gen.Pg.get(k) / 2);
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 1.0);
+		r = Djp_runpf.runpf(jpc.copy(), jpopt);
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 7.0);
+		jpc = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), r.bus.toMatrix(), 6, t + "bus");
+		Djp_t_is.t_is(jpc.gen.toMatrix(), r.gen.toMatrix(), 6, t + "gen");
+		jpc = Djp_runpf.runpf(casefile.copy(), jpopt);
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "meshed, Newton bus");
+
+		/* run batch PF */
+		t = "Batch PF : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 1.0);
+		BatchPF batch = new BatchPF(casefile.copy(), jpopt);
+		double[] dPd = new double[casefile.bus.size()];
+		dPd[4] = 10;
+		dPd[8] = -20;
+		List<BatchPF.Result> results = batch.solve(Arrays.asList(
+				new BatchPF.Delta(0, null, null, null),
+				new BatchPF.Delta(1, dPd, null, null)));
+		jpc = results.get(0).toCase();
+		Djp_t_ok.t_ok(jpc.success, t + "success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), bus_soln, 6, t + "bus");
+		Djp_t_is.t_is(jpc.gen.toMatrix(), gen_soln, 6, t + "gen");
+		Djp_t_is.t_is(jpc.branch.toMatrix(), branch_soln, 6, t + "branch");
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.bus.Pd.set(4, jpc.bus.Pd.get(4) + 10);
+		jpc.bus.Pd.set(8, jpc.bus.Pd.get(8) - 20);
+		r = Djp_runpf.runpf(jpc, jpopt);
+		jpc = results.get(1).toCase();
+		Djp_t_ok.t_ok(jpc.success, t + "scenario success");
+		Djp_t_is.t_is(jpc.bus.toMatrix(), r.bus.toMatrix(), 6, t + "scenario bus");
+
+		/* contingency analysis */
+		t = "Contingency analysis : ";
+		ContingencyAnalysis ca = new ContingencyAnalysis(casefile.copy(), jpopt);
+		Djp_t_ok.t_ok(ca.getBase().success && ca.getBase().violations.isEmpty(), t + "base case");
+		Djp_t_is.t_is(Columns.make(ca.getBase().Pf), branch_soln.viewColumn(13).toArray(), 6, t + "base case Pf");
+		List<ContingencyAnalysis.Contingency> outages = ContingencyAnalysis.n1(casefile);
+		List<ContingencyAnalysis.Result> outcomes = ca.solve(outages);
+		Djp_t_ok.t_ok(outages.size() == 12 && outcomes.get(0).islanded && !outcomes.get(4).islanded, t + "islanding");
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.branch.br_status.set(4, 0);
+		r = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_ok.t_ok(outcomes.get(4).success, t + "branch outage success");
+		Djp_t_is.t_is(Columns.make(outcomes.get(4).Pf), r.branch.Pf.toArray(), 6, t + "branch outage Pf");
+		Djp_t_is.t_is(Columns.make(outcomes.get(4).Qt), r.branch.Qt.toArray(), 6, t + "branch outage Qt");
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.gen.gen_status.set(2, 0);
+		r = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_is.t_is(Columns.make(outcomes.get(11).Pf), r.branch.Pf.toArray(), 6, t + "gen outage Pf");
+
+		/* contingency screening */
+		t = "Contingency screening : ";
+		ContingencyScreening cs = new ContingencyScreening(casefile.copy(), jpopt);
+		r = Djp_rundcpf.rundcpf(casefile.copy(), jpopt);
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_DC", 0.0);		// set by rundcpf
+		Djp_t_is.t_is(Columns.make(cs.getFlows()), r.branch.Pf.toArray(), 6, t + "base DC flows");
+		List<ContingencyScreening.Screened> ranked = cs.screen();
+		Djp_t_ok.t_ok(ranked.size() == 9 && !ranked.get(5).islanded && ranked.get(6).islanded
+				&& ranked.get(0).severity >= ranked.get(5).severity, t + "ranking");
+		outcomes = cs.run(2);
+		Djp_t_ok.t_ok(outcomes.size() == 2 && outcomes.get(0).success
+				&& outcomes.get(0).contingency.branches[0] == ranked.get(0).branch, t + "AC top-k");
+
+		/* batch DC PF */
+		t = "Batch DC PF : ";
+		BatchDCPF bdc = new BatchDCPF(casefile.copy());
+		double[] P0 = bdc.getInjections();
+		DoubleMatrix2D P = DoubleFactory2D.dense.make(3, P0.length);
+		for (int k = 0; k < 3; k++)
+			P.viewRow(k).assign(P0);
+		P.set(1, 4, P0[4] - 10);
+		DoubleMatrix2D[] dcsoln = bdc.solve(P);
+		r = Djp_rundcpf.rundcpf(casefile.copy(), jpopt);
+		Djp_t_is.t_is(dcsoln[1].viewRow(0), r.branch.Pf.toArray(), 6, t + "base flows");
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.bus.Pd.set(4, jpc.bus.Pd.get(4) + 10);
+		r = Djp_rundcpf.rundcpf(jpc, jpopt);
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_DC", 0.0);		// set by rundcpf
+		Djp_t_is.t_is(dcsoln[1].viewRow(1), r.branch.Pf.toArray(), 6, t + "period flows");
+		Djp_t_is.t_is(dcsoln[0].viewRow(1), r.bus.Va.toArray(), 6, t + "period angles");
+
+		/* time-series PF */
+		t = "Time-series PF : ";
+		Profile profile;
+		try {
+			profile = Profile.readCSV(new StringReader("t,Pd:4,Qd:4\n0,90,30\n1,100,35\n"));
+			File tmp = File.createTempFile("profile", ".bin");
+			tmp.deleteOnExit();
+			profile.write(tmp.getPath());
+			profile = Profile.read(tmp.getPath());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Djp_t_ok.t_ok(profile.steps() == 2 && profile.columns() == 2
+				&& profile.values(1)[1] == 35, t + "profile");
+		final double[][] last = new double[3][];
+		int converged = new TimeSeriesPF(casefile.copy(), jpopt).run(profile, new TimeSeriesPF.Sink() {
+			public void step(TimeSeriesPF.Step step) {
+				if (step.t == 0)
+					last[0] = step.Pf.clone();
+				last[1] = step.Vm.clone();
+				last[2] = step.Pf.clone();
+			}
+		});
+		Djp_t_ok.t_ok(converged == 2, t + "success");
+		Djp_t_is.t_is(Columns.make(last[0]), branch_soln.viewColumn(13).toArray(), 6, t + "base flows");
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.bus.Pd.set(4, 100);
+		jpc.bus.Qd.set(4, 35);
+		r = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_is.t_is(Columns.make(last[1]), r.bus.Vm.toArray(), 6, t + "step voltages");
+		Djp_t_is.t_is(Columns.make(last[2]), r.branch.Pf.toArray(), 6, t + "step flows");
+
+		/* power flow session */
+		t = "Power flow session : ";
+		PowerFlowSession session = new PowerFlowSession(casefile, jpopt);
+		Djp_t_ok.t_ok(session.solve(), t + "success");
+		Djp_t_is.t_is(session.getCase().bus.toMatrix(), bus_soln, 6, t + "bus");
+		session.solve();
+		Djp_t_ok.t_ok(session.getIterations() == 0, t + "warm start");
+		session.setLoad(4, 100, 35);
+		session.setBranchStatus(4, 0);
+		session.solve();
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.bus.Pd.set(4, 100);
+		jpc.bus.Qd.set(4, 35);
+		jpc.branch.br_status.set(4, 0);
+		r = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_is.t_is(session.getCase().bus.toMatrix(), r.bus.toMatrix(), 6, t + "modified bus");
+		Djp_t_is.t_is(session.getCase().branch.toMatrix(), r.branch.toMatrix(), 6, t + "modified branch");
+
+		/* generator Q limits, PV-PQ switching within the solver */
+		t = "Q limits, switching : ";
+		jpc = Djp_loadcase.loadcase(casefile.copy());
+		jpc.gen.Qmax.set(1, 0);
+		r = Djp_loadcase.loadcase(jpc.copy());
+		r.bus.bus_type.set(1, JPC.PQ);
+		r.gen.Qg.set(1, 0);
+		r = Djp_runpf.runpf(r, jpopt);
+		jpopt = Djp_jpoption.jpoption(jpopt, "ENFORCE_Q_LIMS", 3.0);
+		JPC q = Djp_runpf.runpf(jpc.copy(), jpopt);
+		Djp_t_ok.t_ok(q.success, t + "Newton success");
+		Djp_t_is.t_is(q.bus.toMatrix(), r.bus.toMatrix(), 6, t + "Newton bus");
+		Djp_t_is.t_is(q.gen.Qg, r.gen.Qg.toArray(), 6, t + "Newton Qg");
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 2.0, "PF_MAX_IT", 30.0);
+		q = Djp_runpf.runpf(jpc.copy(), jpopt);
+		Djp_t_is.t_is(q.bus.toMatrix(), r.bus.toMatrix(), 6, t + "fast-decoupled bus");
+
+		/* bus type conversion between solves, and as the fallback for ENFORCE_Q_LIMS 3 */
+		t = "Q limits, conversion : ";
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 1.0, "PF_MAX_IT", 10.0, "ENFORCE_Q_LIMS", 1.0);
+		q = Djp_runpf.runpf(jpc.copy(), jpopt);
+		Djp_t_ok.t_ok(q.success, t + "Newton success");
+		Djp_t_is.t_is(q.bus.toMatrix(), r.bus.toMatrix(), 6, t + "Newton bus");
+		Djp_t_is.t_is(q.gen.Qg, r.gen.Qg.toArray(), 6, t + "Newton Qg");
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 6.0, "ENFORCE_Q_LIMS", 3.0);
+		q = Djp_runpf.runpf(jpc.copy(), jpopt);
+		Djp_t_ok.t_ok(q.success, t + "current injection success");
+		Djp_t_is.t_is(q.bus.toMatrix(), r.bus.toMatrix(), 6, t + "current injection bus");
+		Djp_t_is.t_is(q.gen.Qg, r.gen.Qg.toArray(), 6, t + "current injection Qg");
+		jpopt = Djp_jpoption.jpoption(jpopt, "PF_ALG", 1.0, "ENFORCE_Q_LIMS", 0.0);
+
+		/* synthetic case */
+		t = "Synthetic case : ";
+		jpc = Djp_case_synth.jp_case_synth(2000);
+		Djp_t_ok.t_ok(jpc.bus.size() == 2000, t + "size");
+		Djp_t_is.t_is(jpc.branch.toMatrix(), Djp_case_synth.jp_case_synth(2000).branch.toMatrix(), 12, t + "deterministic");
+		r = Djp_runpf.runpf(jpc, jpopt);
+		Djp_t_ok.t_ok(r.success, t + "success");
+
 //		/* get solved DC power flow case from MAT-file */
 //		bus_soln = (DoubleMatrix2D) Djp_mm.readMatrix(BUS_SOLN9_DC);
 //		gen_soln = (DoubleMatrix2D) Djp_mm.readMatrix(GEN_SOLN9_DC);
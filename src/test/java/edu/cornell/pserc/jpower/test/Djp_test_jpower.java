@@ -34,6 +34,9 @@ public class Djp_test_jpower extends TestCase {
 		tests.add("t_loadcase");
 		tests.add("t_ext2int2ext");
 		tests.add("t_jacobian");
+		tests.add("t_kernels");
+		tests.add("t_makePTDF");
+		tests.add("t_makeLODF");
 		tests.add("t_pf");
 
 		t_run_tests(tests, false);